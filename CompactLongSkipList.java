@@ -0,0 +1,628 @@
+package rsn170330.lp2;
+
+/**
+ * CS 5V81.001. Implementation of data structures and algorithms
+ * Long Project LP2: Skip List Implementation
+ *
+ * CompactLongSkipList: same operations as LongSkipList, but stored as
+ * a struct-of-arrays instead of one Entry object (plus next[] and
+ * span[]) per element.
+ *
+ * Every node is an int id, indexing into parallel primitive arrays:
+ *  keys[id]   : element of the node
+ *  prev[id]   : id of the previous node at level 0
+ *  base[id]   : where the tower of the node begins in links[]
+ *  height[id] : number of levels in the tower
+ *
+ * The tower of a node is one block in links[], with the link at level
+ * i packed next to its span: links[base + 2i] = id of next node at
+ * level i, links[base + 2i + 1] = span (as in Entry.span[i]).
+ *
+ * Removed nodes and towers are recycled through free lists. rebuild()
+ * also renumbers nodes in sorted order, so that level 0 scans walk
+ * keys[] and links[] sequentially.
+ */
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+public class CompactLongSkipList {
+	static final int POSSIBLE_LEVELS = SkipList.POSSIBLE_LEVELS;
+
+	// returned when there is no such element (null in SkipList)
+	public static final long NONE = LongSkipList.NONE;
+
+	// ids of dummy header & tail
+	static final int HEAD = 0, TAIL = 1;
+
+	// marks the end of a free list
+	private static final int NIL = -1;
+
+	// node attributes, indexed by node id
+	private long[] keys;
+	private int[] prev;
+	private int[] base;
+	private byte[] height;
+
+	// towers: (next, span) pairs, packed level by level
+	private int[] links;
+
+	// nodeCount: ids handed out so far, linkCount: used part of links[]
+	private int nodeCount, linkCount;
+
+	// freeNode: removed ids (chained through prev[])
+	// freeTower[h]: removed towers of height h (chained through links[])
+	private int freeNode;
+	private int[] freeTower;
+
+	// maxLevel is the level equal to the highest tower
+	public int size, maxLevel;
+
+	// last[i]: node at which search came down from level i
+	private int[] last; // used by find
+
+	// distanceTraversed[i]: distance traversed on level i,
+	// as search came down from last[i] to level i-1
+	private int[] distanceTraversed; // used for updating spans
+
+	// for random height (like using coin-flip, see LevelGenerator)
+	private LevelGenerator levelGenerator;
+
+	// Default Constructor
+	public CompactLongSkipList() {
+		this(16);
+	}
+
+	/**
+	 * Creates an empty list, with room for capacity elements
+	 * before the arrays have to grow.
+	 * @param capacity the initial capacity
+	 */
+	public CompactLongSkipList(int capacity) {
+		int nodes = Math.max(capacity, 1) + 2; // + head and tail
+		keys = new long[nodes];
+		prev = new int[nodes];
+		base = new int[nodes];
+		height = new byte[nodes];
+		links = new int[2 * (POSSIBLE_LEVELS + 2 * nodes)];
+
+		freeNode = NIL;
+		freeTower = new int[POSSIBLE_LEVELS + 1];
+		Arrays.fill(freeTower, NIL);
+
+		last = new int[POSSIBLE_LEVELS];
+		distanceTraversed = new int[POSSIBLE_LEVELS];
+		levelGenerator = LevelGenerator.fast();
+
+		clear();
+	}
+
+	/**
+	 * Helper method - resets to an empty list, with only head
+	 * (all levels pointing to tail) and tail.
+	 */
+	private void clear() {
+		nodeCount = 2;
+		linkCount = 0;
+		freeNode = NIL;
+		Arrays.fill(freeTower, NIL);
+
+		size = 0;
+		maxLevel = 1;
+
+		keys[HEAD] = NONE;
+		keys[TAIL] = NONE;
+
+		// tail has no tower
+		height[TAIL] = 0;
+		base[TAIL] = 0;
+
+		base[HEAD] = allocTower(POSSIBLE_LEVELS);
+		height[HEAD] = (byte) POSSIBLE_LEVELS;
+		for (int i = 0; i < POSSIBLE_LEVELS; i++) {
+			links[base[HEAD] + 2 * i] = TAIL;
+			links[base[HEAD] + 2 * i + 1] = 1; // tail 1 distance away
+		}
+
+		// When list is empty, head is previous of tail
+		prev[TAIL] = HEAD;
+	}
+
+	// next node of n at level i
+	private int nextOf(int n, int i) {
+		return links[base[n] + 2 * i];
+	}
+
+	// span of n at level i
+	private int spanOf(int n, int i) {
+		return links[base[n] + 2 * i + 1];
+	}
+
+	/**
+	 * Helper method - hands out a node id, re-using removed ones.
+	 * @param x element of the node
+	 * @return the node id
+	 */
+	private int allocNode(long x) {
+		int n;
+
+		if (freeNode != NIL) {
+			n = freeNode;
+			freeNode = prev[n];
+		}
+		else {
+			// When the node arrays are full, double them
+			if (nodeCount == keys.length) {
+				int capacity = 2 * keys.length;
+				keys = Arrays.copyOf(keys, capacity);
+				prev = Arrays.copyOf(prev, capacity);
+				base = Arrays.copyOf(base, capacity);
+				height = Arrays.copyOf(height, capacity);
+			}
+			n = nodeCount++;
+		}
+		keys[n] = x;
+		return n;
+	}
+
+	/**
+	 * Helper method - hands out a tower of h levels in links[],
+	 * re-using a removed tower of the same height if there is one.
+	 * @param h the height of the tower
+	 * @return the base of the tower in links[]
+	 */
+	private int allocTower(int h) {
+		int b = freeTower[h];
+
+		if (b != NIL) {
+			freeTower[h] = links[b]; // next free tower
+			return b;
+		}
+
+		// When links[] is full, double it
+		if (linkCount + 2 * h > links.length)
+			links = Arrays.copyOf(links, Math.max(2 * links.length,
+					linkCount + 2 * h));
+
+		b = linkCount;
+		linkCount += 2 * h;
+		return b;
+	}
+
+	/**
+	 * Helper method - puts node n and its tower on the free lists.
+	 * @param n the node id
+	 */
+	private void freeNode(int n) {
+		int h = height[n];
+		links[base[n]] = freeTower[h];
+		freeTower[h] = base[n];
+
+		prev[n] = freeNode;
+		freeNode = n;
+	}
+
+	// CompactIterator: traverses level 0 without boxing
+	private class CompactIterator implements PrimitiveIterator.OfLong {
+		int cursor, prevNode;
+		boolean ready; // is cursor ready to be removed
+
+		CompactIterator() {
+			cursor = HEAD;
+			prevNode = NIL;
+			ready = false;
+		}
+
+		/**
+		 * Returns true if Iterator has more element to iterate.
+		 */
+		public boolean hasNext() {
+			return nextOf(cursor, 0) != TAIL;
+		}
+
+		/**
+		 * Returns the next element, as a primitive long.
+		 * @throws NoSuchElementException if there is no next element
+		 */
+		public long nextLong() {
+			// When there is no next element
+			if (!hasNext())
+				throw new NoSuchElementException("There is no next element.");
+
+			prevNode = cursor;
+			cursor = nextOf(cursor, 0); // cursor++
+			ready = true; // we can do remove after this next()
+			return keys[cursor];
+		}
+
+		/**
+		 * Removes the current element in the collection.
+		 * @throws NoSuchElementException if called before next()
+		 */
+		public void remove() {
+			// When remove operation cannot be done!
+			if (!ready)
+				throw new NoSuchElementException("Illegal State.");
+
+			find(keys[cursor]);
+			unlink(cursor);
+
+			cursor = prevNode; // after removal, cursor is prevNode
+			ready = false;
+		}
+	}
+
+	/**
+	 * Insert x in the Skip list.
+	 * @param x the element to be added
+	 * @return true on successful insertion, false if already present
+	 * @throws IllegalArgumentException when x is NONE
+	 */
+	public boolean add(long x) {
+		// NONE is reserved for "no such element"
+		if (x == NONE)
+			throw new IllegalArgumentException("NONE cannot be added.");
+
+		// When x is already present
+		if (contains(x))
+			return false;
+
+		// prevPosition: distance of last[i] from head on find(x)
+		// newPosition: prevPosition + 1 (where we'll add the x)
+		int prevPosition = 0;
+		for (int i = 0; i < maxLevel; i++)
+			prevPosition += distanceTraversed[i];
+		int newPosition = prevPosition + 1;
+
+		// find(x) set last[] only up to the current maxLevel,
+		// so the tower can't be any higher than that
+		int levels = maxLevel;
+		int h = Math.min(chooseLevel(), levels);
+
+		int n = allocNode(x);
+		int b = allocTower(h);
+		base[n] = b;
+		height[n] = (byte) h;
+
+		int i;
+		// for each level of the new node
+		for (i = 0; i < h; i++) {
+			int l = base[last[i]] + 2 * i; // link of last[i]
+
+			// re-establishing the next links
+			links[b + 2 * i] = links[l];
+			links[l] = n;
+
+			// re-establishing the spans
+			links[b + 2 * i + 1] = prevPosition + links[l + 1] - newPosition + 1;
+			links[l + 1] = newPosition - prevPosition;
+
+			// distance of last[i+1] from head
+			prevPosition = prevPosition - distanceTraversed[i];
+		}
+
+		// re-establishing the previous links
+		prev[links[b]] = n;
+		prev[n] = last[0];
+
+		// Increment the span of last[] above the new tower
+		for (; i < levels; i++)
+			links[base[last[i]] + 2 * i + 1]++;
+		size++;
+
+		// Update the unused head span with the size+1
+		for (int j = 0; j < POSSIBLE_LEVELS; j++) {
+			if (nextOf(HEAD, j) == TAIL)
+				links[base[HEAD] + 2 * j + 1] = size + 1;
+		}
+		return true;
+	}
+
+	/**
+	 * Helper method - add(x)
+	 * Chooses a random level
+	 * @return return the level
+	 */
+	public int chooseLevel() {
+		int lev = levelGenerator.nextLevel();
+
+		// to allow maxLevel to grow gradually
+		lev = Math.min(lev,  maxLevel + 1);
+
+		if (maxLevel < lev)
+			maxLevel = lev;
+
+		return lev;
+	}
+	/**
+	 * Sets how the level of a new Entry is chosen, e.g. with another
+	 * probability p, or seeded for a reproducible run.
+	 * @param levelGenerator the generator (see LevelGenerator)
+	 */
+	public void setLevelGenerator(LevelGenerator levelGenerator) {
+		this.levelGenerator = levelGenerator;
+	}
+
+
+	/**
+	 * Find the smallest element that is greater than or equal to x.
+	 * @param x the input element
+	 * @return the element immediate next to x, NONE if there is none
+	 */
+	public long ceiling(long x) {
+		// When list is empty, or x greater than the last element
+		if (isEmpty() || x > last())
+			return NONE;
+
+		// When x is smaller than the first element
+		if (x < first())
+			return first();
+
+		// next of last[0] is either x or the one just after it
+		find(x);
+		return keys[nextOf(last[0], 0)];
+	}
+
+	/**
+	 * Does the Skip list contains x?
+	 * @param x the element to be searched
+	 * @return true when x is present, false if not
+	 */
+	public boolean contains(long x) {
+		find(x);
+
+		int n = nextOf(last[0], 0);
+		return n != TAIL && keys[n] == x;
+	}
+
+	/**
+	 * Helper method to search for x.
+	 * Sets last[i] = node at which search came down from
+	 * level i to i-1
+	 * @param x the element to be searched
+	 */
+	private void find(long x) {
+		int p = HEAD; // like cursor
+
+		for (int in = maxLevel - 1; in > -1; in--) {
+			int distance = 0; // distance traversed on level in
+			int l = base[p] + 2 * in; // link of p at level in
+
+			// tail has no meaningful element, so stop at it
+			while (links[l] != TAIL && keys[links[l]] < x) {
+				distance += links[l + 1];
+				p = links[l]; // moving further
+				l = base[p] + 2 * in;
+			}
+			distanceTraversed[in] = distance;
+			last[in] = p; // node at which search came down
+		}
+	}
+
+	/**
+	 * Returns the first element of the Skip list.
+	 * @return the element, NONE when empty
+	 */
+	public long first() {
+		return keys[nextOf(HEAD, 0)]; // keys[TAIL] is NONE
+	}
+
+	/**
+	 * Find the largest element that is less than or equal to x.
+	 * @param x the input element
+	 * @return the element previous to x, NONE if there is none
+	 */
+	public long floor(long x) {
+		// When list is empty, or x is smaller than the first element
+		if (isEmpty() || x < first())
+			return NONE;
+
+		// When x greater than the last element
+		if (x > last())
+			return last();
+
+		// When there is no such element in the list
+		if (!contains(x))
+			return keys[last[0]];
+
+		return x; // We have x
+	}
+
+	/**
+	 * Return element at index n of list.
+	 * First element is at index 0.
+	 * @param n the input index
+	 * @return the element at index n
+	 */
+	public long get(int n) {
+		return getLog(n);
+	}
+
+	/**
+	 * Helper method - get():
+	 * RT: O(n) algorithm expected time for get(n)
+	 * @param n the input index
+	 * @return the element at index n
+	 * @throws NoSuchElementException When n is invalid index
+	 */
+	public long getLinear(int n) throws NoSuchElementException {
+		// When invalid input index
+		if (n < 0 || size - 1 < n)
+			throw new NoSuchElementException();
+
+		int p = nextOf(HEAD, 0);
+		for (int i = 0; i < n; i++)
+			p = nextOf(p, 0);
+
+		return keys[p];
+	}
+
+	/**
+	 * Helper method - get():
+	 * RT: O(log n) algorithm expected time for get(n), using spans
+	 * @param n the input index
+	 * @return the element at index n
+	 * @throws NoSuchElementException When n is invalid index
+	 */
+	public long getLog(int n) throws NoSuchElementException {
+		// position: index + 1
+		int position = n + 1;
+
+		// When invalid input index
+		if (n < 0 || size - 1 < n)
+			throw new NoSuchElementException();
+
+		int visitedPosition = 0;
+		int p = HEAD;
+
+		// Iterating top-down from the highest useful level
+		for (int i = maxLevel - 1; i > -1; i--) {
+			// Traverse level i until we didn't go past our position
+			while (spanOf(p, i) + visitedPosition < position) {
+				visitedPosition += spanOf(p, i);
+				p = nextOf(p, i);
+			}
+		}
+		// p is at (position-1), so return just immediate next element
+		return keys[nextOf(p, 0)];
+	}
+
+	/**
+	 * Is the list empty?
+	 * @return true when empty Skip list, otherwise false
+	 */
+	public boolean isEmpty() {
+		return size() < 1;
+	}
+
+	/**
+	 * Iterate through the elements of list in SORTED ORDER.
+	 * @return iterator, with nextLong() to avoid boxing
+	 */
+	public PrimitiveIterator.OfLong iterator() {
+		return new CompactIterator();
+	}
+
+	/**
+	 * Returns the last element of List.
+	 * @return the element, NONE when empty
+	 */
+	public long last() {
+		return keys[prev[TAIL]]; // keys[HEAD] is NONE
+	}
+
+	/**
+	 * Reorganize the elements of the list into a perfect skip list.
+	 * Nodes are also renumbered in sorted order, and the free lists
+	 * are dropped, so the arrays end up densely packed.
+	 */
+	public void rebuild() {
+		// elements in sorted order
+		long[] sorted = new long[size];
+		int k = 0;
+		for (int p = nextOf(HEAD, 0); p != TAIL; p = nextOf(p, 0))
+			sorted[k++] = keys[p];
+
+		int n = size;
+		clear();
+
+		// Nothing to reorganize
+		if (n == 0)
+			return;
+
+		// computing maxLevel required for rebuild()
+		int newMaxLevel = 32 - Integer.numberOfLeadingZeros(n);
+
+		// previous[i]: last node linked at level i so far
+		int[] previous = new int[newMaxLevel];
+		int[] prevPosition = new int[newMaxLevel];
+
+		for (int position = 1; position <= n; position++) {
+			// perfect height at position: 1 + (exponent of 2 in position)
+			int h = Math.min(Integer.numberOfTrailingZeros(position),
+					newMaxLevel - 1) + 1;
+
+			// ids (and towers) are handed out in sorted order
+			int p = allocNode(sorted[position - 1]);
+			base[p] = allocTower(h);
+			height[p] = (byte) h;
+			prev[p] = position == 1 ? HEAD : p - 1;
+
+			// all nodes at levels below h now point to p
+			for (int i = 0; i < h; i++) {
+				int l = base[previous[i]] + 2 * i;
+				links[l] = p;
+				links[l + 1] = position - prevPosition[i];
+				previous[i] = p;
+				prevPosition[i] = position;
+			}
+		}
+
+		// end-stops at each level point to tail
+		for (int i = 0; i < POSSIBLE_LEVELS; i++) {
+			int l = (i < newMaxLevel) ? base[previous[i]] + 2 * i
+					: base[HEAD] + 2 * i;
+			int from = (i < newMaxLevel) ? prevPosition[i] : 0;
+			links[l] = TAIL;
+			links[l + 1] = n + 1 - from;
+		}
+		prev[TAIL] = previous[0];
+
+		size = n;
+		maxLevel = newMaxLevel;
+	}
+
+	/**
+	 * Removes x from the list, if present.
+	 * @param x the element to be removed
+	 * @return true when x was removed, false if not present
+	 */
+	public boolean remove(long x) {
+		// When there is no x in the list
+		if (!contains(x)) return false;
+
+		unlink(nextOf(last[0], 0));
+		return true;
+	}
+
+	/**
+	 * Helper method - remove(): unlinks node n, with last[]
+	 * set by find(keys[n]), and recycles it.
+	 * @param n the node to be removed
+	 */
+	private void unlink(int n) {
+		int h = height[n];
+		int i = 0;
+
+		// Merging links which pointed to n with links where
+		// n's tower were pointed to, at each level
+		for (; i < h; i++) {
+			int l = base[last[i]] + 2 * i;
+			links[l] = nextOf(n, i);
+			// adding two spans, -1 for removed
+			links[l + 1] = links[l + 1] + spanOf(n, i) - 1;
+		}
+		prev[nextOf(n, 0)] = last[0];
+
+		// update spans above height for last[]
+		for (; i < maxLevel; i++)
+			links[base[last[i]] + 2 * i + 1]--;
+		size--;
+
+		// update span of un-used head levels (tail at size + 1)
+		for (i = 0; i < POSSIBLE_LEVELS; i++) {
+			if (nextOf(HEAD, i) == TAIL)
+				links[base[HEAD] + 2 * i + 1] = size + 1;
+		}
+		freeNode(n);
+	}
+
+	/**
+	 * Return the number of elements in the list
+	 * @return the size of the list
+	 */
+	public int size() {
+		return this.size;
+	}
+}
@@ -0,0 +1,513 @@
+package rsn170330.lp2;
+
+/**
+ * CS 5V81.001. Implementation of data structures and algorithms
+ * Long Project LP2: Skip List Implementation
+ *
+ * ConcurrentSkipList: lock-free Skip list, safe to be used by many
+ * threads at once. Follows the lock-free skip list of Herlihy & Shavit
+ * (The Art of Multiprocessor Programming, 14.4):
+ *
+ * - Every next[i] is an AtomicMarkableReference. The mark on next[i]
+ *   of an Entry means "this Entry is being removed from level i".
+ * - remove() marks the levels of an Entry top-down; whoever marks
+ *   level 0 has removed it. Marked Entries are physically unlinked
+ *   (with CAS) by the next find() passing through them.
+ * - add() links level 0 first (this is when x becomes visible), then
+ *   the levels above.
+ * - contains(), floor(), ceiling() never write, and never retry.
+ *
+ * Indexing: span[] can't be kept exact without locking, so get(n) is
+ * answered from a rank snapshot, a sorted array of the elements taken
+ * by walking level 0. A snapshot is re-used as long as at most
+ * maxStaleness add()/remove() have succeeded since it was taken
+ * (0, the default, means a snapshot is never re-used after a change).
+ * With a stable snapshot, get(n) is O(1); taking one is O(size).
+ */
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicMarkableReference;
+
+public class ConcurrentSkipList<T extends Comparable<? super T>> {
+	static final int POSSIBLE_LEVELS = SkipList.POSSIBLE_LEVELS;
+
+	// Dummy header & tail, elements of both are null
+	private final Entry<T> head, tail;
+
+	// maxLevel: highest level any add() has linked so far
+	private final AtomicInteger maxLevel;
+	private final AtomicInteger size;
+
+	// mutations: number of successful add()/remove() so far
+	private final AtomicLong mutations;
+
+	// rank snapshot used by get(n), and how stale it may get
+	private volatile RankSnapshot snapshot;
+	private volatile long maxStaleness;
+
+	// for random height: called from any thread, so it has to be
+	// thread-safe (by default, LevelGenerator.perThread())
+	private volatile LevelGenerator levelGenerator;
+
+	static class Entry<E> {
+		final E element;
+		final AtomicMarkableReference<Entry<E>>[] next;
+		final int height;
+
+		// Parameterized Constructor:
+		@SuppressWarnings("unchecked")
+		Entry(E x, int level) {
+			element = x;
+			height = level;
+			next = (AtomicMarkableReference<Entry<E>>[])
+					new AtomicMarkableReference<?>[level];
+		}
+	}
+
+	// sorted elements, as of mutations = version
+	private static class RankSnapshot {
+		final Object[] elements;
+		final long version;
+
+		RankSnapshot(Object[] elements, long version) {
+			this.elements = elements;
+			this.version = version;
+		}
+	}
+
+	// Default Constructor
+	public ConcurrentSkipList() {
+		head = new Entry<T>(null, POSSIBLE_LEVELS);
+		tail = new Entry<T>(null, POSSIBLE_LEVELS);
+
+		// Each entry in head.next[] points to tail
+		for (int i = 0; i < POSSIBLE_LEVELS; i++) {
+			head.next[i] = new AtomicMarkableReference<>(tail, false);
+			tail.next[i] = new AtomicMarkableReference<>(null, false);
+		}
+
+		maxLevel = new AtomicInteger(1);
+		size = new AtomicInteger(0);
+		mutations = new AtomicLong(0);
+		maxStaleness = 0;
+		levelGenerator = LevelGenerator.perThread(0.5);
+	}
+
+	// ConcurrentSkipListIterator: weakly consistent iterator
+	private class ConcurrentSkipListIterator implements Iterator<T> {
+		Entry<T> cursor, nextEntry;
+
+		ConcurrentSkipListIterator() {
+			cursor = null;
+			nextEntry = successor(head);
+		}
+
+		/**
+		 * Returns true if Iterator has more element to iterate.
+		 */
+		public boolean hasNext() {
+			return nextEntry != tail;
+		}
+
+		/**
+		 * Returns the next element. Elements added or removed after
+		 * the iterator was created may or may not be seen.
+		 * @throws NoSuchElementException if there is no next element
+		 */
+		public T next() {
+			// When there is no next element
+			if (!hasNext())
+				throw new NoSuchElementException("There is no next element.");
+
+			cursor = nextEntry;
+			nextEntry = successor(cursor);
+			return cursor.element;
+		}
+
+		/**
+		 * Removes the last element returned by next().
+		 * @throws NoSuchElementException if called before next()
+		 */
+		public void remove() {
+			// When remove operation cannot be done!
+			if (cursor == null)
+				throw new NoSuchElementException("Illegal State.");
+
+			ConcurrentSkipList.this.remove(cursor.element);
+			cursor = null;
+		}
+	}
+
+	/**
+	 * Helper method - first un-marked Entry after p at level 0.
+	 * @param p the entry to start from
+	 * @return the successor (tail if there is none)
+	 */
+	private Entry<T> successor(Entry<T> p) {
+		Entry<T> q = p.next[0].getReference();
+
+		// skipping entries which are being removed
+		while (q != tail && q.next[0].isMarked())
+			q = q.next[0].getReference();
+		return q;
+	}
+
+	/**
+	 * Insert x in the Skip list.
+	 * @param x the element to be added
+	 * @return true on successful insertion, false if already present
+	 */
+	public boolean add(T x) {
+		int level = chooseLevel();
+
+		Entry<T>[] preds = newFrontier();
+		Entry<T>[] succs = newFrontier();
+
+		while (true) {
+			// When x is already present
+			if (find(x, preds, succs))
+				return false;
+
+			Entry<T> ent = new Entry<>(x, level);
+			for (int i = 0; i < level; i++)
+				ent.next[i] = new AtomicMarkableReference<>(succs[i], false);
+
+			// x is in the list, as soon as it is linked at level 0
+			if (!preds[0].next[0].compareAndSet(succs[0], ent, false, false))
+				continue; // frontier changed, try again
+
+			size.incrementAndGet();
+			mutations.incrementAndGet();
+
+			// link the levels above, re-doing find() on contention
+			for (int i = 1; i < level; i++) {
+				while (true) {
+					Entry<T> succ = ent.next[i].getReference();
+
+					// When ent is already being removed, stop linking it
+					if (ent.next[i].isMarked())
+						return true;
+
+					// point ent to the current successor at level i
+					if (succ != succs[i] && !ent.next[i].compareAndSet(
+							succ, succs[i], false, false))
+						continue;
+
+					if (preds[i].next[i].compareAndSet(succs[i], ent, false, false))
+						break;
+
+					find(x, preds, succs);
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Helper method - add(x)
+	 * Chooses a random level, growing maxLevel by at most one.
+	 * @return return the level
+	 */
+	private int chooseLevel() {
+		int top = maxLevel.get();
+		int lev = levelGenerator.nextLevel();
+
+		// to allow maxLevel to grow gradually
+		lev = Math.min(lev, Math.min(top + 1, POSSIBLE_LEVELS));
+
+		if (top < lev)
+			maxLevel.compareAndSet(top, lev);
+
+		return lev;
+	}
+
+	@SuppressWarnings("unchecked")
+	private Entry<T>[] newFrontier() {
+		return (Entry<T>[]) new Entry<?>[POSSIBLE_LEVELS];
+	}
+
+	/**
+	 * Find the smallest element that is greater than or equal to x.
+	 * @param x the input element
+	 * @return the element immediate next to x, null if there is none
+	 */
+	public T ceiling(T x) {
+		return atOrAfter(x).element; // null at tail
+	}
+
+	/**
+	 * Does the Skip list contains x?
+	 * @param x the element to be searched
+	 * @return true when x is present, false if not
+	 */
+	public boolean contains(T x) {
+		// When x is null
+		if (x == null)
+			return false;
+
+		Entry<T> q = atOrAfter(x);
+		return q != tail && q.element.compareTo(x) == 0;
+	}
+
+	/**
+	 * Helper method: read-only search for the first un-marked entry
+	 * with element greater than or equal to x.
+	 * @param x the element to be searched
+	 * @return the entry (tail if there is none)
+	 */
+	private Entry<T> atOrAfter(T x) {
+		Entry<T> q = before(x, false).next[0].getReference();
+
+		// entries smaller than x may have been added after before(x)
+		while (q != tail && (q.next[0].isMarked() || q.element.compareTo(x) < 0))
+			q = q.next[0].getReference();
+		return q;
+	}
+
+	/**
+	 * Helper method: read-only search, skipping marked entries.
+	 * @param x the element to be searched
+	 * @param inclusive whether to go past entries equal to x
+	 * @return the last un-marked entry before x (head if there is none)
+	 */
+	private Entry<T> before(T x, boolean inclusive) {
+		Entry<T> p = head;
+
+		for (int i = maxLevel.get() - 1; i > -1; i--) {
+			Entry<T> q = p.next[i].getReference();
+
+			while (q != tail) {
+				// skipping entries which are being removed
+				if (q.next[i].isMarked()) {
+					q = q.next[i].getReference();
+					continue;
+				}
+				int cmp = q.element.compareTo(x);
+				if (cmp > 0 || (cmp == 0 && !inclusive))
+					break;
+
+				p = q; // moving further
+				q = q.next[i].getReference();
+			}
+		}
+		return p;
+	}
+
+	/**
+	 * Helper method to search for x, unlinking marked entries on
+	 * the way. Sets preds[i]/succs[i] = entries between which x
+	 * is (or would be) at level i.
+	 * @param x the element to be searched
+	 * @return true when x is present, false if not
+	 */
+	private boolean find(T x, Entry<T>[] preds, Entry<T>[] succs) {
+		boolean[] marked = { false };
+
+		retry:
+		while (true) {
+			Entry<T> pred = head, curr = null, succ;
+
+			// levels above maxLevel: head points to tail
+			for (int i = maxLevel.get() - 1; i > -1; i--) {
+				curr = pred.next[i].getReference();
+
+				while (curr != tail) {
+					succ = curr.next[i].get(marked);
+
+					// unlinking marked curr from level i
+					while (marked[0]) {
+						if (!pred.next[i].compareAndSet(curr, succ, false, false))
+							continue retry;
+
+						curr = succ;
+						if (curr == tail)
+							break;
+						succ = curr.next[i].get(marked);
+					}
+					if (curr == tail || curr.element.compareTo(x) >= 0)
+						break;
+
+					pred = curr; // moving further
+					curr = succ;
+				}
+				preds[i] = pred;
+				succs[i] = curr;
+			}
+			return curr != tail && curr.element.compareTo(x) == 0;
+		}
+	}
+
+	/**
+	 * Returns the first element of the Skip list.
+	 * @return the element, null when empty
+	 */
+	public T first() {
+		return successor(head).element; // null at tail
+	}
+
+	/**
+	 * Find the largest element that is less than or equal to x.
+	 * @param x the input element
+	 * @return the element previous to x, null if there is none
+	 */
+	public T floor(T x) {
+		return before(x, true).element; // null at head
+	}
+
+	/**
+	 * Return element at index n of the current rank snapshot.
+	 * First element is at index 0.
+	 * @param n the input index
+	 * @return the element at index n
+	 * @throws NoSuchElementException When n is invalid index
+	 */
+	@SuppressWarnings("unchecked")
+	public T get(int n) throws NoSuchElementException {
+		RankSnapshot snap = snapshot;
+
+		// When there is no snapshot, or it is too stale
+		if (snap == null || mutations.get() - snap.version > maxStaleness) {
+			snap = takeSnapshot();
+		}
+
+		// When invalid input index
+		if (n < 0 || snap.elements.length - 1 < n)
+			throw new NoSuchElementException();
+
+		return (T) snap.elements[n];
+	}
+
+	/**
+	 * Helper method - get(): walks level 0 to take a new snapshot.
+	 * @return the snapshot, also published for other threads
+	 */
+	private RankSnapshot takeSnapshot() {
+		long version = mutations.get();
+		Object[] elements = new Object[size.get()];
+		int count = 0;
+
+		for (Entry<T> p = successor(head); p != tail; p = successor(p)) {
+			// size may have changed during the walk
+			if (count == elements.length)
+				elements = java.util.Arrays.copyOf(elements, 2 * count + 1);
+			elements[count++] = p.element;
+		}
+
+		RankSnapshot snap = new RankSnapshot(
+				java.util.Arrays.copyOf(elements, count), version);
+		snapshot = snap;
+		return snap;
+	}
+
+	/**
+	 * Sets how many add()/remove() may succeed before get(n)
+	 * has to take a new rank snapshot.
+	 * @param maxStaleness maximum number of mutations (0: none)
+	 */
+	public void setMaxStaleness(long maxStaleness) {
+		this.maxStaleness = maxStaleness;
+	}
+
+	/**
+	 * Sets how the level of a new Entry is chosen. It is called by
+	 * every thread which adds, e.g. LevelGenerator.perThread(p).
+	 * @param levelGenerator a thread-safe generator
+	 */
+	public void setLevelGenerator(LevelGenerator levelGenerator) {
+		this.levelGenerator = levelGenerator;
+	}
+
+	/**
+	 * Is the list empty?
+	 * @return true when empty Skip list, otherwise false
+	 */
+	public boolean isEmpty() {
+		return size() < 1;
+	}
+
+	/**
+	 * Iterate through the elements of list in SORTED ORDER.
+	 * The iterator is weakly consistent, and never throws
+	 * ConcurrentModificationException.
+	 * @return iterator
+	 */
+	public Iterator<T> iterator() {
+		return new ConcurrentSkipListIterator();
+	}
+
+	/**
+	 * Returns the last element of List.
+	 * @return the element, null when empty
+	 */
+	public T last() {
+		Entry<T> p = head;
+
+		// going as far right as possible on every level
+		for (int i = maxLevel.get() - 1; i > -1; i--) {
+			Entry<T> q = p.next[i].getReference();
+
+			while (q != tail) {
+				if (!q.next[i].isMarked())
+					p = q;
+				q = q.next[i].getReference();
+			}
+		}
+		return p.element; // null at head
+	}
+
+	/**
+	 * Removes x from the list, if present.
+	 * @param x the element to be removed
+	 * @return removed element, if present, else null
+	 */
+	public T remove(T x) {
+		Entry<T>[] preds = newFrontier();
+		Entry<T>[] succs = newFrontier();
+
+		// When there is no x in the list
+		if (!find(x, preds, succs))
+			return null;
+
+		Entry<T> ent = succs[0];
+		boolean[] marked = { false };
+
+		// marking the levels above 0, top-down
+		for (int i = ent.height - 1; i > 0; i--) {
+			Entry<T> succ = ent.next[i].get(marked);
+
+			while (!marked[0]) {
+				ent.next[i].attemptMark(succ, true);
+				succ = ent.next[i].get(marked);
+			}
+		}
+
+		// whoever marks level 0 has removed ent
+		Entry<T> succ = ent.next[0].get(marked);
+		while (true) {
+			boolean iMarkedIt = ent.next[0].compareAndSet(succ, succ, false, true);
+			succ = ent.next[0].get(marked);
+
+			if (iMarkedIt) {
+				size.decrementAndGet();
+				mutations.incrementAndGet();
+
+				find(x, preds, succs); // unlinks ent
+				return ent.element;
+			}
+			// When some other thread removed it first
+			else if (marked[0])
+				return null;
+		}
+	}
+
+	/**
+	 * Return the number of elements in the list
+	 * @return the size of the list
+	 */
+	public int size() {
+		return size.get();
+	}
+}
@@ -0,0 +1,222 @@
+package rsn170330.lp2;
+
+/**
+ * CS 5V81.001. Implementation of data structures and algorithms
+ * Long Project LP2: Skip List Implementation
+ *
+ * LevelGenerator: chooses the level (height) of a new Entry. A level is
+ * i + 1 with probability p^i * (1 - p): on average, 1 in 1/p entries
+ * of a level goes on to the level above. p = 1/2 is the classic coin
+ * flip. p = 1/4 has about 1.33 links per entry instead of 2, but more
+ * comparisons per search: more steps per level, over half as many
+ * levels (the benchmark "levels" of SkipListBenchmark measures both).
+ *
+ * Implementations:
+ *  - legacy(): java.util.Random, p = 1/2 (the original chooseLevel()),
+ *    which pays an atomic compare-and-set on every call,
+ *  - xorShift(seed, p): xorshift64*, no atomics, for one thread,
+ *  - splittable(seed, p): java.util.SplittableRandom, for one thread,
+ *    split() gives an independent generator for another one,
+ *  - perThread(p): ThreadLocalRandom, safe from any number of threads
+ *    (for ConcurrentSkipList).
+ * Seeded generators make runs reproducible, e.g. for benchmarks.
+ *
+ * When p is a power of 1/2, p = 2^-k, a level comes from one random int:
+ * 1 + (leading zeros) / k. Otherwise it is drawn one level at a time.
+ */
+
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+
+public interface LevelGenerator {
+	// highest level returned (one random int has 32 bits)
+	int MAX_LEVEL = 33;
+
+	/**
+	 * Level of a new Entry, between 1 and MAX_LEVEL.
+	 * The Skip list caps it to its maxLevel + 1.
+	 */
+	int nextLevel();
+
+	/**
+	 * java.util.Random, p = 1/2: levels as drawn before LevelGenerator.
+	 */
+	static LevelGenerator legacy() {
+		return new Legacy(new Random());
+	}
+
+	/**
+	 * xorshift64* generator, for use by one thread at a time.
+	 * @param seed the seed (the same seed gives the same levels)
+	 * @param p probability of going one level up, 0 < p < 1
+	 */
+	static LevelGenerator xorShift(long seed, double p) {
+		return new XorShift(seed, p);
+	}
+
+	/**
+	 * SplittableRandom generator, for use by one thread at a time.
+	 * @param seed the seed (the same seed gives the same levels)
+	 * @param p probability of going one level up, 0 < p < 1
+	 */
+	static Splittable splittable(long seed, double p) {
+		return new Splittable(new SplittableRandom(seed), p);
+	}
+
+	/**
+	 * ThreadLocalRandom generator: each thread draws from its own.
+	 * @param p probability of going one level up, 0 < p < 1
+	 */
+	static LevelGenerator perThread(double p) {
+		return new PerThread(p);
+	}
+
+	/**
+	 * The default: xorShift(), p = 1/2, seeded from System.nanoTime().
+	 */
+	static LevelGenerator fast() {
+		return new XorShift(System.nanoTime(), 0.5);
+	}
+
+	/**
+	 * Geometric: levels with probability p, from random bits.
+	 */
+	abstract class Geometric implements LevelGenerator {
+		final double p;
+		final int shift; // k when p = 2^-k, else 0
+
+		Geometric(double p) {
+			// When p is not a probability of going up
+			if (!(p > 0 && p < 1))
+				throw new IllegalArgumentException("p must be in (0, 1): " + p);
+
+			this.p = p;
+			int k = Math.getExponent(p);
+			shift = (p == Math.scalb(1.0, k)) ? -k : 0;
+		}
+
+		// 32 random bits
+		abstract int nextInt();
+
+		// uniform in [0, 1)
+		abstract double nextDouble();
+
+		public int nextLevel() {
+			// When p = 2^-k: k zero bits per level
+			if (shift > 0)
+				return 1 + Integer.numberOfLeadingZeros(nextInt()) / shift;
+
+			int level = 1;
+			while (level < MAX_LEVEL && nextDouble() < p)
+				level++;
+			return level;
+		}
+
+		/**
+		 * Probability of going one level up.
+		 */
+		public double probability() {
+			return p;
+		}
+
+		public String toString() {
+			return getClass().getSimpleName() + "(p=" + p + ")";
+		}
+	}
+
+	/**
+	 * Legacy: java.util.Random, p = 1/2.
+	 */
+	final class Legacy extends Geometric {
+		private final Random rand;
+
+		Legacy(Random rand) {
+			super(0.5);
+			this.rand = rand;
+		}
+
+		int nextInt() {
+			return rand.nextInt();
+		}
+
+		double nextDouble() {
+			return rand.nextDouble();
+		}
+	}
+
+	/**
+	 * XorShift: xorshift64* (Vigna), state in a plain long.
+	 */
+	final class XorShift extends Geometric {
+		private long state;
+
+		XorShift(long seed, double p) {
+			super(p);
+			// mixing the seed, as the state can't be 0
+			state = seed * 0x9E3779B97F4A7C15L + 0x632BE59BD9B4E019L;
+			if (state == 0)
+				state = 0x9E3779B97F4A7C15L;
+		}
+
+		private long next() {
+			state ^= state >>> 12;
+			state ^= state << 25;
+			state ^= state >>> 27;
+			return state * 0x2545F4914F6CDD1DL;
+		}
+
+		int nextInt() {
+			return (int) (next() >>> 32); // high bits are the best
+		}
+
+		double nextDouble() {
+			return (next() >>> 11) * 0x1.0p-53;
+		}
+	}
+
+	/**
+	 * Splittable: java.util.SplittableRandom.
+	 */
+	final class Splittable extends Geometric {
+		private final SplittableRandom rand;
+
+		Splittable(SplittableRandom rand, double p) {
+			super(p);
+			this.rand = rand;
+		}
+
+		int nextInt() {
+			return rand.nextInt();
+		}
+
+		double nextDouble() {
+			return rand.nextDouble();
+		}
+
+		/**
+		 * A new generator, independent of this one, with the same p
+		 * (deterministic, when this one is seeded).
+		 */
+		public Splittable split() {
+			return new Splittable(rand.split(), p);
+		}
+	}
+
+	/**
+	 * PerThread: ThreadLocalRandom of the calling thread.
+	 */
+	final class PerThread extends Geometric {
+		PerThread(double p) {
+			super(p);
+		}
+
+		int nextInt() {
+			return ThreadLocalRandom.current().nextInt();
+		}
+
+		double nextDouble() {
+			return ThreadLocalRandom.current().nextDouble();
+		}
+	}
+}
@@ -0,0 +1,462 @@
+package rsn170330.lp2;
+
+/**
+ * CS 5V81.001. Implementation of data structures and algorithms
+ * Long Project LP2: Skip List Implementation
+ *
+ * LockedSkipList: thread-safe wrapper of a SkipList, guarded by a
+ * read-write lock. Searches of SkipList (contains, floor, ceiling, get,
+ * first, last) keep their state in local variables, so they run under
+ * the shared read lock, in parallel. add, remove and rebuild write
+ * last[] and the links, so they run under the exclusive write lock.
+ *
+ * With a RebuildPolicy, the rebuilds it fires can run on a background
+ * thread: the elements are copied under the read lock, a perfect list is
+ * built from them without any lock, then, under the write lock, the adds
+ * and removes done in the meantime are replayed on it, and it is swapped
+ * in for the current list.
+ *
+ * With a WriteAheadLog, add and remove log each change under the write
+ * lock (in the order of the changes), then wait for it to be on disk
+ * after releasing the lock: readers never wait for the disk, and
+ * writers waiting together share one fsync (group commit).
+ */
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+public class LockedSkipList<T extends Comparable<? super T>> {
+	private SkipList<T> skipList; // swapped by a background rebuild
+	private final Lock readLock, writeLock;
+	
+	// policy: when to rebuild (null: never); background: on a thread
+	private RebuildPolicy policy;
+	private boolean background;
+	
+	// pending: adds (true) and removes (false) of pendingElements, done 
+	// while a background rebuild runs (null when none runs)
+	private List<Boolean> pending;
+	private List<T> pendingElements;
+	
+	// log of the changes (null: none)
+	private WriteAheadLog<T> log;
+
+	// Default Constructor
+	public LockedSkipList() {
+		this(new SkipList<T>());
+	}
+
+	/**
+	 * Wraps skipList, which must not be used directly afterwards.
+	 * @param skipList the list to be guarded
+	 */
+	public LockedSkipList(SkipList<T> skipList) {
+		this.skipList = skipList;
+
+		ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+		readLock = lock.readLock();
+		writeLock = lock.writeLock();
+	}
+
+	/**
+	 * Insert x in the Skip list.
+	 * @param x the element to be added
+	 * @return true on successful insertion, false otherwise
+	 */
+	public boolean add(T x) {
+		long lsn = 0; // of the record logged
+		
+		writeLock.lock();
+		try {
+			// When x is present already
+			if (!skipList.add(x))
+				return false;
+			
+			lsn = logged(x, true);
+			mutated(x, true);
+		} finally {
+			writeLock.unlock();
+		}
+		durable(lsn);
+		return true;
+	}
+
+	/**
+	 * Find the smallest element that is greater than or equal to x.
+	 * @param x the input element
+	 * @return the element immediate next to x
+	 */
+	public T ceiling(T x) {
+		readLock.lock();
+		try {
+			return skipList.ceiling(x);
+		} finally {
+			readLock.unlock();
+		}
+	}
+
+	/**
+	 * Does the Skip list contains x?
+	 * @param x the element to be searched
+	 * @return true when x is present, false if not
+	 */
+	public boolean contains(T x) {
+		readLock.lock();
+		try {
+			return skipList.contains(x);
+		} finally {
+			readLock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the first element of the Skip list.
+	 * @return the element
+	 */
+	public T first() {
+		readLock.lock();
+		try {
+			return skipList.first();
+		} finally {
+			readLock.unlock();
+		}
+	}
+
+	/**
+	 * Find the largest element that is less than or equal to x.
+	 * @param x the input element
+	 * @return the element previous to x
+	 */
+	public T floor(T x) {
+		readLock.lock();
+		try {
+			return skipList.floor(x);
+		} finally {
+			readLock.unlock();
+		}
+	}
+
+	/**
+	 * Performs action for each element in SORTED ORDER, holding
+	 * the read lock during the whole traversal.
+	 * @param action the action to be performed
+	 */
+	public void forEach(Consumer<? super T> action) {
+		readLock.lock();
+		try {
+			Iterator<T> it = skipList.iterator();
+			while (it.hasNext())
+				action.accept(it.next());
+		} finally {
+			readLock.unlock();
+		}
+	}
+
+	/**
+	 * Return element at index n of list.
+	 * @param n the input index
+	 * @return the element at index n
+	 */
+	public T get(int n) {
+		readLock.lock();
+		try {
+			return skipList.get(n);
+		} finally {
+			readLock.unlock();
+		}
+	}
+
+	/**
+	 * Is the list empty?
+	 * @return true when empty Skip list, otherwise false
+	 */
+	public boolean isEmpty() {
+		return size() < 1;
+	}
+
+	/**
+	 * Returns the last element of List.
+	 * @return the element
+	 */
+	public T last() {
+		readLock.lock();
+		try {
+			return skipList.last();
+		} finally {
+			readLock.unlock();
+		}
+	}
+
+	/**
+	 * Helper method - add() or remove() changed x, under the write lock: 
+	 * appends it to the log, if any. When the record can't be appended, 
+	 * the change is undone (the list stays what recovery would give) 
+	 * and the error thrown.
+	 * @return LSN of the record (0: no log)
+	 */
+	private long logged(T x, boolean added) {
+		// When there is no log
+		if (log == null)
+			return 0;
+		
+		try {
+			return added ? log.add(x) : log.remove(x);
+		} catch (IOException e) {
+			undo(x, added);
+			throw new UncheckedIOException(e);
+		} catch (RuntimeException e) {
+			undo(x, added);
+			throw e;
+		}
+	}
+	
+	/**
+	 * Helper method - logged(): undoes the add or remove of x.
+	 */
+	private void undo(T x, boolean added) {
+		if (added)
+			skipList.remove(x);
+		else
+			skipList.add(x);
+	}
+	
+	/**
+	 * Helper method - waits, without any lock, until record lsn is on 
+	 * disk (0: nothing logged).
+	 */
+	private void durable(long lsn) {
+		// When nothing was logged
+		if (lsn == 0)
+			return;
+		
+		try {
+			log.sync(lsn);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	/**
+	 * Helper method - add() or remove() changed x, under the write lock: 
+	 * logs it for a running background rebuild, and asks the policy 
+	 * whether to rebuild.
+	 */
+	private void mutated(T x, boolean added) {
+		if (pending != null) {
+			pending.add(added);
+			pendingElements.add(x);
+		}
+		
+		// When there is no policy
+		if (policy == null)
+			return;
+		
+		RebuildPolicy.Reason reason = policy.mutated(skipList, 1);
+		
+		// When the policy doesn't fire, or a rebuild is running already
+		if (reason == null || pending != null)
+			return;
+		
+		if (background) {
+			pending = new ArrayList<>();
+			pendingElements = new ArrayList<>();
+			
+			Thread thread = new Thread(() -> rebuildInBackground(reason), 
+					"LockedSkipList-rebuild");
+			thread.setDaemon(true);
+			thread.start();
+		}
+		else {
+			long start = System.nanoTime();
+			skipList.rebuild();
+			policy.rebuilt(reason, skipList.size(), System.nanoTime() - start, false);
+		}
+	}
+	
+	/**
+	 * Helper method - runs on the background thread: copies the list, 
+	 * builds a perfect one from the copy, replays the pending changes 
+	 * on it and swaps it in. When any of it fails, the list is left as 
+	 * it was, the pending changes are dropped (so the policy can fire 
+	 * again), and the error goes to the uncaught exception handler of 
+	 * the thread.
+	 */
+	private void rebuildInBackground(RebuildPolicy.Reason reason) {
+		long start = System.nanoTime();
+		SkipList<T> rebuilt = null;
+		
+		try {
+			List<T> elements = new ArrayList<>();
+			
+			readLock.lock();
+			try {
+				Iterator<T> it = skipList.iterator();
+				while (it.hasNext())
+					elements.add(it.next());
+			} finally {
+				readLock.unlock();
+			}
+			
+			// addSorted() on an empty list gives the heights of rebuild()
+			SkipList<T> copy = new SkipList<>();
+			copy.addSorted(elements.iterator());
+			
+			// metrics stay on (from 0) when they were
+			if (skipList.metricsRecorder() != null)
+				copy.setMetrics(true);
+			rebuilt = copy;
+		} finally {
+			writeLock.lock();
+			try {
+				// When the copy was rebuilt (else, an error is thrown)
+				if (rebuilt != null) {
+					// same levels as the old list (used by the replay 
+					// below, once no add() can use it on the old list)
+					rebuilt.setLevelGenerator(skipList.levelGenerator());
+					
+					// the copy may have missed any of the pending changes: 
+					// redone in order, they leave each element as it is now
+					for (int i = 0; i < pending.size(); i++) {
+						if (pending.get(i))
+							rebuilt.add(pendingElements.get(i));
+						else
+							rebuilt.remove(pendingElements.get(i));
+					}
+					skipList = rebuilt;
+					
+					policy.rebuilt(reason, skipList.size(), 
+							System.nanoTime() - start, true);
+				}
+			} finally {
+				// the rebuild is over, done or not
+				pending = null;
+				pendingElements = null;
+				writeLock.unlock();
+			}
+		}
+	}
+	
+	/**
+	 * Sets the policy for rebuilds to fire on their own, after add() or 
+	 * remove() (null: never).
+	 * @param policy the policy, whose events() log the rebuilds
+	 * @param background whether to rebuild a copy on a background 
+	 *        thread, and swap it in, rather than under the write lock
+	 */
+	public void setRebuildPolicy(RebuildPolicy policy, boolean background) {
+		writeLock.lock();
+		try {
+			this.policy = policy;
+			this.background = background;
+		} finally {
+			writeLock.unlock();
+		}
+	}
+	
+	/**
+	 * Sets the log of the changes: from now on, add() and remove() 
+	 * return once their change is on disk. The list must be the one 
+	 * recovered from log (WriteAheadLog.recover()).
+	 * @param log the log (null: none)
+	 */
+	public void setWriteAheadLog(WriteAheadLog<T> log) {
+		writeLock.lock();
+		try {
+			this.log = log;
+		} finally {
+			writeLock.unlock();
+		}
+	}
+	
+	/**
+	 * Saves the list to snapshot and starts the log over 
+	 * (WriteAheadLog.checkpoint()), under the read lock: readers go on, 
+	 * writers wait.
+	 * @param snapshot the snapshot to be (re)placed
+	 * @throws IOException on a write error
+	 */
+	public void checkpoint(Path snapshot) throws IOException {
+		readLock.lock();
+		try {
+			// When there is no log
+			if (log == null)
+				throw new IllegalStateException("no write-ahead log");
+			
+			log.checkpoint(skipList, snapshot);
+		} finally {
+			readLock.unlock();
+		}
+	}
+	
+	/**
+	 * Sets how the level of a new Entry is chosen 
+	 * (see SkipList.setLevelGenerator()).
+	 * @param levelGenerator the generator, used under the write lock
+	 */
+	public void setLevelGenerator(LevelGenerator levelGenerator) {
+		writeLock.lock();
+		try {
+			skipList.setLevelGenerator(levelGenerator);
+		} finally {
+			writeLock.unlock();
+		}
+	}
+	
+	/**
+	 * Reorganize the elements of the list into a perfect skip list.
+	 */
+	public void rebuild() {
+		writeLock.lock();
+		try {
+			skipList.rebuild();
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Removes x from the list, if present.
+	 * @param x the element to be removed
+	 * @return removed element, if present, else null
+	 */
+	public T remove(T x) {
+		long lsn = 0; // of the record logged
+		T removed;
+		
+		writeLock.lock();
+		try {
+			removed = skipList.remove(x);
+			
+			// When x is not present
+			if (removed == null)
+				return null;
+			
+			lsn = logged(removed, false);
+			mutated(x, false);
+		} finally {
+			writeLock.unlock();
+		}
+		durable(lsn);
+		return removed;
+	}
+
+	/**
+	 * Return the number of elements in the list
+	 * @return the size of the list
+	 */
+	public int size() {
+		readLock.lock();
+		try {
+			return skipList.size();
+		} finally {
+			readLock.unlock();
+		}
+	}
+}
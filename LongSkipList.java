@@ -0,0 +1,534 @@
+package rsn170330.lp2;
+
+/**
+ * CS 5V81.001. Implementation of data structures and algorithms
+ * Long Project LP2: Skip List Implementation
+ *
+ * LongSkipList: SkipList specialized for primitive long keys.
+ * Same operations as SkipList<Long>, but keys are never boxed, and
+ * comparisons are plain (<, ==) instead of virtual compareTo() calls.
+ *
+ * Long.MIN_VALUE is reserved (NONE) to report "no such element" from
+ * first(), last(), floor() and ceiling(), where SkipList returns null.
+ */
+
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+public class LongSkipList {
+	static final int POSSIBLE_LEVELS = SkipList.POSSIBLE_LEVELS;
+
+	// returned when there is no such element (null in SkipList)
+	public static final long NONE = Long.MIN_VALUE;
+
+	// Dummy header & tail is created.
+	private Entry head, tail;
+
+	// maxLevel is the level equal to the longest next[]
+	public int size, maxLevel;
+
+	// last[i]: Entry at which search came down from level i
+	private Entry[] last; // used by find
+
+	// distanceTraversed[i]: distance traversed on level i,
+	// as search came down from last[i] to level i-1
+	private int[] distanceTraversed; // used for updating span[]
+
+	// for random height (like using coin-flip, see LevelGenerator)
+	private LevelGenerator levelGenerator;
+
+	static class Entry {
+		long element;
+		Entry[] next;
+		Entry prev;
+		int height;
+
+		// span[i]: storing distance of the Entry in next[i]
+		// from the current Entry
+		int[] span; // for indexing
+
+		// Parameterized Constructor:
+		public Entry(long x, int level) {
+			element = x;
+			next = new Entry[level];
+			height = level;
+
+			span = new int[level];
+		}
+
+		// Returns the element of this Entry
+		public long getElement() {
+			return element;
+		}
+	}
+
+	// Default Constructor
+	public LongSkipList() {
+		head = new Entry(NONE, POSSIBLE_LEVELS);
+		tail = new Entry(NONE, POSSIBLE_LEVELS);
+
+		size = 0;
+		maxLevel = 1;
+
+		last = new Entry[POSSIBLE_LEVELS];
+		distanceTraversed = new int[POSSIBLE_LEVELS];
+
+		levelGenerator = LevelGenerator.fast();
+
+		// Each entry in head.next[] points to tail
+		for (int i = 0; i < POSSIBLE_LEVELS; i++) {
+			head.next[i] = tail;
+			head.span[i] = 1; // tail 1 distance away
+		}
+
+		// When list is empty, head is previous of tail
+		tail.prev = head;
+	}
+
+	// LongSkipListIterator: traverses the list without boxing
+	private class LongSkipListIterator implements PrimitiveIterator.OfLong {
+		Entry cursor, prevEntry;
+		boolean ready; // is Cursor ready to be removed
+
+		LongSkipListIterator() {
+			cursor = head;
+			prevEntry = null;
+			ready = false;
+		}
+
+		/**
+		 * Returns true if Iterator has more element to iterate.
+		 */
+		public boolean hasNext() {
+			return cursor.next[0] != tail;
+		}
+
+		/**
+		 * Returns the next element, as a primitive long.
+		 * @throws NoSuchElementException if there is no next element
+		 */
+		public long nextLong() {
+			// When there is no next element
+			if (!hasNext())
+				throw new NoSuchElementException("There is no next element.");
+
+			prevEntry = cursor; // prevEntry is cursor now
+			cursor = cursor.next[0]; // cursor++
+			ready = true; // we can do remove after this next()
+			return cursor.element;
+		}
+
+		/**
+		 * Removes the current element in the collection.
+		 * @throws NoSuchElementException if called before next()
+		 */
+		public void remove() {
+			// When remove operation cannot be done!
+			if (!ready)
+				throw new NoSuchElementException("Illegal State.");
+
+			find(cursor.element);
+			unlink(cursor);
+
+			cursor = prevEntry; // after removal, cursor is prevEntry
+			ready = false;
+		}
+	}
+
+	/**
+	 * Insert x in the Skip list.
+	 * @param x the element to be added
+	 * @return true on successful insertion, false if already present
+	 * @throws IllegalArgumentException when x is NONE
+	 */
+	public boolean add(long x) {
+		// NONE is reserved for "no such element"
+		if (x == NONE)
+			throw new IllegalArgumentException("NONE cannot be added.");
+
+		// When x is already present
+		if (contains(x))
+			return false;
+
+		int i = 0;
+
+		// prevPosition: distance of last[i] from head on find(x)
+		// newPosition: prevPosition + 1 (where we'll add the x)
+		int prevPosition = 0, newPosition = 0;
+
+		// total distance traversed by find(x)
+		for (i = 0; i < maxLevel; i++) {
+			prevPosition += distanceTraversed[i];
+		}
+
+		int level = chooseLevel(); // length of next[] of x's Entry
+		Entry ent = new Entry(x, level);
+
+		// will do insertion at newPosition
+		newPosition = prevPosition + 1;
+
+		// for each level of newly created Entry ent
+		for (i = 0; i < level; i++) {
+
+			// When no Entry in last[], to avoid NPE
+			if (last[i] == null)
+				break;
+
+			// re-establishing the next links
+			ent.next[i] = last[i].next[i];
+			last[i].next[i] = ent;
+
+			// re-establishing the span's prevPosition
+			ent.span[i] = prevPosition + last[i].span[i] - newPosition + 1;
+			last[i].span[i] = newPosition - prevPosition;
+
+			// distance of last[i+1] from head
+			prevPosition = prevPosition - distanceTraversed[i];
+		}
+		// Updating the proper height
+		ent.height = i;
+
+		// re-establishing the previous links
+		ent.next[0].prev = ent;
+		ent.prev = last[0];
+
+		// Increment the span of the last array elements
+		// by 1 if no re-pointing is done
+		while (i < last.length){
+			// When no Entry in last[i]
+			if (last[i] == null)
+				break;
+
+			last[i].span[i]++;
+			i++;
+		}
+		size++;
+
+		// Update the unused head span with the size+1
+		// (tail will be at size + 1)
+		for (int j = 0; j < POSSIBLE_LEVELS; j++){
+			if (head.next[j] == tail)
+				head.span[j] = size + 1;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Helper method - add(x)
+	 * Chooses a random level
+	 * @return return the level
+	 */
+	public int chooseLevel() {
+		int lev = levelGenerator.nextLevel();
+
+		// to allow maxLevel to grow gradually
+		lev = Math.min(lev,  maxLevel + 1);
+
+		if (maxLevel < lev)
+			maxLevel = lev;
+
+		return lev;
+	}
+	/**
+	 * Sets how the level of a new Entry is chosen, e.g. with another
+	 * probability p, or seeded for a reproducible run.
+	 * @param levelGenerator the generator (see LevelGenerator)
+	 */
+	public void setLevelGenerator(LevelGenerator levelGenerator) {
+		this.levelGenerator = levelGenerator;
+	}
+
+
+	/**
+	 * Find the smallest element that is greater than or equal to x.
+	 * @param x the input element
+	 * @return the element immediate next to x, NONE if there is none
+	 */
+	public long ceiling(long x) {
+		// When list is empty, or x greater than the last element
+		if (isEmpty() || x > last())
+			return NONE;
+
+		// When x is smaller than the first element
+		if (x < first())
+			return first();
+
+		// When there is no such element in the list
+		if (!contains(x))
+			// just return the next of last[0] from find(x)
+			return last[0].next[0].element;
+
+		return x; // We have x
+	}
+
+	/**
+	 * Does the Skip list contains x?
+	 * @param x the element to be searched
+	 * @return true when x is present, false if not
+	 */
+	public boolean contains(long x) {
+		// Tries to find x, updating last[] accordingly
+		find(x);
+
+		Entry ent = last[0].next[0];
+		return ent != tail && ent.element == x;
+	}
+
+	/**
+	 * Helper method to search for x.
+	 * Sets last[i] = node at which search came down from
+	 * level i to i-1
+	 * @param x the element to be searched
+	 */
+	private void find(long x) {
+		Entry p = head; // like cursor
+
+		// No of useful levels of head.next[]: 1 to maxLevel
+		for (int i = 0; i < maxLevel; i++) {
+			int in = maxLevel - 1 - i; // starting from top
+			int distance = 0; // distance traversed on level in
+
+			// tail has no meaningful element, so stop at it
+			while (p.next[in] != tail && p.next[in].element < x) {
+				distance += p.span[in];
+				p = p.next[in]; // moving further
+			}
+			distanceTraversed[in] = distance;
+			last[in] = p; // entry at which search came down
+		}
+	}
+
+	/**
+	 * Returns the first element of the Skip list.
+	 * @return the element, NONE when empty
+	 */
+	public long first() {
+		return head.next[0].element; // tail.element is NONE
+	}
+
+	/**
+	 * Find the largest element that is less than or equal to x.
+	 * @param x the input element
+	 * @return the element previous to x, NONE if there is none
+	 */
+	public long floor(long x) {
+		// When list is empty, or x is smaller than the first element
+		if (isEmpty() || x < first())
+			return NONE;
+
+		// When x greater than the last element
+		if (x > last())
+			return last();
+
+		// When there is no such element in the list
+		if (!contains(x))
+			// just return the last[0].element from find(x)
+			return last[0].element;
+
+		return x; // We have x
+	}
+
+	/**
+	 * Return element at index n of list.
+	 * First element is at index 0.
+	 * @param n the input index
+	 * @return the element at index n
+	 */
+	public long get(int n) {
+		// default access: Running Time = O(log n)
+		return getLog(n);
+	}
+
+	/**
+	 * Helper method - get():
+	 * RT: O(n) algorithm expected time for get(n)
+	 * @param n the input index
+	 * @return the element at index n
+	 * @throws NoSuchElementException When n is invalid index
+	 */
+	public long getLinear(int n) throws NoSuchElementException {
+		// When invalid input index
+		if (n < 0 || size - 1 < n)
+			throw new NoSuchElementException();
+
+		Entry p = head; // like cursor
+
+		// traversing through slowest/lowest express-way
+		for (int i = 0; i < n; i++)
+			p = p.next[0];
+
+		return p.next[0].element;
+	}
+
+	/**
+	 * Helper method - get():
+	 * RT: O(log n) algorithm expected time for get(n), using span[]
+	 * @param n the input index
+	 * @return the element at index n
+	 * @throws NoSuchElementException When n is invalid index
+	 */
+	public long getLog(int n) throws NoSuchElementException {
+		// position: index + 1
+		int position = n + 1;
+
+		// When invalid input index
+		if (n < 0 || size - 1 < n)
+			throw new NoSuchElementException();
+
+		// counter of distance traversed horizontally
+		int visitedPosition = 0;
+		Entry p = head; // like cursor/ pointer
+
+		// Iterating top-down from the highest useful level
+		for (int i = maxLevel - 1; i > -1; i--) {
+
+			// Traverse level i until we didn't go past our position
+			while ((p.span[i] + visitedPosition) < position) {
+				visitedPosition += p.span[i];
+				p = p.next[i]; // traversing p on the same level
+			}
+		}
+		// p is at (position-1), so return just immediate next element
+		return p.next[0].element;
+	}
+
+	/**
+	 * Is the list empty?
+	 * @return true when empty Skip list, otherwise false
+	 */
+	public boolean isEmpty() {
+		return size() < 1;
+	}
+
+	/**
+	 * Iterate through the elements of list in SORTED ORDER.
+	 * @return iterator, with nextLong() to avoid boxing
+	 */
+	public PrimitiveIterator.OfLong iterator() {
+		return new LongSkipListIterator();
+	}
+
+	/**
+	 * Returns the last element of List.
+	 * @return the element, NONE when empty
+	 */
+	public long last() {
+		return tail.prev.element; // head.element is NONE
+	}
+
+	/**
+	 * Reorganize the elements of the list into a perfect skip list.
+	 * Same algorithm as SkipList.rebuild().
+	 */
+	public void rebuild() {
+		// Nothing to reorganize
+		if (size == 0)
+			return;
+
+		// computing maxLevel required for rebuild()
+		int newMaxLevel = 32 - Integer.numberOfLeadingZeros(size);
+
+		// previous[i]: last Entry linked at level i so far
+		Entry[] previous = new Entry[newMaxLevel];
+		int[] prevPosition = new int[newMaxLevel];
+
+		for (int i = 0; i < newMaxLevel; i++)
+			previous[i] = head;
+
+		Entry p = head.next[0]; // p is the first entry
+		int position = 0;
+
+		// While p doesn't reach tail
+		while (p != tail) {
+			position++;
+			Entry following = p.next[0];
+
+			// perfect height at position: 1 + (exponent of 2 in position)
+			int height = Math.min(Integer.numberOfTrailingZeros(position),
+					newMaxLevel - 1) + 1;
+
+			// new next[] and span[] with exact height
+			p.height = height;
+			p.next = new Entry[height];
+			p.span = new int[height];
+
+			// all such entries at levels below height now point to p
+			for (int i = 0; i < height; i++) {
+				previous[i].next[i] = p;
+				previous[i].span[i] = position - prevPosition[i];
+				previous[i] = p;
+				prevPosition[i] = position;
+			}
+			p.next[0] = following;
+			p = following;
+		}
+
+		// end-stops at each level point to tail
+		for (int i = 0; i < POSSIBLE_LEVELS; i++) {
+			if (i < newMaxLevel) {
+				previous[i].next[i] = tail;
+				previous[i].span[i] = size + 1 - prevPosition[i];
+			}
+			else {
+				head.next[i] = tail;
+				head.span[i] = size + 1;
+			}
+			last[i] = null; // stale frontier
+		}
+		maxLevel = newMaxLevel;
+	}
+
+	/**
+	 * Removes x from the list, if present.
+	 * @param x the element to be removed
+	 * @return true when x was removed, false if not present
+	 */
+	public boolean remove(long x) {
+		// When there is no x in the list
+		if (!contains(x)) return false;
+
+		unlink(last[0].next[0]);
+		return true;
+	}
+
+	/**
+	 * Helper method - remove(): unlinks ent, with last[]
+	 * set by find(ent.element)
+	 * @param ent the entry to be removed
+	 */
+	private void unlink(Entry ent) {
+		int i = 0;
+		// Merging links which pointed to ent with links where
+		// ent's next[] were pointed to, at each level
+		while (i < ent.height) {
+			last[i].next[i] = ent.next[i];
+			// adding two spans, -1 for removed
+			last[i].span[i] = last[i].span[i] + ent.span[i] - 1;
+			i++;
+		}
+		ent.next[0].prev = last[0];
+
+		// update spans above height for last[]
+		// but, unaffected next[] pointers!
+		while (i < maxLevel) {
+			last[i].span[i]--;
+			i++;
+		}
+		size--;
+
+		// update span of un-used head levels (tail at size + 1)
+		for (i = 0; i < POSSIBLE_LEVELS; i++) {
+			if (head.next[i] == tail)
+				head.span[i] = size + 1;
+		}
+	}
+
+	/**
+	 * Return the number of elements in the list
+	 * @return the size of the list
+	 */
+	public int size() {
+		return this.size;
+	}
+}
@@ -0,0 +1,375 @@
+package rsn170330.lp2;
+
+/**
+ * CS 5V81.001. Implementation of data structures and algorithms
+ * Long Project LP2: Skip List Implementation
+ *
+ * OpLog: the operations of a test file (lp2-test/*.txt), parsed up-front
+ * into an opcode array and an operand array, so that SkipListDriver can
+ * time parsing and the Skip list separately.
+ *
+ * Text files are tokenized byte by byte from a FileChannel: operation
+ * names are told apart by their first two characters, and operands are
+ * accumulated as longs, so no String is created per line.
+ *
+ * Binary op-logs are much smaller and faster to read: the 4-byte MAGIC
+ * "LP2B", then for each operation its opcode byte, followed (for
+ * operations with an operand) by the operand as a zig-zag varint;
+ * the last opcode is END.
+ *
+ * To convert a text file into a binary op-log:
+ *  $java rsn170330.lp2.OpLog lp2-test/lp2-t16.txt lp2-t16.bin
+ */
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+public class OpLog {
+	// opcodes
+	public static final byte END = 0, ADD = 1, REMOVE = 2, CONTAINS = 3,
+			FLOOR = 4, CEILING = 5, GET = 6, FIRST = 7, LAST = 8;
+
+	// first 4 bytes of a binary op-log: "LP2B"
+	static final int MAGIC = 0x4C503242;
+
+	private byte[] ops;
+	private long[] operands;
+	private int size;
+
+	// Default Constructor
+	public OpLog() {
+		ops = new byte[1024];
+		operands = new long[1024];
+		size = 0;
+	}
+
+	/**
+	 * Appends an operation (operand is ignored for FIRST and LAST).
+	 * @param op the opcode
+	 * @param operand the operand
+	 */
+	public void append(byte op, long operand) {
+		// When the arrays are full, double them
+		if (size == ops.length) {
+			ops = Arrays.copyOf(ops, 2 * size);
+			operands = Arrays.copyOf(operands, 2 * size);
+		}
+		ops[size] = op;
+		operands[size] = operand;
+		size++;
+	}
+
+	/**
+	 * Does the operation take an operand?
+	 * @param op the opcode
+	 * @return true for all but FIRST, LAST and END
+	 */
+	public static boolean hasOperand(byte op) {
+		return op != FIRST && op != LAST && op != END;
+	}
+
+	/**
+	 * Returns the opcode of the i-th operation.
+	 */
+	public byte op(int i) {
+		return ops[i];
+	}
+
+	/**
+	 * Returns the operand of the i-th operation.
+	 */
+	public long operand(int i) {
+		return operands[i];
+	}
+
+	/**
+	 * Number of operations (END excluded).
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Reads a text or binary op-log (told apart by MAGIC).
+	 * @param path the file to be read
+	 * @return the operations
+	 * @throws IOException on a read error, or an invalid file
+	 */
+	public static OpLog read(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			return read(channel);
+		}
+	}
+
+	/**
+	 * Reads a text or binary op-log (told apart by MAGIC).
+	 * @param in the stream to be read, e.g. System.in
+	 * @return the operations
+	 * @throws IOException on a read error, or invalid input
+	 */
+	public static OpLog read(InputStream in) throws IOException {
+		return read(Channels.newChannel(in));
+	}
+
+	private static OpLog read(ReadableByteChannel channel) throws IOException {
+		ByteReader reader = new ByteReader(channel);
+
+		if (reader.startsWith(MAGIC))
+			return readBinary(reader);
+		return readText(reader);
+	}
+
+	/**
+	 * Helper method - read(): tokenizes a text file, until End.
+	 */
+	private static OpLog readText(ByteReader reader) throws IOException {
+		OpLog log = new OpLog();
+
+		while (true) {
+			int c = reader.skipWhitespace();
+
+			// When the file ends without End
+			if (c < 0)
+				return log;
+
+			byte op = opcode(c, reader.read());
+			reader.skipToken();
+
+			if (op == END)
+				return log;
+
+			long operand = hasOperand(op) ? reader.readLong() : 0;
+			log.append(op, operand);
+		}
+	}
+
+	/**
+	 * Helper method - readText(): tells the operation from the
+	 * first two characters of its name.
+	 * @return the opcode
+	 * @throws IOException When it isn't a known operation
+	 */
+	private static byte opcode(int c0, int c1) throws IOException {
+		switch (c0) {
+			case 'A': return ADD;
+			case 'R': return REMOVE;
+			case 'G': return GET;
+			case 'L': return LAST;
+			case 'E': return END;
+			case 'C': {
+				if (c1 == 'o') return CONTAINS;
+				if (c1 == 'e') return CEILING;
+				break;
+			}
+			case 'F': {
+				if (c1 == 'i') return FIRST;
+				if (c1 == 'l') return FLOOR;
+				break;
+			}
+		}
+		throw new IOException("Unknown operation, starting with: "
+				+ (char) c0 + (char) c1);
+	}
+
+	/**
+	 * Helper method - read(): decodes a binary op-log, after MAGIC.
+	 */
+	private static OpLog readBinary(ByteReader reader) throws IOException {
+		OpLog log = new OpLog();
+
+		while (true) {
+			int op = reader.read();
+
+			// When the op-log ends without END
+			if (op < 0 || op == END)
+				return log;
+
+			// When invalid opcode
+			if (op > LAST)
+				throw new IOException("Invalid opcode: " + op);
+
+			long operand = 0;
+			if (hasOperand((byte) op)) {
+				long zigzag = reader.readVarLong();
+				operand = (zigzag >>> 1) ^ -(zigzag & 1);
+			}
+			log.append((byte) op, operand);
+		}
+	}
+
+	/**
+	 * Writes the operations as a binary op-log.
+	 * @param path the file to be written
+	 * @throws IOException on a write error
+	 */
+	public void writeBinary(Path path) throws IOException {
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(Files.newOutputStream(path), 1 << 16))) {
+			out.writeInt(MAGIC);
+
+			for (int i = 0; i < size; i++) {
+				out.writeByte(ops[i]);
+
+				if (hasOperand(ops[i])) {
+					// zig-zag: small negative numbers stay small
+					long zigzag = (operands[i] << 1) ^ (operands[i] >> 63);
+
+					// varint: 7 bits per byte, high bit = more to come
+					while ((zigzag & ~0x7FL) != 0) {
+						out.writeByte((int) (zigzag & 0x7F) | 0x80);
+						zigzag >>>= 7;
+					}
+					out.writeByte((int) zigzag);
+				}
+			}
+			out.writeByte(END);
+		}
+	}
+
+	/**
+	 * ByteReader: reads a channel through a reusable buffer,
+	 * one byte at a time.
+	 */
+	private static class ByteReader {
+		private final ReadableByteChannel channel;
+		private final ByteBuffer buffer;
+		private boolean eof;
+
+		ByteReader(ReadableByteChannel channel) throws IOException {
+			this.channel = channel;
+			buffer = ByteBuffer.allocateDirect(1 << 16);
+			buffer.limit(0);
+			eof = false;
+		}
+
+		/**
+		 * Returns the next byte (0 to 255), or -1 at the end.
+		 */
+		int read() throws IOException {
+			if (!buffer.hasRemaining() && !fill())
+				return -1;
+			return buffer.get() & 0xFF;
+		}
+
+		// refills the buffer, returns false at the end
+		private boolean fill() throws IOException {
+			buffer.clear();
+
+			while (!eof && buffer.position() == 0) {
+				if (channel.read(buffer) < 0)
+					eof = true;
+			}
+			buffer.flip();
+			return buffer.hasRemaining();
+		}
+
+		/**
+		 * Do the first 4 bytes equal magic? If so, they are skipped.
+		 */
+		boolean startsWith(int magic) throws IOException {
+			fill();
+
+			// reading on, until at least 4 bytes are in the buffer
+			while (!eof && buffer.remaining() < 4) {
+				buffer.compact();
+				if (channel.read(buffer) < 0)
+					eof = true;
+				buffer.flip();
+			}
+
+			if (buffer.remaining() >= 4 && buffer.getInt(0) == magic) {
+				buffer.position(4);
+				return true;
+			}
+			return false;
+		}
+
+		/**
+		 * Skips white space, returns the first other byte (or -1).
+		 */
+		int skipWhitespace() throws IOException {
+			int c = read();
+			while (c == ' ' || c == '\n' || c == '\r' || c == '\t')
+				c = read();
+			return c;
+		}
+
+		/**
+		 * Skips the rest of the current token.
+		 */
+		void skipToken() throws IOException {
+			int c = read();
+			while (c > ' ')
+				c = read();
+		}
+
+		/**
+		 * Reads a (optionally negative) decimal long.
+		 * @throws IOException When there is no number
+		 */
+		long readLong() throws IOException {
+			int c = skipWhitespace();
+			boolean negative = (c == '-');
+			if (negative)
+				c = read();
+
+			// When there is no digit
+			if (c < '0' || c > '9')
+				throw new IOException("Operand expected");
+
+			long value = 0;
+			while (c >= '0' && c <= '9') {
+				value = 10 * value + (c - '0');
+				c = read();
+			}
+			return negative ? -value : value;
+		}
+
+		/**
+		 * Reads a varint: 7 bits per byte, least significant first.
+		 * @throws IOException When the op-log ends within it
+		 */
+		long readVarLong() throws IOException {
+			long value = 0;
+
+			for (int shift = 0; shift < 64; shift += 7) {
+				int b = read();
+
+				// When the op-log ends within the varint
+				if (b < 0)
+					throw new IOException("Truncated operand");
+
+				value |= (long) (b & 0x7F) << shift;
+				if ((b & 0x80) == 0)
+					return value;
+			}
+			throw new IOException("Invalid operand");
+		}
+	}
+
+	//---------------------------- MAIN ----------------------------//
+	// Converts a text (or binary) op-log into a binary op-log.
+	public static void main(String[] args) throws IOException {
+		// When input or output is missing
+		if (args.length < 2) {
+			System.out.println("Usage: java rsn170330.lp2.OpLog <in.txt> <out.bin>");
+			return;
+		}
+
+		OpLog log = read(Paths.get(args[0]));
+		log.writeBinary(Paths.get(args[1]));
+
+		System.out.println(log.size() + " operations written to " + args[1]);
+	}
+}
@@ -0,0 +1,196 @@
+package rsn170330.lp2;
+
+/**
+ * CS 5V81.001. Implementation of data structures and algorithms
+ * Long Project LP2: Skip List Implementation
+ *
+ * RebuildPolicy: decides when a Skip list should rebuild() itself, and
+ * keeps a log of the rebuilds it triggered. Attached to a SkipList (or
+ * LockedSkipList, which can also rebuild on a background thread) with
+ * setRebuildPolicy().
+ *
+ * A rebuild fires:
+ *  - after mutationLimit mutations since the previous one, or
+ *  - when the list has degraded: its search cost is degradationLimit
+ *    times that of a perfect skip list of the same size. The cost is the
+ *    sampled comparisons per search since the previous check, when the
+ *    list has metrics on (and searched enough), otherwise the expected
+ *    cost estimated from the number of entries on each level, which walks
+ *    the list. So the check is done every max(MIN_CHECK, size /
+ *    CHECK_FRACTION) mutations, i.e. O(1) amortized per mutation.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class RebuildPolicy {
+	// mutations between two degradation checks: at least MIN_CHECK,
+	// and at least 1/CHECK_FRACTION of the size
+	static final int MIN_CHECK = 1024, CHECK_FRACTION = 4;
+
+	// why a rebuild fired
+	public enum Reason { MUTATIONS, DEGRADATION }
+
+	/**
+	 * Event: a rebuild fired by the policy.
+	 */
+	public static class Event {
+		public final long time; // System.currentTimeMillis(), when done
+		public final Reason reason;
+		public final int size;
+		public final double degradation; // NaN when it wasn't measured
+		public final long nanos; // time taken by the rebuild
+		public final boolean background;
+
+		Event(Reason reason, int size, double degradation, long nanos,
+				boolean background) {
+			this.time = System.currentTimeMillis();
+			this.reason = reason;
+			this.size = size;
+			this.degradation = degradation;
+			this.nanos = nanos;
+			this.background = background;
+		}
+
+		public String toString() {
+			return String.format("%tT.%<tL %s size=%d degradation=%.2f "
+					+ "%.3f msec.%s", time, reason, size, degradation,
+					nanos / 1e6, background ? " (background)" : "");
+		}
+	}
+
+	private final int mutationLimit; // 0: no limit
+	private final double degradationLimit; // 0: no limit
+
+	private int mutations; // since the previous rebuild
+	private int unchecked; // since the previous degradation check
+	private double degradation; // at the latest check (NaN: none)
+
+	// metrics totals at the previous check
+	private long searches, comparisons;
+
+	private final List<Event> events;
+
+	/**
+	 * @param mutationLimit rebuild after that many mutations (0: never)
+	 * @param degradationLimit rebuild when the expected search cost is
+	 *        that many times the cost of a perfect list (0: never),
+	 *        e.g. 1.25
+	 */
+	public RebuildPolicy(int mutationLimit, double degradationLimit) {
+		this.mutationLimit = mutationLimit;
+		this.degradationLimit = degradationLimit;
+
+		mutations = 0;
+		unchecked = 0;
+		degradation = Double.NaN;
+		events = new ArrayList<>();
+	}
+
+	/**
+	 * Records count mutations of list, and tells whether to rebuild.
+	 * @param list the list just mutated
+	 * @param count number of elements added or removed
+	 * @return the reason to rebuild, or null when not to
+	 */
+	Reason mutated(SkipList<?> list, int count) {
+		mutations += count;
+		unchecked += count;
+		degradation = Double.NaN;
+
+		// When there were too many mutations
+		if (mutationLimit > 0 && mutations >= mutationLimit)
+			return Reason.MUTATIONS;
+
+		// When it is time to measure the degradation
+		if (degradationLimit > 0 && unchecked >=
+				Math.max(MIN_CHECK, list.size() / CHECK_FRACTION)) {
+			unchecked = 0;
+			degradation = degradation(list);
+
+			if (degradation >= degradationLimit)
+				return Reason.DEGRADATION;
+		}
+		return null;
+	}
+
+	/**
+	 * Logs a rebuild, and starts counting again.
+	 * @param reason returned by mutated()
+	 * @param size size of the list
+	 * @param nanos time taken by the rebuild
+	 * @param background whether the rebuild ran on a background thread
+	 */
+	synchronized void rebuilt(Reason reason, int size, long nanos,
+			boolean background) {
+		events.add(new Event(reason, size, degradation, nanos, background));
+		mutations = 0;
+		unchecked = 0;
+	}
+
+	/**
+	 * The rebuilds fired by the policy, oldest first.
+	 * @return a copy of the log
+	 */
+	public synchronized List<Event> events() {
+		return new ArrayList<>(events);
+	}
+
+	/**
+	 * Helper method - mutated(): search cost of list relative to a 
+	 * perfect skip list, sampled by metrics when there are enough 
+	 * searches since the previous check, else estimated.
+	 */
+	private double degradation(SkipList<?> list) {
+		SkipListMetrics metrics = list.metricsRecorder();
+
+		if (metrics != null) {
+			long sampled = metrics.searches - searches;
+			double mean = (double) (metrics.totalComparisons - comparisons)
+					/ Math.max(sampled, 1);
+			searches = metrics.searches;
+			comparisons = metrics.totalComparisons;
+
+			// When there were enough searches to go by
+			if (sampled >= MIN_CHECK)
+				return mean / searchCost(perfectOccupancy(list.size()));
+		}
+		return degradation(list.occupancy(), list.size());
+	}
+
+	/**
+	 * Expected search cost relative to a perfect skip list
+	 * (1: as good as perfect).
+	 * @param occupancy occupancy[i]: entries with a link on level i
+	 * @param size number of elements
+	 */
+	static double degradation(int[] occupancy, int size) {
+		return searchCost(occupancy) / searchCost(perfectOccupancy(size));
+	}
+
+	/**
+	 * A perfect list has floor(size / 2^i) entries on level i.
+	 */
+	static int[] perfectOccupancy(int size) {
+		int[] perfect = new int[32 - Integer.numberOfLeadingZeros(size)];
+		for (int i = 0; i < perfect.length; i++)
+			perfect[i] = size >> i;
+		return perfect;
+	}
+
+	/**
+	 * Expected comparisons of a search, from the occupancy of the levels:
+	 * on level i, a search goes through half of the (occupancy[i] + 1) /
+	 * (occupancy[i+1] + 1) links under a level i+1 link, plus 1.
+	 */
+	static double searchCost(int[] occupancy) {
+		double cost = 0;
+
+		for (int i = 0; i < occupancy.length; i++) {
+			int above = (i + 1 < occupancy.length) ? occupancy[i + 1] : 0;
+			double links = (occupancy[i] + 1.0) / (above + 1.0);
+			cost += (links + 1) / 2;
+		}
+		return Math.max(cost, 1);
+	}
+}
@@ -0,0 +1,587 @@
+package rsn170330.lp2;
+
+/**
+ * CS 5V81.001. Implementation of data structures and algorithms
+ * Long Project LP2: Skip List Implementation
+ *
+ * ShardedSkipList: thread-safe sorted set whose key space is split in
+ * ranges (shards), each one a SkipList with its own read-write lock.
+ * Threads on different shards never wait for each other; on the same
+ * shard, they share it as in LockedSkipList.
+ *
+ * The Index of the shards holds the lowest key of each one (a lookup
+ * finds its shard by binary search) and a Fenwick tree of their sizes,
+ * so get(n), indexOf(x) and rankOf(x) find the shard, and the number of
+ * elements before it, in O(log shards), then search it in O(log n).
+ *
+ * A shard with more than capacity elements is split in halves, and a
+ * shard with fewer than capacity / 8 is merged with a neighbour (when
+ * both together fit in capacity / 2). Either one takes every lock,
+ * in order, and swaps in a new Index: it is rare (once per capacity / 2
+ * adds or removes on the shard, at most) and linear in the shard.
+ *
+ * A lookup that spans shards (floor, ceiling, first, last, get, size)
+ * is not atomic: adds and removes on other shards may run meanwhile,
+ * as in java.util.concurrent.ConcurrentSkipListSet.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+public class ShardedSkipList<T extends Comparable<? super T>> {
+	// elements per shard before it is split
+	public static final int DEFAULT_CAPACITY = 1 << 16;
+
+	private final int capacity;
+	private volatile Index<T> index; // swapped by rebalance()
+
+	// held by the thread splitting or merging
+	private final ReentrantLock rebalance = new ReentrantLock();
+
+	/**
+	 * Shard: a range of the keys, in a SkipList of its own.
+	 */
+	static final class Shard<T extends Comparable<? super T>> {
+		final SkipList<T> skipList;
+		final Lock readLock, writeLock;
+
+		Shard(SkipList<T> skipList) {
+			this.skipList = skipList;
+
+			ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+			readLock = lock.readLock();
+			writeLock = lock.writeLock();
+		}
+	}
+
+	/**
+	 * Index: the shards, in order of their keys. Replaced as a whole
+	 * when a shard is split or merged, with every shard locked: a
+	 * thread holding the lock of a shard sees the current Index.
+	 */
+	static final class Index<T extends Comparable<? super T>> {
+		final T[] lows; // lows[i]: lowest key of shard i (lows[0]: unused)
+		final Shard<T>[] shards;
+		final AtomicIntegerArray tree; // Fenwick tree of the sizes, from 1
+
+		Index(T[] lows, Shard<T>[] shards) {
+			this.lows = lows;
+			this.shards = shards;
+
+			// linear construction: each node adds itself to its parent
+			tree = new AtomicIntegerArray(shards.length + 1);
+			for (int i = 1; i <= shards.length; i++) {
+				int size = tree.get(i) + shards[i - 1].skipList.size();
+				tree.set(i, size);
+				int parent = i + (i & -i);
+				if (parent <= shards.length)
+					tree.set(parent, tree.get(parent) + size);
+			}
+		}
+
+		/**
+		 * Shard of x: the last one whose lowest key is <= x.
+		 */
+		int find(T x) {
+			int lo = 0, hi = shards.length - 1; // answer is in [lo, hi]
+
+			while (lo < hi) {
+				int mid = (lo + hi + 1) >>> 1;
+				if (lows[mid].compareTo(x) <= 0)
+					lo = mid;
+				else
+					hi = mid - 1;
+			}
+			return lo;
+		}
+
+		/**
+		 * Adds delta to the size of shard i.
+		 */
+		void resized(int i, int delta) {
+			for (int k = i + 1; k <= shards.length; k += k & -k)
+				tree.addAndGet(k, delta);
+		}
+
+		/**
+		 * Number of elements in the shards before shard i.
+		 */
+		int before(int i) {
+			int sum = 0;
+			for (int k = i; k > 0; k -= k & -k)
+				sum += tree.get(k);
+			return sum;
+		}
+
+		/**
+		 * Shard of the element at index n (0 <= n < size()): the last
+		 * one with fewer than n + 1 elements before it.
+		 */
+		int locate(int n) {
+			int i = 0; // shards known to hold n elements or fewer
+			for (int step = Integer.highestOneBit(shards.length); step > 0; step >>= 1) {
+				if (i + step <= shards.length && tree.get(i + step) <= n) {
+					i += step;
+					n -= tree.get(i);
+				}
+			}
+			return Math.min(i, shards.length - 1);
+		}
+
+		int size() {
+			return before(shards.length);
+		}
+	}
+
+	// Default Constructor
+	public ShardedSkipList() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param capacity elements per shard before it is split (at least 8)
+	 */
+	public ShardedSkipList(int capacity) {
+		// When shards couldn't be split in halves and merged back
+		if (capacity < 8)
+			throw new IllegalArgumentException("capacity must be >= 8: " + capacity);
+
+		this.capacity = capacity;
+		Shard<T>[] shards = newShards(1);
+		shards[0] = new Shard<>(new SkipList<T>());
+		index = new Index<>(newKeys(1), shards);
+	}
+
+	/**
+	 * Insert x in the list.
+	 * @param x the element to be added
+	 * @return true on successful insertion, false otherwise
+	 */
+	public boolean add(T x) {
+		while (true) {
+			Index<T> current = index;
+			int i = current.find(x);
+			Shard<T> shard = current.shards[i];
+			int size;
+
+			shard.writeLock.lock();
+			try {
+				// When a shard was split or merged meanwhile
+				if (index != current)
+					continue;
+
+				// When x is present already
+				if (!shard.skipList.add(x))
+					return false;
+				current.resized(i, 1);
+				size = shard.skipList.size();
+			} finally {
+				shard.writeLock.unlock();
+			}
+
+			if (size > capacity)
+				rebalance();
+			return true;
+		}
+	}
+
+	/**
+	 * Removes x from the list, if present.
+	 * @param x the element to be removed
+	 * @return removed element, if present, else null
+	 */
+	public T remove(T x) {
+		while (true) {
+			Index<T> current = index;
+			int i = current.find(x);
+			Shard<T> shard = current.shards[i];
+			T removed;
+			int size;
+
+			shard.writeLock.lock();
+			try {
+				// When a shard was split or merged meanwhile
+				if (index != current)
+					continue;
+
+				removed = shard.skipList.remove(x);
+
+				// When x is not present
+				if (removed == null)
+					return null;
+				current.resized(i, -1);
+				size = shard.skipList.size();
+			} finally {
+				shard.writeLock.unlock();
+			}
+
+			// When it just went under capacity / 8 (not on every remove
+			// while it stays under: a neighbour may be too large for it)
+			if (size == capacity / 8 - 1 && current.shards.length > 1)
+				rebalance();
+			return removed;
+		}
+	}
+
+	/**
+	 * Does the list contain x?
+	 * @param x the element to be searched
+	 * @return true when x is present, false if not
+	 */
+	public boolean contains(T x) {
+		// When x is null
+		if (x == null)
+			return false;
+
+		while (true) {
+			Index<T> current = index;
+			Shard<T> shard = current.shards[current.find(x)];
+
+			shard.readLock.lock();
+			try {
+				// When a shard was split or merged meanwhile
+				if (index != current)
+					continue;
+				return shard.skipList.contains(x);
+			} finally {
+				shard.readLock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Find the largest element that is less than or equal to x: in the
+	 * shard of x, else the last of the shards before it.
+	 * @param x the input element
+	 * @return the element, or null
+	 */
+	public T floor(T x) {
+		retry: while (true) {
+			Index<T> current = index;
+			int start = current.find(x);
+
+			for (int i = start; i > -1; i--) {
+				Shard<T> shard = current.shards[i];
+				T found;
+
+				shard.readLock.lock();
+				try {
+					// When a shard was split or merged meanwhile
+					if (index != current)
+						continue retry;
+					found = (i == start) ? shard.skipList.floor(x) : shard.skipList.last();
+				} finally {
+					shard.readLock.unlock();
+				}
+				if (found != null)
+					return found;
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Find the smallest element that is greater than or equal to x: in
+	 * the shard of x, else the first of the shards after it.
+	 * @param x the input element
+	 * @return the element, or null
+	 */
+	public T ceiling(T x) {
+		retry: while (true) {
+			Index<T> current = index;
+			int start = current.find(x);
+
+			for (int i = start; i < current.shards.length; i++) {
+				Shard<T> shard = current.shards[i];
+				T found;
+
+				shard.readLock.lock();
+				try {
+					// When a shard was split or merged meanwhile
+					if (index != current)
+						continue retry;
+					found = (i == start) ? shard.skipList.ceiling(x) : shard.skipList.first();
+				} finally {
+					shard.readLock.unlock();
+				}
+				if (found != null)
+					return found;
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the first element of the list.
+	 * @return the element, or null when empty
+	 */
+	public T first() {
+		retry: while (true) {
+			Index<T> current = index;
+
+			for (Shard<T> shard : current.shards) {
+				T found;
+
+				shard.readLock.lock();
+				try {
+					// When a shard was split or merged meanwhile
+					if (index != current)
+						continue retry;
+					found = shard.skipList.first();
+				} finally {
+					shard.readLock.unlock();
+				}
+				if (found != null)
+					return found;
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the last element of the list.
+	 * @return the element, or null when empty
+	 */
+	public T last() {
+		retry: while (true) {
+			Index<T> current = index;
+
+			for (int i = current.shards.length - 1; i > -1; i--) {
+				Shard<T> shard = current.shards[i];
+				T found;
+
+				shard.readLock.lock();
+				try {
+					// When a shard was split or merged meanwhile
+					if (index != current)
+						continue retry;
+					found = shard.skipList.last();
+				} finally {
+					shard.readLock.unlock();
+				}
+				if (found != null)
+					return found;
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Return element at index n of list (first element is at index 0):
+	 * the shard from the Fenwick tree, then get() of its SkipList.
+	 * RT: O(log n).
+	 * @param n the input index
+	 * @return the element at index n
+	 * @throws NoSuchElementException When n is invalid index
+	 */
+	public T get(int n) {
+		while (true) {
+			Index<T> current = index;
+
+			// When invalid input index
+			if (n < 0 || current.size() - 1 < n)
+				throw new NoSuchElementException();
+
+			int i = current.locate(n);
+			Shard<T> shard = current.shards[i];
+
+			shard.readLock.lock();
+			try {
+				// When a shard was split or merged meanwhile
+				if (index != current)
+					continue;
+
+				// When the shards before it changed meanwhile: try again
+				int local = n - current.before(i);
+				if (local >= 0 && local < shard.skipList.size())
+					return shard.skipList.get(local);
+			} finally {
+				shard.readLock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Index of x in the list (first element is at index 0), in
+	 * O(log n).
+	 * @param x the element to be searched
+	 * @return the index of x, or -1 when x is not present
+	 */
+	public int indexOf(T x) {
+		// When x is null
+		if (x == null)
+			return -1;
+
+		return rank(x, true);
+	}
+
+	/**
+	 * Number of elements smaller than x, in O(log n).
+	 * @param x the input element
+	 * @return the rank of x
+	 */
+	public int rankOf(T x) {
+		return rank(x, false);
+	}
+
+	/**
+	 * Helper method - indexOf(), rankOf(): elements of the shards
+	 * before the shard of x, plus the rank of x in it.
+	 * @return the rank, or -1 when exact and x is not present
+	 */
+	private int rank(T x, boolean exact) {
+		while (true) {
+			Index<T> current = index;
+			int i = current.find(x);
+			Shard<T> shard = current.shards[i];
+
+			shard.readLock.lock();
+			try {
+				// When a shard was split or merged meanwhile
+				if (index != current)
+					continue;
+
+				int local = exact ? shard.skipList.indexOf(x) : shard.skipList.rankOf(x);
+				return (local < 0) ? -1 : current.before(i) + local;
+			} finally {
+				shard.readLock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Is the list empty?
+	 * @return true when empty, otherwise false
+	 */
+	public boolean isEmpty() {
+		return size() < 1;
+	}
+
+	/**
+	 * Return the number of elements in the list (from the Fenwick tree:
+	 * O(log shards)).
+	 * @return the size of the list
+	 */
+	public int size() {
+		return index.size();
+	}
+
+	/**
+	 * Number of shards the keys are split in now.
+	 */
+	public int shards() {
+		return index.shards.length;
+	}
+
+	/**
+	 * Helper method - add(), remove(): splits the shards over capacity
+	 * and merges the ones under capacity / 8, with every shard locked,
+	 * then swaps in the new Index. Skipped when another thread does it.
+	 */
+	private void rebalance() {
+		// When another thread is at it: it will see this shard too
+		if (!rebalance.tryLock())
+			return;
+
+		try {
+			Index<T> current = index; // only changed under rebalance
+			Shard<T>[] shards = current.shards;
+
+			for (Shard<T> shard : shards)
+				shard.writeLock.lock();
+			try {
+				List<T> lows = new ArrayList<>();
+				List<Shard<T>> rebuilt = new ArrayList<>();
+				boolean changed = false;
+
+				for (int i = 0; i < shards.length; i++) {
+					SkipList<T> skipList = shards[i].skipList;
+					T low = current.lows[i];
+					int size = skipList.size();
+
+					// When it is over capacity: in halves
+					if (size > capacity) {
+						T[] elements = toArray(skipList);
+						int mid = size / 2;
+						lows.add(low);
+						rebuilt.add(new Shard<>(SkipList.fromSorted(
+								Arrays.copyOfRange(elements, 0, mid))));
+						lows.add(elements[mid]);
+						rebuilt.add(new Shard<>(SkipList.fromSorted(
+								Arrays.copyOfRange(elements, mid, size))));
+						changed = true;
+						continue;
+					}
+
+					// When it, or the one before it (as it is now), is small
+					// and both fit in half a shard: merged
+					if (!rebuilt.isEmpty()) {
+						SkipList<T> previous = rebuilt.get(rebuilt.size() - 1).skipList;
+
+						if ((size < capacity / 8 || previous.size() < capacity / 8)
+								&& previous.size() + size <= capacity / 2) {
+							T[] left = toArray(previous), right = toArray(skipList);
+							T[] elements = Arrays.copyOf(left, left.length + right.length);
+							System.arraycopy(right, 0, elements, left.length, right.length);
+							rebuilt.set(rebuilt.size() - 1,
+									new Shard<>(SkipList.fromSorted(elements)));
+							changed = true;
+							continue;
+						}
+					}
+
+					lows.add(low);
+					rebuilt.add(shards[i]);
+				}
+
+				// When no shard is unbalanced (any more)
+				if (!changed)
+					return;
+
+				// first shard holds everything below the second
+				lows.set(0, null);
+				index = new Index<>(lows.toArray(ShardedSkipList.<T>newKeys(lows.size())),
+						rebuilt.toArray(ShardedSkipList.<T>newShards(rebuilt.size())));
+			} finally {
+				for (Shard<T> shard : shards)
+					shard.writeLock.unlock();
+			}
+		} finally {
+			rebalance.unlock();
+		}
+	}
+
+	/**
+	 * Helper method - rebalance(): the elements of skipList, in order.
+	 */
+	private static <T extends Comparable<? super T>> T[] toArray(SkipList<T> skipList) {
+		T[] elements = newKeys(skipList.size());
+		Iterator<T> it = skipList.iterator();
+		for (int k = 0; it.hasNext(); k++)
+			elements[k] = it.next();
+		return elements;
+	}
+
+	/**
+	 * Helper method - an array of n keys (all null).
+	 */
+	@SuppressWarnings("unchecked")
+	private static <T extends Comparable<? super T>> T[] newKeys(int n) {
+		return (T[]) new Comparable<?>[n];
+	}
+
+	/**
+	 * Helper method - an array of n shards (all null).
+	 */
+	@SuppressWarnings("unchecked")
+	private static <T extends Comparable<? super T>> Shard<T>[] newShards(int n) {
+		return (Shard<T>[]) new Shard<?>[n];
+	}
+}
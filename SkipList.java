@@ -11,9 +11,21 @@ package rsn170330.lp2;
  * Date: Sunday, October 14, 2018
  */
 
-import java.util.Random;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class SkipList<T extends Comparable<? super T>> {
 	static final int POSSIBLE_LEVELS = 33;
@@ -27,11 +39,37 @@ public class SkipList<T extends Comparable<? super T>> {
 	// last[i]: Entry at which search came down from level i
 	private Entry<T>[] last; // used by find
 	
-	// distanceTraversed[i]: distance traversed on level i, 
-	// as search came down from last[i] to level i-1
-	private int[] distanceTraversed; // used for updating span[]
+	// lastPosition[i]: distance of last[i] from head 
+	// (its position, as index + 1)
+	private int[] lastPosition; // used for updating span[]
 	
-	private Random rand; // for random height (like using coin-flip)
+	// finger: whether find(x) starts from the previous search path
+	// lastLevels: levels of last[] which are still valid (0: none)
+	private boolean finger;
+	private int lastLevels;
+	
+	// modCount: changes of the links (adds, removes, rebuilds), 
+	// so that iterators fail fast
+	private int modCount;
+	
+	// for random height (like using coin-flip, see LevelGenerator)
+	private LevelGenerator levelGenerator;
+	
+	// metrics: counters, only when turned on (null when off)
+	private SkipListMetrics metrics;
+	
+	// rebuildPolicy: when to rebuild() on its own (null: never)
+	private RebuildPolicy rebuildPolicy;
+	
+	// Incremental rebuild (see startRebuild()): 
+	// rebuildPrev[i]: last Entry of level i before the frontier, 
+	// at position rebuildPosition[i]; rebuildKey: next element to be 
+	// rebuilt; frontierValid: false after a change before the frontier
+	private boolean rebuilding, frontierValid;
+	private Entry<T>[] rebuildPrev;
+	private int[] rebuildPosition;
+	private int rebuildLevels, rebuildBudget;
+	private T rebuildKey;
 	
 	static class Entry<E> {
 		E element;
@@ -58,6 +96,22 @@ public class SkipList<T extends Comparable<? super T>> {
 		}
 	}
 	
+	/**
+	 * Helper method - an array of n elements (all null).
+	 */
+	@SuppressWarnings("unchecked")
+	static <T extends Comparable<? super T>> T[] newElements(int n) {
+		return (T[]) new Comparable<?>[n];
+	}
+	
+	/**
+	 * Helper method - an array of n entries (all null).
+	 */
+	@SuppressWarnings("unchecked")
+	static <E> Entry<E>[] newEntries(int n) {
+		return (Entry<E>[]) new Entry<?>[n];
+	}
+	
 	// Default Constructor
 	public SkipList() {
 		head = new Entry<T>(null, POSSIBLE_LEVELS);
@@ -67,11 +121,18 @@ public class SkipList<T extends Comparable<? super T>> {
 		maxLevel = 1;
 		
 		last = new Entry[POSSIBLE_LEVELS];
-		distanceTraversed = new int[POSSIBLE_LEVELS];
+		lastPosition = new int[POSSIBLE_LEVELS];
+		finger = false;
+		
+		rebuildPrev = newEntries(POSSIBLE_LEVELS);
+		rebuildPosition = new int[POSSIBLE_LEVELS];
+		lastLevels = 0;
 		
-		rand = new Random();
+		levelGenerator = LevelGenerator.fast();
 		
 		// Each entry in head.next[] points to tail
+		// (head.span[] is kept up to date only below maxLevel: a level 
+		// is given its span, size + 1, when maxLevel grows to it)
 		for (int i = 0; i < POSSIBLE_LEVELS; i++) {
 			head.next[i] = tail;
 			head.span[i] = 1; // tail 1 distance away
@@ -86,18 +147,43 @@ public class SkipList<T extends Comparable<? super T>> {
 		Entry<T> cursor, prevEntry; 
 		boolean ready; // is Cursor ready to be removed
 		
+		// path[i]: last Entry of level i before cursor, so that 
+		// remove() needs no search (levels in use: no add() can 
+		// raise maxLevel while it is valid)
+		Entry<T>[] path;
+		
+		// modCount the iterator is valid for
+		int expectedModCount;
+		
 		SkipListIterator() {
 			cursor = head;
 			prevEntry = null;
 			ready = false;
+			
+			path = newEntries(maxLevel);
+			Arrays.fill(path, head);
+			expectedModCount = modCount;
+		}
+		
+		/**
+		 * Iterator from the Entry after path[0]. 
+		 * @param path path[i]: last Entry of level i before it 
+		 *        (from pathBefore() or pathAt())
+		 */
+		SkipListIterator(Entry<T>[] path) {
+			cursor = path[0];
+			prevEntry = null;
+			ready = false;
+			
+			this.path = path;
+			expectedModCount = modCount;
 		}
 		
 		/**
 		 * Returns true if Iterator has more element to iterate.
 		 */
 		public boolean hasNext() {
-			return (cursor.next[0] != null && 
-					cursor.next[0].element != null);
+			return cursor.next[0] != tail;
 		}
 		
 		/**
@@ -106,11 +192,18 @@ public class SkipList<T extends Comparable<? super T>> {
 		 * throws 'NoSuchElementException' if there is no next element.
 		 */
 		public T next() {
+			checkModCount(expectedModCount);
+			
 			// When there is no next element
 			if (!hasNext())
 				throw new NoSuchElementException("There is no next element.");
 			
 			// When there is next element
+			// cursor is now before the next one, on each of its levels
+			if (cursor != head) {
+				for (int i = 0; i < cursor.height; i++)
+					path[i] = cursor;
+			}
 			prevEntry = cursor; // prevEntry is cursor now
 			cursor = cursor.next[0]; // cursor++
 			ready = true; // we can do remove after this next()
@@ -126,8 +219,13 @@ public class SkipList<T extends Comparable<? super T>> {
 			// When remove operation cannot be done!
 			if (!ready) 
 				throw new NoSuchElementException("Illegal State.");
+			checkModCount(expectedModCount);
 			
-			find(cursor.element);
+			// When path[] misses levels in use (every check is done 
+			// before the first link is changed)
+			if (path.length < maxLevel)
+				throw new ConcurrentModificationException();
+			if (metrics != null) metrics.count(SkipListMetrics.REMOVE);
 			
 			int i=0;
 			
@@ -135,32 +233,331 @@ public class SkipList<T extends Comparable<? super T>> {
 			// cursor's next[] were pointed to, at each level 
 			while (i < cursor.height) {
 				// bypassing at level i
-				last[i].next[i] = cursor.next[i]; 
+				path[i].next[i] = cursor.next[i]; 
 				// adding two spans, -1 for removed
-				last[i].span[i] = last[i].span[i] + cursor.span[i] - 1; 
+				path[i].span[i] = path[i].span[i] + cursor.span[i] - 1; 
 				i++;
 			}
 			
-			// update spans above height for last[] 
+			// update spans above height for path[] 
 			// but, unaffected next[] pointers!
-			while (last[i] != null) {
-				last[i].span[i]--;
-				i++;
-			} 
+			for (; i < maxLevel; i++)
+				path[i].span[i]--;
+			
+			cursor.next[0].prev = prevEntry;
 			
-			// NOTE: last[] is null for levels above maxLevel
-			// So, update span of un-used last[] Entries
-			for(i = 0; i < POSSIBLE_LEVELS; i++){
-				if(head.next[i] == tail)
-					head.span[i] = size + 1;
-			}
 			// Now, cursor is removed, whoosh! :o
 			size--;
 			
+			// last[] may hold cursor: no finger search from it
+			lastLevels = 0;
+			
+			// a rebuild can't run from here (it would change path[])
+			if (rebuilding) frontierValid = false;
+			
+			// the other iterators are not valid any more
+			expectedModCount = ++modCount;
+			
 			cursor = prevEntry; // after removal, cursor is prevEntry
 			
 			// Calling remove again without calling next... 
 			ready = false; // ...will cause in exception thrown
+			
+			if (rebuildPolicy != null) {
+				mutated(1);
+				
+				// When the policy rebuilt the list: heights changed, 
+				// so path[] is searched again (entries are the same)
+				if (modCount != expectedModCount) {
+					path = (cursor == head) ? pathAt(0) 
+							: pathBefore(cursor.element);
+					for (i = 0; i < cursor.height && i < maxLevel; i++)
+						path[i] = cursor;
+					expectedModCount = modCount;
+				}
+			}
+		}
+		
+		/**
+		 * Performs action on each remaining element: a loop over 
+		 * next[0], without the upkeep of path[] (so remove() can't 
+		 * follow it).
+		 */
+		public void forEachRemaining(Consumer<? super T> action) {
+			checkModCount(expectedModCount);
+			
+			Entry<T> p = cursor.next[0];
+			for (; p != tail; p = p.next[0])
+				action.accept(p.element);
+			
+			cursor = tail.prev;
+			ready = false;
+			
+			// When action changed the list
+			checkModCount(expectedModCount);
+		}
+	}
+	
+	// DescendingIterator: from the last element to the first, 
+	// through prev
+	private class DescendingIterator implements Iterator<T> {
+		Entry<T> nextEntry; // head when there is no next element
+		Entry<T> cursor; // last returned Entry (null: none to remove)
+		int expectedModCount; // modCount the iterator is valid for
+		
+		DescendingIterator() {
+			nextEntry = tail.prev;
+			cursor = null;
+			expectedModCount = modCount;
+		}
+		
+		public boolean hasNext() {
+			return nextEntry != head;
+		}
+		
+		public T next() {
+			checkModCount(expectedModCount);
+			
+			// When there is no next element
+			if (!hasNext())
+				throw new NoSuchElementException("There is no next element.");
+			
+			cursor = nextEntry;
+			nextEntry = nextEntry.prev; // cursor--
+			return cursor.element;
+		}
+		
+		/**
+		 * Removes the last returned element, by a search: the Entry 
+		 * before it on each level is not known, going backwards.
+		 */
+		public void remove() {
+			// When remove operation cannot be done!
+			if (cursor == null)
+				throw new NoSuchElementException("Illegal State.");
+			checkModCount(expectedModCount);
+			
+			// nextEntry is not affected by the removal
+			SkipList.this.remove(cursor.element);
+			expectedModCount = modCount;
+			cursor = null;
+		}
+		
+		public void forEachRemaining(Consumer<? super T> action) {
+			checkModCount(expectedModCount);
+			
+			Entry<T> p = nextEntry;
+			for (; p != head; p = p.prev)
+				action.accept(p.element);
+			
+			nextEntry = head;
+			cursor = null;
+			
+			// When action changed the list
+			checkModCount(expectedModCount);
+		}
+	}
+	
+	// SkipListSpliterator: the elements at indexes [index, end), 
+	// split exactly in halves by index (span[] gives the Entry at 
+	// any index in O(log n))
+	private class SkipListSpliterator implements Spliterator<T> {
+		Entry<T> current; // Entry at index (tail when none left)
+		int index, end;
+		int expectedModCount; // modCount the spliterator is valid for
+		
+		SkipListSpliterator(Entry<T> current, int index, int end, 
+				int expectedModCount) {
+			this.current = current;
+			this.index = index;
+			this.end = end;
+			this.expectedModCount = expectedModCount;
+		}
+		
+		/**
+		 * Splits off the first half: [index, mid) goes to the new 
+		 * one, this one keeps [mid, end) from the Entry at mid.
+		 * @return the first half, or null when too small to split
+		 */
+		public Spliterator<T> trySplit() {
+			int mid = (index + end) >>> 1;
+			
+			// When there are fewer than 2 elements
+			if (mid <= index)
+				return null;
+			checkModCount(expectedModCount);
+			
+			Spliterator<T> prefix = new SkipListSpliterator(current, 
+					index, mid, expectedModCount);
+			current = entryAt(mid);
+			index = mid;
+			return prefix;
+		}
+		
+		public boolean tryAdvance(Consumer<? super T> action) {
+			// When there is no element left
+			if (index >= end)
+				return false;
+			checkModCount(expectedModCount);
+			
+			T x = current.element;
+			current = current.next[0];
+			index++;
+			action.accept(x);
+			return true;
+		}
+		
+		public void forEachRemaining(Consumer<? super T> action) {
+			checkModCount(expectedModCount);
+			
+			Entry<T> p = current;
+			for (int k = index; k < end; k++) {
+				action.accept(p.element);
+				p = p.next[0];
+			}
+			current = p;
+			index = end;
+			
+			// When action changed the list
+			checkModCount(expectedModCount);
+		}
+		
+		public long estimateSize() {
+			return end - index; // exact
+		}
+		
+		public int characteristics() {
+			return ORDERED | SORTED | DISTINCT | SIZED | SUBSIZED | NONNULL;
+		}
+		
+		/**
+		 * null: SORTED in the natural order of the elements.
+		 */
+		public Comparator<? super T> getComparator() {
+			return null;
+		}
+	}
+	
+	/**
+	 * Helper method - iterators: fails fast when the list was changed 
+	 * since the iterator last did.
+	 * @throws ConcurrentModificationException When it was
+	 */
+	private void checkModCount(int expectedModCount) {
+		if (modCount != expectedModCount)
+			throw new ConcurrentModificationException();
+	}
+	
+	/**
+	 * SubList: view of the elements in [lo, hi) of this list.
+	 * size() is O(log n) with countRange(); clear() is removeRange().
+	 */
+	public class SubList implements Iterable<T> {
+		private final T lo, hi;
+		
+		SubList(T lo, T hi) {
+			this.lo = lo;
+			this.hi = hi;
+		}
+		
+		// is x in [lo, hi)?
+		private boolean inRange(T x) {
+			return x.compareTo(lo) >= 0 && x.compareTo(hi) < 0;
+		}
+		
+		/**
+		 * Removes all elements of the view from the list.
+		 * @return the number of elements removed
+		 */
+		public int clear() {
+			return removeRange(lo, hi);
+		}
+		
+		/**
+		 * Is x in the range, and in the list?
+		 * @param x the element to be searched
+		 * @return true when x is present, false if not
+		 */
+		public boolean contains(T x) {
+			return x != null && inRange(x) && SkipList.this.contains(x);
+		}
+		
+		/**
+		 * Returns the first element of the view.
+		 * @return the element, null when the view is empty
+		 */
+		public T first() {
+			T x = ceiling(lo);
+			return (x != null && x.compareTo(hi) < 0) ? x : null;
+		}
+		
+		/**
+		 * Is the view empty?
+		 * @return true when there is no element in [lo, hi)
+		 */
+		public boolean isEmpty() {
+			return first() == null;
+		}
+		
+		/**
+		 * Iterate through the elements of the view in SORTED ORDER.
+		 * Starts at ceiling(lo), in O(log n).
+		 * @return iterator
+		 */
+		public Iterator<T> iterator() {
+			return new Iterator<T>() {
+				Entry<T> cursor = null; // last returned Entry
+				Entry<T> nextEntry = predecessor(lo).next[0];
+				int expectedModCount = modCount;
+				
+				public boolean hasNext() {
+					return nextEntry != tail && 
+							nextEntry.element.compareTo(hi) < 0;
+				}
+				
+				public T next() {
+					checkModCount(expectedModCount);
+					
+					// When there is no next element
+					if (!hasNext())
+						throw new NoSuchElementException("There is no next element.");
+					
+					cursor = nextEntry;
+					nextEntry = nextEntry.next[0];
+					return cursor.element;
+				}
+				
+				public void remove() {
+					// When remove operation cannot be done!
+					if (cursor == null)
+						throw new NoSuchElementException("Illegal State.");
+					
+					checkModCount(expectedModCount);
+					
+					// nextEntry is not affected by the removal
+					SkipList.this.remove(cursor.element);
+					expectedModCount = modCount;
+					cursor = null;
+				}
+			};
+		}
+		
+		/**
+		 * Returns the last element of the view.
+		 * @return the element, null when the view is empty
+		 */
+		public T last() {
+			Entry<T> p = predecessor(hi);
+			return (p != head && p.element.compareTo(lo) >= 0) 
+					? p.element : null;
+		}
+		
+		/**
+		 * Number of elements in the view, in O(log n).
+		 * @return the size of the view
+		 */
+		public int size() {
+			return countRange(lo, hi);
 		}
 	}
 	
@@ -171,93 +568,439 @@ public class SkipList<T extends Comparable<? super T>> {
 	 * @return true on successful insertion, false otherwise
 	 */
 	public boolean add(T x) {
+		if (metrics != null) metrics.count(SkipListMetrics.ADD);
 		
-		// When x is already present
-		if (contains(x)) 
+		// When x is already present (also sets last[] for x)
+		if (x == null || find(x)) 
 			return false;
 		
+		insert(x);
+		return true;
+	}
+	
+	/**
+	 * Insert x in the Skip list, unless an element equal to x is 
+	 * present, with a single search either way (like putIfAbsent).
+	 * @param x the element to be added
+	 * @return the element equal to x already in the list, or x when 
+	 *         it was inserted (null when x is null)
+	 */
+	public T addOrGet(T x) {
+		if (metrics != null) metrics.count(SkipListMetrics.ADD);
+		
+		// When x is null
+		if (x == null)
+			return null;
+		
+		// When x is already present: it's just after last[0]
+		if (find(x))
+			return last[0].next[0].element;
+		
+		insert(x);
+		return x;
+	}
+	
+	/**
+	 * Helper method - add(), addOrGet(): splices x in after last[0], 
+	 * right after find(x) didn't find it.
+	 * @param x the element to be added
+	 */
+	private void insert(T x) {
 		int i = 0;
-		int level = chooseLevel(); // length of next[] of x's Entry
-		Entry<T> ent = new Entry(x, level);
 		
 		// position = index + 1 = distance from head
-		// prevPosition: distance of last[i] from head on find(x)
-		// newPosition: prevPosition + 1 (where we'll add the x)
-		int prevPosition = 0, newPosition = 0;
+		// newPosition: position of last[0] + 1 (where we'll add the x)
+		int newPosition = lastPosition[0] + 1; 
 		
-		// updating the total distance traversed 
-		for (i = 0; i < distanceTraversed.length; i++) {
-			prevPosition += distanceTraversed[i];
+		// find(x) set last[] up to maxLevel
+		int level = chooseLevel(); // length of next[] of x's Entry
+		Entry<T> ent = new Entry(x, level);
+		
+		// When x starts a new level: there, head points to tail, 
+		// which is after all size elements
+		for (; maxLevel < level; maxLevel++) {
+			last[maxLevel] = head;
+			lastPosition[maxLevel] = 0;
+			head.span[maxLevel] = size + 1;
 		}
-		// will do insertion at newPosition
-		newPosition = prevPosition + 1; 
 		
 		// for each level of newly created Entry ent
 		for (i = 0; i < level; i++) {
 			
-			// When no Entry in last[], to avoid NPE
-			if (last[i] == null)
-				break;
-			
 			// re-establishing the next links
 			ent.next[i] = last[i].next[i];
 			last[i].next[i] = ent;
 			
-			// re-establishing the span's prevPosition
-			ent.span[i] = prevPosition + last[i].span[i] - newPosition + 1;
-			last[i].span[i] = newPosition - prevPosition;
-			
-			// reducing the prevPosition's distance traversed 
-			// at level i (doing this for level i+1)
-			prevPosition = prevPosition - distanceTraversed[i];
+			// re-establishing the span's: last[i] is at lastPosition[i]
+			ent.span[i] = lastPosition[i] + last[i].span[i] - newPosition + 1;
+			last[i].span[i] = newPosition - lastPosition[i];
 		}
-		// Updating the proper height
-		ent.height = i;
-		
 		// re-establishing the previous links
 		ent.next[0].prev = ent;
 		ent.prev = last[0];
 		
 		// Increment the span of the last array elements 
 		// by 1 if no re-pointing is done
-		while (i < last.length){
-			// When no Entry in last[i]
-			if (last[i] == null)
-				break;
-			
+		for (; i < maxLevel; i++) {
 			last[i].span[i]++;
-			i++;
 		}
 		size++;
+		modCount++;
 		
-		// Update the unused head span with the size+1 
-		// (tail will be at size + 1)
-		for (int j = 0; j < POSSIBLE_LEVELS; j++){
-			if (head.next[j] == tail)
-				head.span[j] = size + 1;
+		if (rebuilding) rebuildMutated(x);
+		if (rebuildPolicy != null) mutated(1);
+	}
+		
+	/**
+	 * Insert all elements of c in the Skip list, sorting them first,
+	 * so they are spliced in one left-to-right pass (see addSorted).
+	 * null elements are ignored, like in add().
+	 * @param c the elements to be added
+	 * @return true when at least one element was inserted
+	 */
+	public boolean addAll(Collection<? extends T> c) {
+		T[] elements = newElements(c.size());
+		int n = 0;
+		
+		for (T x : c) {
+			if (x != null) 
+				elements[n++] = x;
 		}
+		Arrays.sort(elements, 0, n); // natural order of T
 		
-		return true;
+		return addSorted(Arrays.asList(elements).subList(0, n).iterator()) > 0;
 	}
+	
+	/**
+	 * Insert the elements given by it, which are expected in 
+	 * ascending order, in one left-to-right pass: the search for 
+	 * each element resumes from the frontier last[] left by the 
+	 * previous one, instead of starting again at head.
+	 * 
+	 * While elements go past the end of the list, the frontier is 
+	 * the last Entry of each level, so they are appended without 
+	 * any search; spans to tail are fixed once, when that stops.
+	 * 
+	 * An element not greater than the previous one still works 
+	 * (it is a duplicate, or the search restarts at head), so 
+	 * unsorted input is only slower, never wrong.
+	 * 
+	 * When the list is empty, heights are not random: the element at 
+	 * position p gets 1 + (exponent of 2 in p), the same as rebuild(), 
+	 * so a bulk load of sorted elements is a perfect skip list.
+	 * @param it the elements to be added, preferably sorted
+	 * @return number of elements inserted
+	 */
+	public int addSorted(Iterator<? extends T> it) {
+		boolean perfect = isEmpty(); // heights from position
+		int added = 0;
+		T previous = null;
+		
+		int levels = maxLevel; // levels of last[] in use
+		for (int i = 0; i < levels; i++) {
+			last[i] = head;
+			lastPosition[i] = 0;
+		}
+		
+		// atTail: every last[i].next[i] is tail
+		// tailSpans: spans of those last[i] are not up to date
+		boolean atTail = isEmpty(), tailSpans = false;
 		
+		while (it.hasNext()) {
+			T x = it.next();
+			
+			// When x is null
+			if (x == null) 
+				continue;
+			
+			int cmp = (previous == null) ? 1 : x.compareTo(previous);
+			
+			// When x is the same as previous, it is present by now
+			if (cmp == 0) 
+				continue;
+			previous = x;
+			
+			// Appending: nothing to search, when x is past the end
+			if (!atTail || cmp < 0) {
+				// spans to tail are needed, by the search below
+				if (tailSpans) {
+					for (int i = 0; i < levels; i++) 
+						last[i].span[i] = size + 1 - lastPosition[i];
+					tailSpans = false;
+				}
+				
+				// When x is out of order, restart the search from head
+				if (cmp < 0) {
+					for (int i = 0; i < levels; i++) {
+						last[i] = head;
+						lastPosition[i] = 0;
+					}
+				}
+				
+				// Search from the frontier, top-down: on each level start 
+				// from last[i], or from where we came down (when further)
+				Entry<T> p = head;
+				int position = 0;
+				
+				for (int in = levels - 1; in > -1; in--) {
+					if (lastPosition[in] > position) {
+						p = last[in];
+						position = lastPosition[in];
+					}
+					while (p.next[in] != tail && 
+							p.next[in].element.compareTo(x) < 0) {
+						position += p.span[in];
+						p = p.next[in];
+					}
+					last[in] = p;
+					lastPosition[in] = position;
+				}
+				
+				atTail = (p.next[0] == tail);
+				
+				// When x is already present
+				if (!atTail && p.next[0].element.compareTo(x) == 0) 
+					continue;
+			}
+			
+			int newPosition = lastPosition[0] + 1;
+			int level = perfect 
+					? Math.min(Integer.numberOfTrailingZeros(newPosition) + 1, 
+							POSSIBLE_LEVELS) 
+					: Math.min(chooseLevel(), POSSIBLE_LEVELS);
+			
+			// When x starts new levels: there, frontier is head, 
+			// and tail is size + 1 away
+			maxLevel = Math.max(maxLevel, level);
+			while (levels < level) {
+				last[levels] = head;
+				lastPosition[levels] = 0;
+				head.span[levels] = size + 1;
+				levels++;
+			}
+			
+			Entry<T> ent = new Entry<>(x, level);
+			
+			// re-establishing the previous links
+			ent.prev = last[0];
+			last[0].next[0].prev = ent;
+			
+			// splicing ent after last[i], which then moves to ent
+			for (int i = 0; i < level; i++) {
+				ent.next[i] = last[i].next[i];
+				last[i].next[i] = ent;
+				
+				if (!atTail) {
+					ent.span[i] = last[i].span[i] - (newPosition - lastPosition[i]) + 1;
+				}
+				last[i].span[i] = newPosition - lastPosition[i];
+				
+				last[i] = ent;
+				lastPosition[i] = newPosition;
+			}
+			
+			// levels above ent: one more entry under their spans 
+			// (unless they point to tail, fixed later)
+			if (atTail) 
+				tailSpans = true;
+			else {
+				for (int i = level; i < levels; i++) 
+					last[i].span[i]++;
+			}
+			
+			size++;
+			added++;
+			modCount++;
+		}
+		
+		// spans to tail, of the last Entry of each level
+		if (tailSpans) {
+			for (int i = 0; i < levels; i++) 
+				last[i].span[i] = size + 1 - lastPosition[i];
+		}
+		lastLevels = levels; // last[] is a valid search path
+		
+		if (rebuilding) rebuildMutated(null);
+		if (rebuildPolicy != null && added > 0) mutated(added);
+		return added;
+	}
+	
+	/**
+	 * Perfect skip list of the elements, built in parallel (see 
+	 * rebuildParallel()).
+	 * @param elements sorted, without duplicates or null
+	 * @return the new list
+	 * @throws IllegalArgumentException When elements aren't sorted, 
+	 *         have duplicates or null
+	 */
+	public static <T extends Comparable<? super T>> SkipList<T> fromSorted(T[] elements) {
+		SkipList<T> skipList = new SkipList<>();
+		
+		// When some segment found elements out of order
+		if (!skipList.link(newEntries(elements.length), elements))
+			throw new IllegalArgumentException(
+					"Elements are not sorted, or have duplicates or null");
+		return skipList;
+	}
+	
+	/**
+	 * Perfect skip list of the elements, built in parallel (see 
+	 * rebuildParallel()).
+	 * @param elements sorted, without duplicates or null
+	 * @return the new list
+	 * @throws IllegalArgumentException When elements aren't sorted, 
+	 *         have duplicates or null
+	 */
+	public static <T extends Comparable<? super T>> SkipList<T> fromSorted(List<? extends T> elements) {
+		return fromSorted(elements.toArray(SkipList.<T>newElements(elements.size())));
+	}
+	
+	/**
+	 * Skip list of the elements, with the given height for the Entry 
+	 * of each, linked in one left-to-right pass. RT: O(n).
+	 * @param elements sorted, without duplicates or null
+	 * @param heights heights[k]: height of elements[k], 1 to 33
+	 * @return the new list
+	 * @throws IllegalArgumentException When elements aren't sorted, 
+	 *         have duplicates or null, or a height is invalid
+	 */
+	static <T extends Comparable<? super T>> SkipList<T> fromSorted(T[] elements, byte[] heights) {
+		SkipList<T> skipList = new SkipList<>();
+		Entry<T>[] last = skipList.last;
+		int[] lastPosition = skipList.lastPosition;
+		Entry<T> head = skipList.head, tail = skipList.tail, prev = head;
+		int n = elements.length, levels = 1;
+		
+		// frontier: last Entry of each level so far (head at first)
+		Arrays.fill(last, head);
+		
+		for (int k = 0; k < n; k++) {
+			T x = elements[k];
+			int height = heights[k];
+			
+			// When x is out of order, or its height is invalid
+			if (x == null || (k > 0 && elements[k - 1].compareTo(x) >= 0))
+				throw new IllegalArgumentException(
+						"Elements are not sorted, or have duplicates or null");
+			if (height < 1 || height > POSSIBLE_LEVELS)
+				throw new IllegalArgumentException("Invalid height: " + height);
+			
+			Entry<T> ent = new Entry<>(x, height);
+			int position = k + 1;
+			
+			for (int i = 0; i < height; i++) {
+				last[i].next[i] = ent;
+				last[i].span[i] = position - lastPosition[i];
+				last[i] = ent;
+				lastPosition[i] = position;
+			}
+			ent.prev = prev;
+			prev = ent;
+			levels = Math.max(levels, height);
+		}
+		
+		// the last Entry of each level points to tail
+		for (int i = 0; i < levels; i++) {
+			last[i].next[i] = tail;
+			last[i].span[i] = n + 1 - lastPosition[i];
+		}
+		tail.prev = prev;
+		
+		skipList.size = n;
+		skipList.maxLevel = levels;
+		Arrays.fill(last, null); // no search path yet
+		return skipList;
+	}
+	
+	/**
+	 * Saves the list to file, atomically (see SkipListSnapshot): the 
+	 * elements in order, and optionally the height of each Entry.
+	 * @param file the snapshot to be (re)placed
+	 * @param codec how to write an element, e.g. Codec.LONG
+	 * @param withHeights whether load() should give this very list 
+	 *        back (else: a perfect skip list of the elements)
+	 * @throws IOException on a write error (file is left as it was)
+	 */
+	public void save(Path file, SkipListSnapshot.Codec<? super T> codec, 
+			boolean withHeights) throws IOException {
+		save(file, codec, withHeights, 0);
+	}
+	
+	/**
+	 * save(), recording that the list is up to record lsn of a 
+	 * WriteAheadLog (see WriteAheadLog.checkpoint()).
+	 */
+	void save(Path file, SkipListSnapshot.Codec<? super T> codec, 
+			boolean withHeights, long lsn) throws IOException {
+		byte[] heights = null;
+		
+		if (withHeights) {
+			heights = new byte[size];
+			int k = 0;
+			for (Entry<T> p = head.next[0]; p != tail; p = p.next[0]) 
+				heights[k++] = (byte) p.height;
+		}
+		SkipListSnapshot.write(file, size, iterator(), heights, lsn, codec);
+	}
+	
+	/**
+	 * Loads a list saved by save(), in linear time: with its saved 
+	 * heights, or as a perfect skip list (fromSorted()).
+	 * @param file the snapshot
+	 * @param codec how to read an element (the one it was saved with)
+	 * @return the new list
+	 * @throws IOException on a read error, or a corrupt snapshot
+	 */
+	public static <T extends Comparable<? super T>> SkipList<T> load(Path file, 
+			SkipListSnapshot.Codec<? extends T> codec) throws IOException {
+		return fromContents(SkipListSnapshot.read(file, codec), file);
+	}
+	
+	/**
+	 * Helper method - load(), WriteAheadLog.recover(): links the 
+	 * contents of a snapshot.
+	 * @throws IOException when they are out of order, or the heights 
+	 *         are invalid
+	 */
+	static <T extends Comparable<? super T>> SkipList<T> fromContents(
+			SkipListSnapshot.Contents<T> contents, Path file) throws IOException {
+		try {
+			return (contents.heights == null) 
+					? fromSorted(contents.elements)
+					: fromSorted(contents.elements, contents.heights);
+		} catch (IllegalArgumentException e) {
+			throw new IOException(file + ": " + e.getMessage(), e);
+		}
+	}
+	
 	/**
 	 * Helper method - add(x)
-	 * Chooses a random level
+	 * Chooses a random level, at most maxLevel + 1 (add() raises 
+	 * maxLevel to it, and sets the span of head on the new level)
 	 * @return return the level
 	 */
 	public int chooseLevel() {
-		// fast method:
-		int lev = 1 + Integer.numberOfLeadingZeros(rand.nextInt());
-		// floor(log2(x)) = 31 - numberOfLeadingZeros(x)
+		// level i + 1 with probability p^i * (1 - p)
+		int lev = levelGenerator.nextLevel();
 		
 		// optionally (to allow maxLevel to grow gradually) - 
 		lev = Math.min(lev,  maxLevel + 1);
 		
-		if (maxLevel < lev) 
-			maxLevel = lev;
-		
 		return lev; 
 	}
+	
+	/**
+	 * Sets how the level of a new Entry is chosen, e.g. with another 
+	 * probability p, or seeded for a reproducible run.
+	 * @param levelGenerator the generator (see LevelGenerator)
+	 */
+	public void setLevelGenerator(LevelGenerator levelGenerator) {
+		this.levelGenerator = levelGenerator;
+	}
+	
+	LevelGenerator levelGenerator() {
+		return levelGenerator;
+	}
 
 	/**
 	 * Find the smallest element that is greater than or equal to x.
@@ -265,21 +1008,11 @@ public class SkipList<T extends Comparable<? super T>> {
 	 * @return the element immediate next to x  
 	 */
 	public T ceiling(T x) {
+		if (metrics != null) metrics.count(SkipListMetrics.CEILING);
 		
-		// When x greater than the last element
-		if (x.compareTo(last()) > 0)
-			return null;
-		
-		// When x is smaller than the first element
-		if (x.compareTo(first()) < 0)
-			return first();
-		
-		// When there is no such element in the list
-		if (!contains(x)) 
-			// just return the next of last[0] from find(x)
-			return last[0].next[0].element;
-		
-		return x; // We have x
+		// x itself, or the one just after where x would be 
+		// (null when that is tail)
+		return descend(x, CEILING).element;
 	}
 	
 	/**
@@ -288,50 +1021,211 @@ public class SkipList<T extends Comparable<? super T>> {
 	 * @return true when x is present, false if not
 	 */
 	public boolean contains(T x) {
+		if (metrics != null) metrics.count(SkipListMetrics.CONTAINS);
 		
 		// When x is null
 		if (x == null) 
 			return false;
 		
-		// Tries to find x, updating last[] accordingly
-		find(x);
+		// the Entry of x, or null
+		return descend(x, EXACT) != null;
+	}
+	
+	/**
+	 * Number of elements in [lo, hi), from two rank lookups over 
+	 * span[]. RT: O(log n), whatever the number of elements.
+	 * @param lo the lowest element of the range (inclusive)
+	 * @param hi the highest element of the range (exclusive)
+	 * @return the number of elements x, lo <= x < hi
+	 */
+	public int countRange(T lo, T hi) {
+		// When the range is empty
+		if (lo.compareTo(hi) >= 0)
+			return 0;
 		
-		// avoiding NPE, and checking if we have x or not
-		if(last[0].next[0].element != null && 
-				last[0].next[0].element.compareTo(x) == 0) {
-			return true;
+		// getPosition(x) - 1: number of elements smaller than x
+		return getPosition(hi) - getPosition(lo);
+	}
+	
+	/**
+	 * Helper method: read-only search for x.
+	 * Unlike find(x), it keeps its state in local variables, 
+	 * so many threads can run it at once (when none writes). 
+	 * Except in finger mode, where it is find(x).
+	 * @param x the element to be searched
+	 * @return the last Entry with element < x (head if there is none)
+	 */
+	private Entry<T> predecessor(T x) {
+		// In finger mode, searches go through the search path
+		if (finger) {
+			find(x);
+			return last[0];
 		}
-		return false;
+		
+		Entry<T> p = head; // like cursor
+		
+		// stop: Entry known not to be < x (compared on a level above), 
+		// so it isn't compared again on the levels below
+		Entry<T> stop = tail;
+		int comparisons = 0; // by this search, for metrics
+		
+		for (int in = maxLevel - 1; in > -1; in--) {
+			int steps = 0; // for metrics
+			boolean compared = false;
+			
+			// while the next Entry may be < x (tail and stop are not)
+			while (p.next[in] != stop) {
+				compared = p.next[in].element.compareTo(x) >= 0;
+				if (compared) {
+					stop = p.next[in];
+					break;
+				}
+				p = p.next[in]; // moving further
+				steps++;
+			}
+			if (metrics != null) comparisons += metrics.level(in, steps, compared);
+		}
+		if (metrics != null) metrics.search(comparisons);
+		return p;
+	}
+	
+	// what descend(x, mode) returns when x is not present
+	private static final int EXACT = 0, FLOOR = 1, CEILING = 2;
+	
+	/**
+	 * Helper method - contains(), floor(), ceiling(): read-only search 
+	 * for x, like predecessor(x), that stops as soon as it meets x 
+	 * (on any level). Each Entry is compared with x at most once, and 
+	 * there is no comparison after the descent.
+	 * @param x the element to be searched
+	 * @param mode when x is not present - EXACT: null, FLOOR: the last 
+	 *        Entry < x (head if none), CEILING: the first Entry > x 
+	 *        (tail if none)
+	 * @return the Entry of x, when present
+	 */
+	private Entry<T> descend(T x, int mode) {
+		// In finger mode, searches go through the search path
+		if (finger) {
+			if (find(x))
+				return last[0].next[0];
+			return (mode == EXACT) ? null 
+					: (mode == FLOOR) ? last[0] : last[0].next[0];
+		}
+		
+		Entry<T> p = head; // like cursor
+		Entry<T> stop = tail; // known not to be < x (see predecessor)
+		int comparisons = 0; // by this search, for metrics
+		
+		for (int in = maxLevel - 1; in > -1; in--) {
+			int steps = 0; // for metrics
+			int cmp = -1; // of p.next[in] and x, when compared
+			
+			// while the next Entry may be < x (tail and stop are not)
+			while (p.next[in] != stop) {
+				cmp = p.next[in].element.compareTo(x);
+				if (cmp >= 0) 
+					break;
+				p = p.next[in]; // moving further
+				steps++;
+			}
+			if (metrics != null) comparisons += metrics.level(in, steps, cmp >= 0);
+			
+			// When x is met: no need to go down
+			if (cmp == 0) {
+				if (metrics != null) metrics.search(comparisons);
+				return p.next[in];
+			}
+			if (cmp > 0)
+				stop = p.next[in];
+		}
+		if (metrics != null) metrics.search(comparisons);
+		return (mode == EXACT) ? null : (mode == FLOOR) ? p : p.next[0];
 	}
 
 	/**
-	 * Helper method to search for x. 
+	 * Helper method to search for x, for add() and remove(). 
 	 * Sets last[i] = node at which search came down from 
-	 * level i to i-1
+	 * level i to i-1, and lastPosition[i] = its position.
+	 * 
+	 * In finger mode, when x is after the previous search path, the 
+	 * search climbs from last[0] only as high as it needs (the first 
+	 * level whose last[i].next[i] isn't before x) and goes down from 
+	 * there: O(log d) for d = distance from the previous key.
 	 * @param x the element to be searched
+	 * @return true when x is present, false if not
 	 */
-	private void find(T x) {
+	private boolean find(T x) {
 		
 		Entry<T> p = head; // like cursor
+		int position = 0; // position of p
+		int top = maxLevel - 1; // level to begin with
+		boolean fromFinger = finger && lastLevels > 0 && 
+				(last[0] == head || last[0].element.compareTo(x) < 0);
+		
+		// stop: Entry known not to be < x (see predecessor), 
+		// stopCmp: stop.element.compareTo(x), 1 for tail
+		Entry<T> stop = tail;
+		int stopCmp = 1;
+		int comparisons = 0; // by this search, for metrics
+		
+		if (fromFinger) {
+			// levels added since the previous search: head to tail
+			for (int i = lastLevels; i < maxLevel; i++) {
+				last[i] = head;
+				lastPosition[i] = 0;
+			}
+			
+			// climbing while x is past the next Entry on level i
+			top = 0;
+			while (top < maxLevel - 1 && last[top].next[top] != tail) {
+				int cmp = last[top].next[top].element.compareTo(x);
+				if (cmp >= 0) {
+					stop = last[top].next[top];
+					stopCmp = cmp;
+					break;
+				}
+				top++;
+			}
+			p = last[top];
+			position = lastPosition[top];
+		}
 		
-		distanceTraversed = new int[POSSIBLE_LEVELS];
-		
-		// No of useful levels of head.next[]: 1 to maxLevel
-		for (int i = 0; i < maxLevel; i++) {
-			int in = maxLevel - 1 - i; // starting from top
+		// Going down from top (levels above it are already right)
+		for (int in = top; in > -1; in--) {
+			// last[in] (< x) may be further than where we came down
+			if (fromFinger && lastPosition[in] > position) {
+				p = last[in];
+				position = lastPosition[in];
+			}
+			
+			int steps = 0; // for metrics
+			boolean compared = false;
 			
-			// watch out for NPE because of null element in tail***
-			// while there is an entry AND an element AND ... 
-			while(	p.next[in] != null && 
-					p.next[in].element != null && 
-					p.next[in].element.compareTo(x) < 0) {
+			// while the next Entry may be < x (tail and stop are not)
+			while (p.next[in] != stop) {
+				int cmp = p.next[in].element.compareTo(x);
+				compared = cmp >= 0;
+				if (compared) {
+					stop = p.next[in];
+					stopCmp = cmp;
+					break;
+				}
 				
 				// updating distance traversed
-				distanceTraversed[in] += p.span[in]; 
+				position += p.span[in]; 
 				p = p.next[in]; // moving further
+				steps++;
 			}
+			if (metrics != null) comparisons += metrics.level(in, steps, compared);
+			
 			last[in] = p; // entry at which search came down
+			lastPosition[in] = position;
 		}
+		lastLevels = maxLevel;
+		if (metrics != null) metrics.search(comparisons);
+		
+		// p.next[0] is stop: x is present when it compared equal
+		return stopCmp == 0;
 	}
 	
 	/**
@@ -348,28 +1242,40 @@ public class SkipList<T extends Comparable<? super T>> {
 	 * @return the element previous to x  
 	 */
 	public T floor(T x) {
+		if (metrics != null) metrics.count(SkipListMetrics.FLOOR);
 		
-		// When x greater than the last element
-		if (x.compareTo(last()) > 0)
-			return last();
-		
-		// When x is smaller than the first element
-		if (x.compareTo(first()) < 0)
-			return null;
-					
-		// When there is no such element in the list
-		if (!contains(x)) 
-			// just return the last[0].element from find(x)
-			return last[0].element;
-		
-		return x; // We have x
+		// x itself, or just the one before x (null when that is head)
+		return descend(x, FLOOR).element;
 	}
 		
 		
 	// Indexing in the Skip Lists: 
 	
+	/**
+	 * Helper method - position (index + 1) x has, or would have 
+	 * if it were added. Read-only, like predecessor(x).
+	 * @param x the element to be searched
+	 * @return 1 + number of elements smaller than x
+	 */
 	private int getPosition(T x) {
+		return rank(x, false) + 1;
+	}
+	
+	/**
+	 * Helper method - rank of x: distance of the Entry before x 
+	 * from head, summing span[] on the way down. Read-only, 
+	 * like predecessor(x): doesn't touch last[].
+	 * @param x the element to be searched
+	 * @param exact whether x has to be present
+	 * @return number of elements smaller than x, or -1 when exact 
+	 *         and x is not present
+	 */
+	private int rank(T x, boolean exact) {
+		if (metrics != null) metrics.count(SkipListMetrics.RANK);
+		
 		Entry<T> p = head; // like cursor
+		Entry<T> stop = tail; // known not to be < x (see predecessor)
+		int comparisons = 0; // by this search, for metrics
 		
 		// distance of x from the head
 		int distance = 0;
@@ -378,19 +1284,37 @@ public class SkipList<T extends Comparable<? super T>> {
 		for (int i = 0; i < maxLevel; i++) {
 			int in = maxLevel - 1 - i; // starting from top
 			
-			// watch out for NPE because of null element in tail***
-			// while there is an entry AND an element AND ... 
-			while(	p.next[in] != null && 
-					p.next[in].element != null && 
-					p.next[in].element.compareTo(x) < 0) {
+			int steps = 0; // for metrics
+			int cmp = -1; // of p.next[in] and x, when compared
+			
+			// while the next Entry may be < x (tail and stop are not)
+			while (p.next[in] != stop) {
+				cmp = p.next[in].element.compareTo(x);
+				if (cmp >= 0) 
+					break;
 				
 				// updating distance traversed
 				distance += p.span[in]; 
 				p = p.next[in]; // moving further
+				steps++;
 			}
-			last[in] = p; // entry at which search came down
+			if (metrics != null) comparisons += metrics.level(in, steps, cmp >= 0);
+			
+			// When x is met: its position is known, no need to go down
+			if (cmp == 0) {
+				if (metrics != null) metrics.search(comparisons);
+				return distance + p.span[in] - 1;
+			}
+			if (cmp > 0)
+				stop = p.next[in];
 		}
-		return (distance + 1);
+		if (metrics != null) metrics.search(comparisons);
+		
+		// When x has to be present, but isn't
+		if (exact)
+			return -1;
+		
+		return distance;
 	}
 	
 	/**
@@ -418,6 +1342,8 @@ public class SkipList<T extends Comparable<? super T>> {
 	 * @throws NoSuchElementException When n is invalid index
 	 */
 	public T getLinear(int n) throws NoSuchElementException {
+		if (metrics != null) metrics.count(SkipListMetrics.GET);
+		
 		// When invalid input index
 		if (n < 0 || size - 1 < n) 
 			throw new NoSuchElementException();
@@ -442,35 +1368,31 @@ public class SkipList<T extends Comparable<? super T>> {
 	 * @throws NoSuchElementException When n is invalid index
 	 */
 	public T getLog(int n) throws NoSuchElementException {
-		// position: index + 1
-		int position = n + 1;
+		if (metrics != null) metrics.count(SkipListMetrics.GET);
 		
 		// When invalid input index
 		if (n < 0 || size - 1 < n) 
 			throw new NoSuchElementException();
 		
+		return entryAt(n).element;
+	} // worst case RT: O(maxLevel*log n) = O(log n)
+	
+	/**
+	 * Helper method - getLog(), SkipListSpliterator.trySplit(): 
+	 * the Entry at index n (0 <= n < size), over span[].
+	 */
+	private Entry<T> entryAt(int n) {
+		// position: index + 1
+		int position = n + 1;
+		
 		// visitedPosition: counter of distance traversed horizontally
 		// to reach value n (position - 1, just previous of our result)
 		int visitedPosition = 0;
 		Entry<T> p = head; // like cursor/ pointer
 		
-		int i = POSSIBLE_LEVELS - 1; // level to begin with
-		
-		// to denote if there exists a non-tail link from head
-		boolean trainStarted = false;
-		
-		// Going down until head points to some non-tail
-		while (!trainStarted) {
-			
-			// When head points to non-tail, don't lower i
-			if(p.next[i].element != null) {
-				trainStarted = true;
-			}
-			// else just lower the level i
-			else
-				i--;
-		}
-		// Now, we can start our search from i
+		// level to begin with (on levels where head points to tail, 
+		// its span, size + 1, is past any position)
+		int i = maxLevel - 1;
 		
 		// Iterating top-down from i to 0
 		while (i > -1) {
@@ -485,10 +1407,24 @@ public class SkipList<T extends Comparable<? super T>> {
 			// If we see that we went past out position, continue to 
 			// lower the level, until we reach to the lowest level.
 		}
-		// p is at (position-1), so return just immediate next element
-		return p.next[0].element;
-	} // worst case RT: O(POSSIBLE_LEVELS*log n) = O(log n)
+		// p is at (position-1), so return just immediate next Entry
+		return p.next[0];
+	}
 
+	/**
+	 * Index of x in the list (first element is at index 0), in 
+	 * O(log n) by summing span[] on the way down.
+	 * @param x the element to be searched
+	 * @return the index of x, or -1 when x is not present
+	 */
+	public int indexOf(T x) {
+		// When x is null
+		if (x == null)
+			return -1;
+		
+		return rank(x, true);
+	}
+	
 	/**
 	 * Is the list empty?
 	 * @return true when empty Skip list, otherwise false
@@ -506,6 +1442,115 @@ public class SkipList<T extends Comparable<? super T>> {
 		return new SkipListIterator();
 	}
 	
+	/**
+	 * Iterate through the elements from ceiling(fromKey) on, in 
+	 * SORTED ORDER. Starts in O(log n).
+	 * @param fromKey the lowest element (inclusive), present or not
+	 * @return iterator
+	 */
+	public Iterator<T> iterator(T fromKey) {
+		return new SkipListIterator(pathBefore(fromKey));
+	}
+	
+	/**
+	 * Iterate through the elements from index n on (first element 
+	 * is at index 0), in SORTED ORDER. Starts in O(log n), over span[].
+	 * @param n index of the first element returned (size: none)
+	 * @return iterator
+	 * @throws NoSuchElementException When n is invalid index
+	 */
+	public Iterator<T> iteratorFromIndex(int n) {
+		// When invalid input index
+		if (n < 0 || size < n)
+			throw new NoSuchElementException();
+		
+		return new SkipListIterator(pathAt(n));
+	}
+	
+	/**
+	 * Spliterator over the elements, in SORTED ORDER: SIZED and 
+	 * SUBSIZED, as trySplit() halves it by index, in O(log n) 
+	 * through span[]. Fails fast like the iterators.
+	 * @return spliterator
+	 */
+	public Spliterator<T> spliterator() {
+		return new SkipListSpliterator(head.next[0], 0, size, modCount);
+	}
+	
+	/**
+	 * Sequential Stream of the elements, in SORTED ORDER.
+	 * @return stream
+	 */
+	public Stream<T> stream() {
+		return StreamSupport.stream(spliterator(), false);
+	}
+	
+	/**
+	 * Parallel Stream of the elements: split in halves by index, 
+	 * down to the chunks run on the threads of the common ForkJoinPool.
+	 * @return stream
+	 */
+	public Stream<T> parallelStream() {
+		return StreamSupport.stream(spliterator(), true);
+	}
+	
+	/**
+	 * Iterate through the elements from the last to the first, in 
+	 * DESCENDING ORDER, through prev.
+	 * @return iterator
+	 */
+	public Iterator<T> descendingIterator() {
+		return new DescendingIterator();
+	}
+	
+	/**
+	 * Helper method - iterator(fromKey): last Entry of each level 
+	 * before x, like predecessor(x) but keeping every level 
+	 * (doesn't touch last[]).
+	 * @param x the element to be searched
+	 * @return path[i]: last Entry of level i before x
+	 */
+	private Entry<T>[] pathBefore(T x) {
+		Entry<T>[] path = newEntries(maxLevel);
+		Entry<T> p = head; // like cursor
+		Entry<T> stop = tail; // known not to be < x (see predecessor)
+		
+		for (int i = maxLevel - 1; i > -1; i--) {
+			// while the next Entry may be < x (tail and stop are not)
+			while (p.next[i] != stop) {
+				if (p.next[i].element.compareTo(x) >= 0) {
+					stop = p.next[i];
+					break;
+				}
+				p = p.next[i];
+			}
+			path[i] = p;
+		}
+		return path;
+	}
+	
+	/**
+	 * Helper method - iteratorFromIndex(): last Entry of each level 
+	 * at or before position (index + 1; 0: head), over span[].
+	 * @param position the position to be reached
+	 * @return path[i]: last Entry of level i at or before it
+	 */
+	private Entry<T>[] pathAt(int position) {
+		Entry<T>[] path = newEntries(maxLevel);
+		Entry<T> p = head; // like cursor
+		int distance = 0; // position of p
+		
+		for (int i = maxLevel - 1; i > -1; i--) {
+			// tail is at size + 1, beyond any position asked for
+			while (distance + p.span[i] <= position) {
+				distance += p.span[i];
+				p = p.next[i];
+			}
+			path[i] = p;
+		}
+		return path;
+	}
+	
 	/**
 	 * Returns the last element of List.
 	 * @return the element
@@ -514,6 +1559,34 @@ public class SkipList<T extends Comparable<? super T>> {
 		return tail.prev.element; // previous of tail
 	}
 	
+	/**
+	 * Element at the q-th quantile (nearest-rank): the smallest element 
+	 * such that at least a fraction q of all elements are less than or 
+	 * equal to it. percentile(0.5) is the median, percentile(1) the 
+	 * last element. RT: O(log n), through getLog().
+	 * @param q the quantile, between 0 and 1
+	 * @return the element
+	 * @throws IllegalArgumentException When q is not in [0, 1]
+	 * @throws NoSuchElementException When the list is empty
+	 */
+	public T percentile(double q) {
+		// When invalid quantile (also NaN)
+		if (!(q >= 0 && q <= 1))
+			throw new IllegalArgumentException("Quantile not in [0, 1]: " + q);
+		
+		// When there is no element
+		if (isEmpty())
+			throw new NoSuchElementException();
+		
+		// nearest rank: ceil(q * size) elements cover q
+		int rank = Math.max(1, (int) Math.ceil(q * size));
+		
+		// When q * size was rounded up past an integer (e.g. 0.7 * 10)
+		if (rank > 1 && (double) (rank - 1) / size >= q)
+			rank--;
+		return getLog(rank - 1);
+	}
+	
 	/**
 	 * Prints Skip list for each express-way horizontally
 	 */
@@ -661,130 +1734,378 @@ public class SkipList<T extends Comparable<? super T>> {
 		}	
 	}
 	
+	/**
+	 * Number of elements smaller than x, in O(log n). x doesn't have 
+	 * to be present: rankOf(x) is where add(x) would put it.
+	 * @param x the input element
+	 * @return the rank of x
+	 */
+	public int rankOf(T x) {
+		return rank(x, false);
+	}
+	
 	/**
 	 * Eligible for EXCELLENCE CREDIT.
 	 * Not a standard operation in skip lists.
 	 * Optional operation: Reorganize the elements of the list 
 	 * into a perfect skip list. 
+	 * 
+	 * Runs a whole incremental rebuild (see startRebuild()) at once.
 	 */
 	public void rebuild() {
-		// computing maxLevel required for rebuild()
-		maxLevel = (int) (Math.log10(size) / Math.log10(2)) + 1; 
+		if (metrics != null) metrics.count(SkipListMetrics.REBUILD);
+		
+		startRebuild();
+		rebuildStep(Integer.MAX_VALUE);
+	}
+	
+	/**
+	 * Reorganizes the list into a perfect skip list, like rebuild(), 
+	 * with the links set in parallel (ForkJoin). In a perfect list of 
+	 * n elements, the entry at position p has height tz(p) + 1 (up to 
+	 * log(n) + 1), its level i link goes to position p + 2^i, or to 
+	 * tail at n + 1, and its prev is at p - 1: each entry depends only 
+	 * on its position. So, once level 0 is copied to an array, 
+	 * segments of it are linked independently, by LinkTask. 
+	 */
+	public void rebuildParallel() {
+		if (metrics != null) metrics.count(SkipListMetrics.REBUILD);
 		
-		// position (= index + 1) of the current entry, starting at head
-		int position = 0;  
+		// entries[k]: Entry at position k + 1
+		Entry<T>[] entries = newEntries(size);
+		int k = 0;
+		for (Entry<T> p = head.next[0]; p != tail; p = p.next[0])
+			entries[k++] = p;
 		
-		// storing just like next[] for each entry
-		Entry<T>[] previous = new Entry[maxLevel];
+		modCount++; // heights change
+		link(entries, null);
+	}
+	
+	/**
+	 * Helper method - rebuildParallel(), fromSorted(): makes entries 
+	 * the perfect skip list, by LinkTask.
+	 * @param entries the entries, in order (to be created when 
+	 *        elements are given)
+	 * @param elements the elements of the entries, or null
+	 * @return false when elements are out of order (list unchanged)
+	 */
+	private boolean link(Entry<T>[] entries, T[] elements) {
+		int n = entries.length;
+		
+		// any search path or incremental rebuild is over
+		lastLevels = 0;
+		Arrays.fill(last, null);
+		rebuilding = false;
+		Arrays.fill(rebuildPrev, null);
+		rebuildKey = null;
+		
+		int levels = 32 - Integer.numberOfLeadingZeros(Math.max(n, 1));
+		
+		if (elements != null) {
+			LinkTask<T> create = new LinkTask<>(this, entries, elements, 
+					levels, 0, n);
+			ForkJoinPool.commonPool().invoke(create);
+			
+			// When some segment found elements out of order
+			if (create.unsorted)
+				return false;
+		}
+		ForkJoinPool.commonPool().invoke(
+				new LinkTask<>(this, entries, null, levels, 0, n));
 		
-		// storing number of powers of 2. e.g. [1,2,4,8,...]
-		int[] powersOfTwo = new int[maxLevel];
+		size = n;
+		maxLevel = levels;
 		
-		// Initializing all entries of previous[] as head, 
-		// and computing powers of 2.
-		for (int i = 0; i < maxLevel; i++) { 
-			previous[i] = head; 
-			powersOfTwo[i] = (int) Math.pow(2, i); 
+		// head: level i to position 2^i, levels above maxLevel to tail
+		for (int i = 0; i < POSSIBLE_LEVELS; i++) {
+			if (i < maxLevel && n > 0) {
+				head.next[i] = entries[(1 << i) - 1];
+				head.span[i] = 1 << i;
+			}
+			else {
+				head.next[i] = tail;
+				head.span[i] = n + 1;
+			}
+		}
+		tail.prev = (n > 0) ? entries[n - 1] : head;
+		return true;
+	}
+	
+	/**
+	 * LinkTask: links the entries at positions from + 1 to to, as in 
+	 * a perfect skip list of the given levels, splitting in halves 
+	 * down to THRESHOLD. When elements are given, it creates their 
+	 * entries instead (links need the entries of other segments), 
+	 * checking that they are in order.
+	 */
+	private static class LinkTask<T extends Comparable<? super T>> extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		static final int THRESHOLD = 1 << 13;
+		
+		final SkipList<T> skipList;
+		final Entry<T>[] entries;
+		final T[] elements; // null: the entries exist
+		final int levels, from, to;
+		
+		// set by any segment finding elements out of order
+		volatile boolean unsorted;
+		final LinkTask<T> root;
+		
+		LinkTask(SkipList<T> skipList, Entry<T>[] entries, T[] elements, 
+				int levels, int from, int to) {
+			this(skipList, entries, elements, levels, from, to, null);
 		}
 		
-		// p is the first entry
-		Entry<T> p = head.next[0];
+		private LinkTask(SkipList<T> skipList, Entry<T>[] entries, 
+				T[] elements, int levels, int from, int to, LinkTask<T> root) {
+			this.skipList = skipList;
+			this.entries = entries;
+			this.elements = elements;
+			this.levels = levels;
+			this.from = from;
+			this.to = to;
+			this.root = (root != null) ? root : this;
+		}
 		
-		// While p reaches tail
-		while (p != null) { 
-			position++; 
+		protected void compute() {
+			// When the segment is large: halves, in parallel
+			if (to - from > THRESHOLD) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new LinkTask<>(skipList, entries, elements, levels, from, mid, root), 
+						new LinkTask<>(skipList, entries, elements, levels, mid, to, root));
+				return;
+			}
 			
-			// For odd positions, head positioned at 0.
-			if (!(position % 2 == 0)) {
-				// exact no of entries in new p.next[] = 1 :)
-				p.height = 1;
-				
-				Entry <T>[] newNext = new Entry[1];
-				int[] newSpan = new int[1];
-				
-				// only correctly referencing at lowest level
-				newNext[0] = p.next[0]; 
-				newSpan[0] = 1;
-				// replacing the old next with the new next[] 
-				p.next = newNext; 
-				p.span = newSpan; // & old span with new span[]
-				
-				previous[0].next[0] = p; 
-				previous[0] = p;
-			} 
+			int n = entries.length;
 			
-			// For even positions, need to recreate next[] and span[]
-			// with proper height of each entry
-			else {
-				// exponent = the largest power
-				int exponent = maxLevel - 1; 
-				
-				// reducing exponent as it reaches exact max exponent 
-				// required for that entry
-				while (position % powersOfTwo[exponent] != 0)
-					exponent--;
-				
-				// exact no of entries in new p.next[] = exponent + 1
-				p.height = exponent + 1;
-				
-				Entry <T>[] newNext = new Entry[p.height];
-				int[] newSpan = new int[p.height];
-				
-				// only correctly referencing at lowest level
-				newNext[0] = p.next[0]; 
-				newSpan[0] = p.span[0];
-				// replacing the old next with the new next[] 
-				p.next = newNext; 
-				p.span = newSpan; // & old span with new span[]
-				
-				// so filling up entries in top-down manner 
-				// in all such entries which points to p
-				while (exponent > -1) {
-					// Entry at level exponent which points to p = p 
-					previous[exponent].next[exponent] = p;
-					previous[exponent].span[exponent] = powersOfTwo[exponent];
+			if (elements != null) {
+				for (int k = from; k < to; k++) {
+					T x = elements[k];
 					
-					// Now that entry is replaced by p, ...
-					previous[exponent] = p; // ...for some future entry
-					exponent--;
+					// When x isn't after the previous element
+					if (x == null || (k > 0 && (elements[k - 1] == null || 
+							elements[k - 1].compareTo(x) >= 0)))
+						root.unsorted = true;
+					
+					int position = k + 1;
+					entries[k] = new Entry<>(x, Math.min(
+							Integer.numberOfTrailingZeros(position), levels - 1) + 1);
 				}
+				return;
 			}
-			p = p.next[0]; // moving on to the immediate next
-		}
-		
-		// Now whatever entries we have in previous[] 
-		// are the end-stops at each express level. :)
-		// So, point them to tail if they aren't pointing to it.
-		for (int i = 0; i < maxLevel; i++) {
-			int in = maxLevel - 1 - i;
 			
-			if (previous[in] != tail) {
-				previous[in].next[in] = tail;
+			for (int k = from; k < to; k++) {
+				Entry<T> p = entries[k];
+				int position = k + 1;
+				int height = Math.min(Integer.numberOfTrailingZeros(position), 
+						levels - 1) + 1;
 				
-				// When size = 2^maxLevel - 1
-				if (size() == Math.pow(2, maxLevel) - 1) {
-					// in perfect skip list span[i] = 2^i
-					previous[in].span[in] = powersOfTwo[in];
+				// levels above the new height: no more links
+				for (int i = height; i < p.height; i++)
+					p.next[i] = null;
+				
+				// When the new height doesn't fit in next[]
+				if (height > p.next.length) {
+					p.next = newEntries(height);
+					p.span = new int[height];
 				}
-				// When size != 2^maxLevel - 1
-				else {
-					// prevDist: distance of previous[in] from head
-					int prevDist = 0;
-					//getPosition(previous[i].element);
-					Entry<T> q = head;
+				p.height = height;
+				
+				for (int i = 0; i < height; i++) {
+					int nextPosition = position + (1 << i);
 					
-					while ( q.next[in] != null && 
-					q.next[in].element != null && 
-					q.next[in].element.compareTo(previous[in].element) <= 0) {
-						
-						prevDist += q.span[in]; // summing up distance strode
-						q = q.next[in]; // on the same level
+					if (nextPosition <= n) {
+						p.next[i] = entries[nextPosition - 1];
+						p.span[i] = 1 << i;
+					}
+					else {
+						p.next[i] = skipList.tail;
+						p.span[i] = n + 1 - position;
 					}
-					// distance to tail = size + 1 - prevDist
-					previous[in].span[in] = size + 1 - prevDist;
 				}
- 			}
+				p.prev = (k > 0) ? entries[k - 1] : skipList.head;
+			}
+		}
+	}
+	
+	/**
+	 * Starts (or restarts) an incremental rebuild: rebuildStep() then 
+	 * reorganizes the list into a perfect skip list a few entries at a 
+	 * time, from left to right, the entry at position p getting height 
+	 * (trailing zeros of p) + 1, up to log(size) + 1.
+	 * 
+	 * Between two steps the list is a valid skip list, which can be 
+	 * searched and changed as usual. The rebuild keeps its frontier: 
+	 * rebuildPrev[i], the last Entry of level i before the next entry 
+	 * to be rebuilt (at rebuildPosition[i]), i.e. the search path to it. 
+	 * A change after the frontier keeps it valid; a change before it 
+	 * (which shifts positions) has it searched again at the next step.
+	 */
+	public void startRebuild() {
+		rebuilding = true;
+		lastLevels = 0; // search path won't be valid after this
+		modCount++; // nor the path[] of iterators (maxLevel may grow)
+		
+		// levels of the perfect list, not below maxLevel until it's done
+		rebuildLevels = 32 - Integer.numberOfLeadingZeros(Math.max(size, 1));
+		for (; maxLevel < rebuildLevels; maxLevel++)
+			head.span[maxLevel] = size + 1;
+		
+		// starting at head
+		for (int i = 0; i < POSSIBLE_LEVELS; i++) {
+			rebuildPrev[i] = head;
+			rebuildPosition[i] = 0;
+		}
+		rebuildKey = null;
+		frontierValid = true;
+	}
+	
+	/**
+	 * Rebuilds at most budget more entries of the incremental rebuild. 
+	 * An entry keeps its next[] and span[] when its new height fits 
+	 * in them. RT: O(budget), plus O(log n) after a change before 
+	 * the frontier.
+	 * @param budget number of entries to be rebuilt
+	 * @return true when the rebuild is done (or none was started)
+	 */
+	public boolean rebuildStep(int budget) {
+		// When no rebuild is running
+		if (!rebuilding)
+			return true;
+		
+		lastLevels = 0; // search path won't be valid after this
+		modCount++; // nor will the path[] of iterators
+		
+		// When the list changed before the frontier
+		if (!frontierValid)
+			seekFrontier(rebuildKey);
+		
+		int position = rebuildPosition[0];
+		Entry<T> p = rebuildPrev[0].next[0]; // next to be rebuilt
+		
+		for (int done = 0; done < budget && p != tail; done++) {
+			position++;
+			
+			// perfect height: 1 + largest i such that 2^i divides position
+			int height = Math.min(Integer.numberOfTrailingZeros(position), 
+					rebuildLevels - 1) + 1;
+			
+			resize(p, position, height);
+			p = p.next[0];
+		}
+		
+		// When the rebuild has reached the tail
+		if (p == tail) {
+			finishRebuild();
+			return true;
+		}
+		rebuildKey = p.element;
+		return false;
+	}
+	
+	/**
+	 * Helper method - rebuildStep(): sets the height of p, at position, 
+	 * whose predecessors on each level are rebuildPrev[].
+	 */
+	private void resize(Entry<T> p, int position, int height) {
+		// levels above the new height: bypassing p
+		for (int i = height; i < p.height; i++) {
+			rebuildPrev[i].next[i] = p.next[i];
+			rebuildPrev[i].span[i] += p.span[i];
+			p.next[i] = null;
+		}
+		
+		// When the new height doesn't fit in next[]
+		if (height > p.next.length) {
+			p.next = Arrays.copyOf(p.next, height);
+			p.span = Arrays.copyOf(p.span, height);
+		}
+		
+		// levels p didn't have: inserting p after rebuildPrev[i]
+		for (int i = p.height; i < height; i++) {
+			int distance = position - rebuildPosition[i];
+			
+			p.next[i] = rebuildPrev[i].next[i];
+			p.span[i] = rebuildPrev[i].span[i] - distance;
+			rebuildPrev[i].next[i] = p;
+			rebuildPrev[i].span[i] = distance;
+		}
+		p.height = height;
+		
+		// p is now the frontier on its levels
+		for (int i = 0; i < height; i++) {
+			rebuildPrev[i] = p;
+			rebuildPosition[i] = position;
+		}
+	}
+	
+	/**
+	 * Helper method - rebuildStep(): sets rebuildPrev[] to the search 
+	 * path to key (the next entry to be rebuilt), read-only.
+	 * @param key the next element to be rebuilt (null: the first)
+	 */
+	private void seekFrontier(T key) {
+		Entry<T> p = head;
+		int position = 0;
+		
+		for (int in = maxLevel - 1; in > -1; in--) {
+			while (key != null && p.next[in] != tail && 
+					p.next[in].element.compareTo(key) < 0) {
+				position += p.span[in];
+				p = p.next[in];
+			}
+			rebuildPrev[in] = p;
+			rebuildPosition[in] = position;
 		}
+		frontierValid = true;
+	}
+	
+	/**
+	 * Helper method - rebuildStep(): ends the rebuild, lowering maxLevel 
+	 * to the highest level in use.
+	 */
+	private void finishRebuild() {
+		rebuilding = false;
+		
+		// entries added during the rebuild may be taller than the 
+		// perfect list
+		while (maxLevel > 1 && head.next[maxLevel - 1] == tail)
+			maxLevel--;
+		
+		// last[] was not kept up with the relinking: no search path
+		Arrays.fill(last, null);
+		Arrays.fill(rebuildPrev, null);
+		rebuildKey = null;
+	}
+	
+	/**
+	 * Helper method - the list changed at x (null: anywhere) during an 
+	 * incremental rebuild: invalidates the frontier when x is before 
+	 * it, and runs rebuildBudget more steps of the rebuild.
+	 */
+	private void rebuildMutated(T x) {
+		if (x == null || rebuildKey == null || x.compareTo(rebuildKey) < 0)
+			frontierValid = false;
+		
+		if (rebuildBudget > 0)
+			rebuildStep(rebuildBudget);
+	}
+	
+	/**
+	 * Is an incremental rebuild running?
+	 * @return true between startRebuild() and the last rebuildStep()
+	 */
+	public boolean isRebuilding() {
+		return rebuilding;
+	}
+	
+	/**
+	 * Sets the number of entries a running incremental rebuild goes 
+	 * through on each change of the list (0: only in rebuildStep()).
+	 * @param budget entries rebuilt per add(), remove(), ...
+	 */
+	public void setRebuildBudget(int budget) {
+		rebuildBudget = budget;
 	}
 	
 	/**
@@ -794,8 +2115,10 @@ public class SkipList<T extends Comparable<? super T>> {
 	 * @return removed element, if present, else null
 	 */
 	public T remove(T x) {
-		// When there is no x in the list
-		if (!contains(x)) return null;
+		if (metrics != null) metrics.count(SkipListMetrics.REMOVE);
+		
+		// When there is no x in the list (also sets last[] for x)
+		if (x == null || !find(x)) return null;
 		
 		// ent is the element to be removed
 		Entry<T> ent = last[0].next[0]; 
@@ -813,24 +2136,154 @@ public class SkipList<T extends Comparable<? super T>> {
 		
 		// update spans above height for last[] 
 		// but, unaffected next[] pointers!
-		while (last[i] != null) {
+		for (; i < maxLevel; i++) {
 			last[i].span[i]--;
-			i++;
 		}
 		
-		// NOTE: last[] is null for levels above maxLevel
-		// So, update span of un-used last[] Entries
-		for(i = 0; i < POSSIBLE_LEVELS; i++){
-			if(head.next[i] == tail)
-				head.span[i] = size + 1;
-		}
+		// re-establishing the previous link
+		ent.next[0].prev = last[0];
+		
 		// Successfully removed and merged 
 		// the proper links in next[] and values in span[].
 		size--;
+		modCount++;
 		
+		if (rebuilding) rebuildMutated(x);
+		if (rebuildPolicy != null) mutated(1);
 		return ent.element;
 	}
 	
+	/**
+	 * Removes all elements in [lo, hi). The whole segment is unlinked 
+	 * at every level at once: with the search paths to lo and to hi, 
+	 * last[i] (before lo) just takes the next[i] of the Entry before 
+	 * hi, and the span between them is known from their positions. 
+	 * RT: O(log n), whatever the number of elements removed.
+	 * @param lo the lowest element of the range (inclusive)
+	 * @param hi the highest element of the range (exclusive)
+	 * @return the number of elements removed
+	 */
+	public int removeRange(T lo, T hi) {
+		// When the range is empty
+		if (lo.compareTo(hi) >= 0)
+			return 0;
+		
+		// search path to hi: before[i] at position beforePosition[i]
+		find(hi);
+		Entry<T>[] before = Arrays.copyOf(last, maxLevel);
+		int[] beforePosition = Arrays.copyOf(lastPosition, maxLevel);
+		
+		// search path to lo, in last[] and lastPosition[]
+		find(lo);
+		
+		// removed: number of elements in the range
+		int removed = beforePosition[0] - lastPosition[0];
+		
+		// When there is nothing in the range
+		if (removed == 0)
+			return 0;
+		
+		for (int i = 0; i < maxLevel; i++) {
+			// distance from last[i] to the Entry after the range
+			int distance = beforePosition[i] + before[i].span[i] 
+					- lastPosition[i];
+			
+			// bypassing the range at level i (no-op when no Entry 
+			// of level i is in the range: before[i] is last[i])
+			last[i].next[i] = before[i].next[i];
+			last[i].span[i] = distance - removed;
+		}
+		last[0].next[0].prev = last[0];
+		size -= removed;
+		modCount++;
+		
+		if (rebuilding) rebuildMutated(null);
+		if (rebuildPolicy != null) mutated(removed);
+		return removed;
+	}
+	
+	/**
+	 * Metrics of the list: the counters (all 0 when metrics are off), 
+	 * along with the occupancy of each level, counted by a walk of 
+	 * level 0. RT: O(n).
+	 * @return the snapshot
+	 */
+	public SkipListMetrics.Snapshot metrics() {
+		SkipListMetrics counters = (metrics != null) ? metrics 
+				: new SkipListMetrics();
+		return counters.snapshot(size, maxLevel, occupancy());
+	}
+	
+	/**
+	 * Helper method - mutated x count elements: asks rebuildPolicy 
+	 * whether to rebuild(), and does it if so.
+	 * @param count number of elements added or removed
+	 */
+	private void mutated(int count) {
+		RebuildPolicy.Reason reason = rebuildPolicy.mutated(this, count);
+		
+		// When the policy fires
+		if (reason != null) {
+			long start = System.nanoTime();
+			rebuild();
+			rebuildPolicy.rebuilt(reason, size, System.nanoTime() - start, false);
+		}
+	}
+	
+	/**
+	 * Helper method - the metrics recorder (null when off).
+	 */
+	SkipListMetrics metricsRecorder() {
+		return metrics;
+	}
+	
+	/**
+	 * Helper method - number of entries with a link on each level, 
+	 * by a walk of level 0. RT: O(n).
+	 * @return occupancy[i]: entries with a link on level i
+	 */
+	int[] occupancy() {
+		int[] occupancy = new int[maxLevel];
+		
+		for (Entry<T> p = head.next[0]; p != tail; p = p.next[0]) {
+			for (int i = 0; i < p.height && i < maxLevel; i++)
+				occupancy[i]++;
+		}
+		return occupancy;
+	}
+	
+	/**
+	 * Sets the policy for rebuild() to fire on its own, after add(), 
+	 * remove() (also by an iterator), addSorted() or removeRange() 
+	 * (null: never).
+	 * @param rebuildPolicy the policy, whose events() log the rebuilds
+	 */
+	public void setRebuildPolicy(RebuildPolicy rebuildPolicy) {
+		this.rebuildPolicy = rebuildPolicy;
+	}
+	
+	/**
+	 * Turns metrics on (with all counters at 0) or off. When off, 
+	 * an operation only checks that metrics are off.
+	 * @param enabled true to turn metrics on
+	 */
+	public void setMetrics(boolean enabled) {
+		metrics = enabled ? new SkipListMetrics() : null;
+	}
+	
+	/**
+	 * Turns finger mode on or off. In finger mode, every search 
+	 * starts from the path of the previous one, which is much faster 
+	 * for keys close to (and after) the previous key, e.g. sequential 
+	 * scans. Searches then write last[], so contains(), floor() and 
+	 * ceiling() are no longer safe to run from many threads at once 
+	 * (LockedSkipList must not be used in finger mode).
+	 * @param finger true to turn finger mode on
+	 */
+	public void setFinger(boolean finger) {
+		this.finger = finger;
+	}
+	
 	/**
 	 * Return the number of elements in the list
 	 * @return the size of the list
@@ -839,6 +2292,17 @@ public class SkipList<T extends Comparable<? super T>> {
 		return this.size;
 	}
 	
+	/**
+	 * View of the elements in [lo, hi). Changes to the list are 
+	 * seen through the view, and the other way round.
+	 * @param lo the lowest element of the range (inclusive)
+	 * @param hi the highest element of the range (exclusive)
+	 * @return the view
+	 */
+	public SubList subList(T lo, T hi) {
+		return new SubList(lo, hi);
+	}
+	
 	//---------------------------- MAIN ----------------------------//
 	public static void main(String[] args) {
 		
@@ -0,0 +1,1532 @@
+package rsn170330.lp2;
+
+/**
+ * CS 5V81.001. Implementation of data structures and algorithms
+ * Long Project LP2: Skip List Implementation
+ *
+ * Micro-benchmarks for the Skip list. Each benchmark is picked by name:
+ *  $java rsn170330.lp2.SkipListBenchmark alloc [size] [lookups]
+ *  $java rsn170330.lp2.SkipListBenchmark memory [size]
+ *  $java rsn170330.lp2.SkipListBenchmark concurrent [threads] [size] [millis]
+ *  $java rsn170330.lp2.SkipListBenchmark readheavy [size] [millis]
+ *  $java rsn170330.lp2.SkipListBenchmark bulk [size]
+ *  $java rsn170330.lp2.SkipListBenchmark finger [size]
+ *  $java rsn170330.lp2.SkipListBenchmark range [size] [width]
+ *  $java rsn170330.lp2.SkipListBenchmark pause [size] [budget]
+ *  $java rsn170330.lp2.SkipListBenchmark parallel [size]
+ *  $java rsn170330.lp2.SkipListBenchmark churn [size] [ops]
+ *  $java rsn170330.lp2.SkipListBenchmark comparisons [files...]
+ *  $java rsn170330.lp2.SkipListBenchmark map [size] [lookups]
+ *  $java rsn170330.lp2.SkipListBenchmark levels [size]
+ *  $java rsn170330.lp2.SkipListBenchmark snapshot [size]
+ *  $java rsn170330.lp2.SkipListBenchmark wal [threads] [millis]
+ *  $java rsn170330.lp2.SkipListBenchmark sharded [threads] [size] [millis]
+ *  $java rsn170330.lp2.SkipListBenchmark scan [size] [width]
+ *  $java rsn170330.lp2.SkipListBenchmark stream [size]
+ *  $java rsn170330.lp2.SkipListBenchmark rank [size] [lookups]
+ *
+ * Unlike SkipListDriver (which times a whole operation file with Timer),
+ * these isolate a single aspect of the implementation.
+ */
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Random;
+import java.util.TreeSet;
+
+public class SkipListBenchmark {
+
+	public static void main(String[] args) {
+		String name = (args.length > 0) ? args[0] : "alloc";
+
+		switch (name) {
+			case "alloc": {
+				int size = intArg(args, 1, 1000000);
+				int lookups = intArg(args, 2, 1000000);
+				allocation(size, lookups);
+				break;
+			}
+			case "memory": {
+				int size = intArg(args, 1, 1000000);
+				memory(size);
+				break;
+			}
+			case "concurrent": {
+				int threads = intArg(args, 1,
+						Runtime.getRuntime().availableProcessors());
+				int size = intArg(args, 2, 100000);
+				int millis = intArg(args, 3, 2000);
+				concurrent(threads, size, millis);
+				break;
+			}
+			case "readheavy": {
+				int size = intArg(args, 1, 100000);
+				int millis = intArg(args, 2, 2000);
+				readHeavy(size, millis);
+				break;
+			}
+			case "bulk": {
+				int size = intArg(args, 1, 1000000);
+				bulk(size);
+				break;
+			}
+			case "finger": {
+				int size = intArg(args, 1, 1000000);
+				finger(size);
+				break;
+			}
+			case "range": {
+				int size = intArg(args, 1, 1000000);
+				int width = intArg(args, 2, 1000);
+				range(size, width);
+				break;
+			}
+			case "pause": {
+				int size = intArg(args, 1, 1000000);
+				int budget = intArg(args, 2, 8);
+				pause(size, budget);
+				break;
+			}
+			case "parallel": {
+				int size = intArg(args, 1, 10000000);
+				parallel(size);
+				break;
+			}
+			case "churn": {
+				int size = intArg(args, 1, 16);
+				int ops = intArg(args, 2, 10000000);
+				churn(size, ops);
+				break;
+			}
+			case "comparisons": {
+				String[] files = (args.length > 1) 
+						? java.util.Arrays.copyOfRange(args, 1, args.length)
+						: new String[] { "lp2-test/lp2-t15.txt", 
+								"lp2-test/lp2-t16.txt" };
+				for (String file : files)
+					comparisons(file);
+				break;
+			}
+			case "map": {
+				int size = intArg(args, 1, 1000000);
+				int lookups = intArg(args, 2, 1000);
+				map(size, lookups);
+				break;
+			}
+			case "levels": {
+				int size = intArg(args, 1, 1000000);
+				levels(size);
+				break;
+			}
+			case "snapshot": {
+				int size = intArg(args, 1, 1000000);
+				snapshot(size);
+				break;
+			}
+			case "wal": {
+				int threads = intArg(args, 1, 16);
+				int millis = intArg(args, 2, 2000);
+				wal(threads, millis);
+				break;
+			}
+			case "sharded": {
+				int threads = intArg(args, 1, 16);
+				int size = intArg(args, 2, 1000000);
+				int millis = intArg(args, 3, 2000);
+				sharded(threads, size, millis);
+				break;
+			}
+			case "scan": {
+				int size = intArg(args, 1, 1000000);
+				int width = intArg(args, 2, 100);
+				scan(size, width);
+				break;
+			}
+			case "stream": {
+				int size = intArg(args, 1, 10000000);
+				stream(size);
+				break;
+			}
+			case "rank": {
+				int size = intArg(args, 1, 100000);
+				int lookups = intArg(args, 2, 1000);
+				rank(size, lookups);
+				break;
+			}
+			default:
+				System.out.println("Unknown benchmark: " + name);
+		}
+	}
+
+	/**
+	 * Measures bytes allocated per contains(), floor(), ceiling()
+	 * after warm-up. Keys are boxed up-front, so any allocation
+	 * reported here comes from the Skip list itself.
+	 * @param size number of elements in the list
+	 * @param lookups number of lookups per measured operation
+	 */
+	static void allocation(int size, int lookups) {
+		Random rand = new Random(1);
+		SkipList<Long> skipList = new SkipList<>();
+
+		for (int i = 0; i < size; i++)
+			skipList.add((long) rand.nextInt(2 * size));
+
+		// pre-boxed probe keys: half present, half absent (on average)
+		Long[] keys = new Long[lookups];
+		for (int i = 0; i < lookups; i++)
+			keys[i] = (long) rand.nextInt(2 * size);
+
+		// warm-up, so that JIT compiled code is being measured
+		for (int round = 0; round < 5; round++)
+			lookupAll(skipList, keys);
+
+		String[] ops = { "contains", "floor", "ceiling" };
+
+		for (String op : ops) {
+			long before = allocatedBytes();
+			long start = System.nanoTime();
+			long sink = lookup(skipList, keys, op);
+			long elapsed = System.nanoTime() - start;
+			long allocated = allocatedBytes() - before;
+
+			System.out.printf("%-9s %8.3f bytes/op %8.1f ns/op (sink %d)%n",
+					op, (double) allocated / lookups,
+					(double) elapsed / lookups, sink);
+		}
+	}
+
+	/**
+	 * Compares heap bytes per element, and the cost of a full level 0
+	 * scan, of SkipList<Long>, LongSkipList and CompactLongSkipList
+	 * holding the same random keys.
+	 * @param size number of elements in each list
+	 */
+	static void memory(int size) {
+		long[] keys = new long[size];
+		Random rand = new Random(1);
+		for (int i = 0; i < size; i++)
+			keys[i] = rand.nextLong() >>> 1;
+
+		long before = usedMemory();
+		SkipList<Long> skipList = new SkipList<>();
+		for (long key : keys) skipList.add(key);
+		report("SkipList<Long>", usedMemory() - before, size,
+				scan(skipList.iterator()));
+		skipList = null;
+
+		before = usedMemory();
+		LongSkipList longList = new LongSkipList();
+		for (long key : keys) longList.add(key);
+		report("LongSkipList", usedMemory() - before, size,
+				scan(longList.iterator()));
+		longList = null;
+
+		before = usedMemory();
+		CompactLongSkipList compact = new CompactLongSkipList(size);
+		for (long key : keys) compact.add(key);
+		report("CompactLongSkipList", usedMemory() - before, size,
+				scan(compact.iterator()));
+
+		// rebuild() also lays nodes out in sorted order
+		compact.rebuild();
+		report("  after rebuild()", usedMemory() - before, size,
+				scan(compact.iterator()));
+	}
+
+	private static void report(String name, long bytes, int size, long scanNanos) {
+		System.out.printf("%-20s %8.1f bytes/element %8.2f ns/element scan%n",
+				name, (double) bytes / size, (double) scanNanos / size);
+	}
+
+	/**
+	 * Throughput of ConcurrentSkipList (and of ConcurrentSkipListSet,
+	 * as a baseline) with 1, 2, 4, ... up to maxThreads threads, each
+	 * doing 80% contains(), 10% add(), 10% remove() on random keys.
+	 * @param maxThreads highest number of threads
+	 * @param size number of elements the list starts with
+	 * @param millis duration of each run
+	 */
+	static void concurrent(int maxThreads, int size, int millis) {
+		System.out.println("threads  ConcurrentSkipList  ConcurrentSkipListSet  (ops/sec)");
+
+		for (int threads = 1; threads <= maxThreads; threads *= 2) {
+			ConcurrentSkipList<Long> ours = new ConcurrentSkipList<>();
+			java.util.concurrent.ConcurrentSkipListSet<Long> theirs =
+					new java.util.concurrent.ConcurrentSkipListSet<>();
+
+			Random rand = new Random(1);
+			for (int i = 0; i < size; i++) {
+				long key = rand.nextInt(2 * size);
+				ours.add(key);
+				theirs.add(key);
+			}
+
+			long oursOps = runThreads(threads, millis, size, (key, op) -> {
+				if (op < 80) return ours.contains(key);
+				if (op < 90) return ours.add(key);
+				return ours.remove(key) != null;
+			});
+			long theirsOps = runThreads(threads, millis, size, (key, op) -> {
+				if (op < 80) return theirs.contains(key);
+				if (op < 90) return theirs.add(key);
+				return theirs.remove(key);
+			});
+
+			System.out.printf("%7d  %18d  %21d%n", threads,
+					oursOps * 1000 / millis, theirsOps * 1000 / millis);
+
+			// also run maxThreads, when it is not a power of 2
+			if (threads < maxThreads && 2 * threads > maxThreads)
+				threads = maxThreads / 2;
+		}
+	}
+
+	/**
+	 * Throughput of LockedSkipList on read-heavy mixes: 90% and 99%
+	 * reads (contains, floor, ceiling, get), the rest add()/remove(),
+	 * with 1, 4 and 16 threads.
+	 * @param size number of elements the list starts with
+	 * @param millis duration of each run
+	 */
+	static void readHeavy(int size, int millis) {
+		int[] readPercents = { 90, 99 };
+		int[] threadCounts = { 1, 4, 16 };
+
+		System.out.println("reads  threads  LockedSkipList (ops/sec)");
+
+		for (int reads : readPercents) {
+			for (int threads : threadCounts) {
+				LockedSkipList<Long> list = new LockedSkipList<>();
+				Random rand = new Random(1);
+				for (int i = 0; i < size; i++)
+					list.add((long) rand.nextInt(2 * size));
+
+				// writes split evenly between add() and remove()
+				int addLimit = reads + (100 - reads) / 2;
+
+				long ops = runThreads(threads, millis, size, (key, op) -> {
+					if (op < reads) {
+						switch (op & 3) {
+							case 0: return list.contains(key);
+							case 1: return list.floor(key) != null;
+							case 2: return list.ceiling(key) != null;
+							default: return list.get(op % list.size()) != null;
+						}
+					}
+					if (op < addLimit) return list.add(key);
+					return list.remove(key) != null;
+				});
+
+				System.out.printf("%4d%%  %7d  %14d%n", reads, threads,
+						ops * 1000 / millis);
+			}
+		}
+	}
+
+	/**
+	 * Time to load size sorted keys into an empty SkipList, by
+	 * looping over add() and by one addSorted() pass.
+	 * @param size number of keys
+	 */
+	static void bulk(int size) {
+		List<Long> keys = new ArrayList<>(size);
+		for (long i = 0; i < size; i++)
+			keys.add(2 * i);
+
+		long start = System.nanoTime();
+		SkipList<Long> looped = new SkipList<>();
+		for (Long key : keys) looped.add(key);
+		long loopNanos = System.nanoTime() - start;
+		looped = null;
+		usedMemory();
+
+		start = System.nanoTime();
+		SkipList<Long> bulk = new SkipList<>();
+		bulk.addSorted(keys.iterator());
+		long bulkNanos = System.nanoTime() - start;
+
+		System.out.printf("add() loop:   %8d ms%n", loopNanos / 1000000);
+		System.out.printf("addSorted():  %8d ms  (%.1fx, maxLevel %d)%n",
+				bulkNanos / 1000000, (double) loopNanos / bulkNanos,
+				bulk.maxLevel);
+	}
+
+	/**
+	 * contains() and add() with finger mode off and on, for keys
+	 * in sorted order and in random order.
+	 * @param size number of elements in the list
+	 */
+	static void finger(int size) {
+		Long[] sorted = new Long[size];
+		Long[] shuffled = new Long[size];
+		for (int i = 0; i < size; i++)
+			sorted[i] = shuffled[i] = 2L * i;
+
+		Random rand = new Random(1);
+		for (int i = size - 1; i > 0; i--) {
+			int j = rand.nextInt(i + 1);
+			Long swap = shuffled[i];
+			shuffled[i] = shuffled[j];
+			shuffled[j] = swap;
+		}
+
+		System.out.println("workload           finger off   finger on  (ns/op)");
+
+		for (int round = 0; round < 2; round++) {
+			boolean print = (round == 1); // first round is warm-up
+
+			for (String order : new String[] { "sorted", "random" }) {
+				Long[] keys = order.equals("sorted") ? sorted : shuffled;
+				double[] containsNanos = new double[2];
+				double[] addNanos = new double[2];
+
+				for (int mode = 0; mode < 2; mode++) {
+					SkipList<Long> skipList = new SkipList<>();
+					skipList.setFinger(mode == 1);
+
+					// adds: every even key
+					long start = System.nanoTime();
+					for (Long key : keys) skipList.add(key);
+					addNanos[mode] = (double) (System.nanoTime() - start) / size;
+
+					start = System.nanoTime();
+					long sink = 0;
+					for (Long key : keys)
+						if (skipList.contains(key)) sink++;
+					containsNanos[mode] = (double) (System.nanoTime() - start) / size;
+
+					if (sink != size) System.out.println("error: " + sink);
+				}
+				if (print) {
+					System.out.printf("add      %-8s %11.1f %11.1f%n", order,
+							addNanos[0], addNanos[1]);
+					System.out.printf("contains %-8s %11.1f %11.1f%n", order,
+							containsNanos[0], containsNanos[1]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Deleting ranges of width elements, until the list is empty:
+	 * removeRange() against removing the elements one by one.
+	 * Also times countRange() against counting by iteration.
+	 * @param size number of elements in the list
+	 * @param width number of elements per range
+	 */
+	static void range(int size, int width) {
+		List<Long> keys = new ArrayList<>(size);
+		for (long i = 0; i < size; i++)
+			keys.add(i);
+
+		SkipList<Long> skipList = new SkipList<>();
+		skipList.addSorted(keys.iterator());
+
+		// counting every range, by rank and by iteration
+		long start = System.nanoTime(), sink = 0;
+		for (long lo = 0; lo < size; lo += width)
+			sink += skipList.countRange(lo, lo + width);
+		long countNanos = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		for (long lo = 0; lo < size; lo += width)
+			for (Long x : skipList.subList(lo, lo + width)) sink++;
+		long iterateNanos = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		for (long lo = 0; lo < size; lo += width)
+			sink += skipList.removeRange(lo, lo + width);
+		long rangeNanos = System.nanoTime() - start;
+
+		skipList.addSorted(keys.iterator());
+		start = System.nanoTime();
+		for (long lo = 0; lo < size; lo += width) {
+			Iterator<Long> it = skipList.subList(lo, lo + width).iterator();
+			while (it.hasNext()) {
+				it.next();
+				it.remove();
+				sink++;
+			}
+		}
+		long oneByOneNanos = System.nanoTime() - start;
+
+		long ranges = (size + width - 1) / width;
+		System.out.printf("countRange():        %10.1f us/range%n", countNanos / 1000.0 / ranges);
+		System.out.printf("count by iteration:  %10.1f us/range%n", iterateNanos / 1000.0 / ranges);
+		System.out.printf("removeRange():       %10.1f us/range%n", rangeNanos / 1000.0 / ranges);
+		System.out.printf("remove one by one:   %10.1f us/range  (sink %d)%n", oneByOneNanos / 1000.0 / ranges, sink);
+	}
+
+	/**
+	 * Range scans of width elements from random keys: subList(), 
+	 * iterator(fromKey) and iteratorFromIndex(); then full scans with 
+	 * next(), forEachRemaining() and descendingIterator().
+	 * @param size number of elements in the list
+	 * @param width elements per range scan
+	 */
+	static void scan(int size, int width) {
+		checkIterators();
+		
+		SkipList<Long> skipList = new SkipList<>();
+		Random rand = new Random(1);
+		for (int i = 0; i < size; i++)
+			skipList.add(rand.nextLong() >>> 1);
+
+		int scans = Math.max(1000, 10000000 / width);
+		long[] from = new long[scans];
+		for (int i = 0; i < scans; i++)
+			from[i] = rand.nextLong() >>> 1;
+
+		for (int round = 0; round < 3; round++) {
+			long sink = 0;
+
+			// subList(): to the key a width ahead, found by get()
+			long start = System.nanoTime();
+			for (long lo : from) {
+				int rank = skipList.rankOf(lo);
+				Long hi = (rank + width < skipList.size) ? skipList.get(rank + width) : Long.MAX_VALUE;
+				for (Long x : skipList.subList(lo, hi)) sink += x;
+			}
+			long subListNanos = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			for (long lo : from) {
+				Iterator<Long> it = skipList.iterator(lo);
+				for (int k = 0; k < width && it.hasNext(); k++) sink += it.next();
+			}
+			long fromKeyNanos = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			for (long lo : from) {
+				Iterator<Long> it = skipList.iteratorFromIndex((int) (lo % skipList.size));
+				for (int k = 0; k < width && it.hasNext(); k++) sink += it.next();
+			}
+			long fromIndexNanos = System.nanoTime() - start;
+
+			long nextNanos = scan(skipList.iterator());
+			long[] sum = { 0 };
+			start = System.nanoTime();
+			skipList.iterator().forEachRemaining(x -> sum[0] += x);
+			long forEachNanos = System.nanoTime() - start;
+			long descendingNanos = scan(skipList.descendingIterator());
+
+			if (sink + sum[0] == 42) System.out.println(sink); // keep sink alive
+			if (round < 2) // first rounds are warm-up
+				continue;
+			System.out.printf("range of %d: subList %.2f us, iterator(fromKey) %.2f us, "
+					+ "iteratorFromIndex %.2f us%n", width, subListNanos / 1000.0 / scans,
+					fromKeyNanos / 1000.0 / scans, fromIndexNanos / 1000.0 / scans);
+			System.out.printf("full scan: next() %.2f ns, forEachRemaining %.2f ns, "
+					+ "descending %.2f ns per element%n", (double) nextNanos / size,
+					(double) forEachNanos / size, (double) descendingNanos / size);
+		}
+	}
+
+	/**
+	 * Helper method - scan(): checks the iterators against a TreeSet 
+	 * (from a key, from an index, descending, removing through them), 
+	 * and that they fail fast, leaving the list intact, when the list 
+	 * changed shape under them: startRebuild() raises maxLevel above 
+	 * the levels of their path[].
+	 */
+	static void checkIterators() {
+		SkipList<Long> skipList = new SkipList<>();
+		TreeSet<Long> treeSet = new TreeSet<>();
+		Random rand = new Random(1);
+		for (int i = 0; i < 2000; i++) {
+			long x = rand.nextInt(10000);
+			skipList.add(x);
+			treeSet.add(x);
+		}
+		
+		for (int k = 0; k < 100; k++) {
+			long from = rand.nextInt(10000);
+			int index = rand.nextInt(treeSet.size());
+			checkSame(skipList.iterator(from), treeSet.tailSet(from).iterator(), "iterator(" + from + ")");
+			checkSame(skipList.iteratorFromIndex(index), 
+					new ArrayList<>(treeSet).listIterator(index), "iteratorFromIndex(" + index + ")");
+		}
+		checkSame(skipList.descendingIterator(), treeSet.descendingIterator(), "descendingIterator()");
+		
+		// removing every third element, through both kinds of iterator
+		Iterator<Long> it = skipList.iterator(), expected = treeSet.iterator();
+		for (int k = 0; it.hasNext(); k++) {
+			it.next();
+			expected.next();
+			if (k % 3 == 0) {
+				it.remove();
+				expected.remove();
+			}
+		}
+		it = skipList.descendingIterator();
+		expected = treeSet.descendingIterator();
+		for (int k = 0; it.hasNext(); k++) {
+			it.next();
+			expected.next();
+			if (k % 3 == 0) {
+				it.remove();
+				expected.remove();
+			}
+		}
+		checkSame(skipList.iterator(), treeSet.iterator(), "iterator() after remove()");
+		for (int i = 0; i < treeSet.size(); i += 7)
+			checkSame(skipList.iteratorFromIndex(i), 
+					treeSet.tailSet(skipList.get(i)).iterator(), "get(" + i + ")");
+		
+		// 16 entries of height 1: startRebuild() raises maxLevel to 5
+		SkipList<Long> flat = new SkipList<>();
+		flat.setLevelGenerator(() -> 1);
+		for (long x = 0; x < 16; x++)
+			flat.add(x);
+		
+		Iterator<Long> stale = flat.iterator();
+		stale.next();
+		stale.next();
+		Iterator<Long> descending = flat.descendingIterator();
+		descending.next();
+		flat.startRebuild();
+		
+		checkFailsFast(stale::remove, "remove() after startRebuild()");
+		checkFailsFast(stale::next, "next() after startRebuild()");
+		checkFailsFast(descending::remove, "descending remove() after startRebuild()");
+		
+		// When the list was changed by the failed remove()
+		flat.rebuildStep(Integer.MAX_VALUE);
+		if (flat.size() != 16 || !flat.get(15).equals(15L) || !flat.get(1).equals(1L))
+			throw new IllegalStateException("list changed by a failed remove(): size " 
+					+ flat.size() + ", get(15) " + flat.get(15));
+		
+		System.out.println("iterator checks passed");
+	}
+	
+	/**
+	 * Helper method - checkIterators(): both iterators give the same 
+	 * elements.
+	 */
+	private static void checkSame(Iterator<Long> it, Iterator<Long> expected, 
+			String name) {
+		while (expected.hasNext()) {
+			// When it ends early, or gives another element
+			if (!it.hasNext() || !it.next().equals(expected.next()))
+				throw new IllegalStateException(name + " differs from TreeSet");
+		}
+		
+		// When it goes on
+		if (it.hasNext())
+			throw new IllegalStateException(name + " has more elements than TreeSet");
+	}
+	
+	/**
+	 * Helper method - checkIterators(): op throws 
+	 * ConcurrentModificationException.
+	 */
+	private static void checkFailsFast(Runnable op, String name) {
+		try {
+			op.run();
+		} catch (ConcurrentModificationException e) {
+			return; // expected
+		}
+		throw new IllegalStateException(name + " didn't throw ConcurrentModificationException");
+	}
+	
+	/**
+	 * Sum of all the keys: by the iterator, by stream() and by 
+	 * parallelStream() (common ForkJoinPool, one thread per core).
+	 * The keys are added in random order, so that neighbours in the 
+	 * list are not neighbours in memory.
+	 * @param size number of elements in the list
+	 */
+	static void stream(int size) {
+		SkipList<Long> skipList = new SkipList<>();
+		Random rand = new Random(1);
+		for (int i = 0; i < size; i++)
+			skipList.add(rand.nextLong() >>> 8);
+
+		System.out.printf("%d keys, %d threads in the common pool%n", skipList.size,
+				java.util.concurrent.ForkJoinPool.commonPool().getParallelism());
+
+		for (int round = 0; round < 5; round++) {
+			long start = System.nanoTime(), sum = 0;
+			Iterator<Long> it = skipList.iterator();
+			while (it.hasNext()) sum += it.next();
+			long iteratorNanos = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			long streamSum = skipList.stream().mapToLong(Long::longValue).sum();
+			long streamNanos = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			long parallelSum = skipList.parallelStream().mapToLong(Long::longValue).sum();
+			long parallelNanos = System.nanoTime() - start;
+
+			// When the sums don't agree
+			if (sum != streamSum || sum != parallelSum)
+				throw new IllegalStateException("sums differ");
+
+			if (round < 2) // first rounds are warm-up
+				continue;
+			System.out.printf("iterator %6d ms, stream() %6d ms, parallelStream() "
+					+ "%6d ms (%.1fx)%n", iteratorNanos / 1000000, streamNanos / 1000000,
+					parallelNanos / 1000000, (double) iteratorNanos / parallelNanos);
+		}
+	}
+
+	/**
+	 * Checks indexOf(), rankOf() and percentile() against a TreeSet 
+	 * (headSet(x).size()): present and absent keys, keys beyond both 
+	 * ends, the empty list, percentile(0), percentile(1), and quantiles 
+	 * out of [0, 1] or NaN. Then times lookups of each against 
+	 * headSet(x).size(), which is O(n) in a TreeSet.
+	 * @param size number of elements in the list
+	 * @param lookups number of timed lookups
+	 */
+	static void rank(int size, int lookups) {
+		SkipList<Long> skipList = new SkipList<>();
+		TreeSet<Long> treeSet = new TreeSet<>();
+		
+		// When the list is empty
+		checkRank(skipList, treeSet, 0L);
+		checkPercentiles(skipList, treeSet);
+		if (size < 1)
+			return;
+		
+		// odd keys only: even ones are absent, between two present ones
+		Random rand = new Random(1);
+		for (int i = 0; i < size; i++) {
+			long x = 2 * rand.nextInt(size * 4) + 1;
+			skipList.add(x);
+			treeSet.add(x);
+		}
+		
+		List<Long> sorted = new ArrayList<>(treeSet);
+		checkRank(skipList, treeSet, Long.MIN_VALUE);
+		checkRank(skipList, treeSet, Long.MAX_VALUE);
+		checkRank(skipList, treeSet, sorted.get(0));
+		checkRank(skipList, treeSet, sorted.get(sorted.size() - 1));
+		for (int i = 0; i < lookups; i++) {
+			long x = sorted.get(rand.nextInt(sorted.size()));
+			checkRank(skipList, treeSet, x); // present
+			checkRank(skipList, treeSet, x + 1); // absent
+		}
+		checkPercentiles(skipList, treeSet);
+		
+		// every quantile k / n, and just above it
+		int n = sorted.size();
+		for (int k = 0; k < n; k += Math.max(1, n / lookups)) {
+			checkPercentile(skipList, sorted, (double) k / n);
+			checkPercentile(skipList, sorted, Math.nextUp((double) k / n));
+		}
+		System.out.println("rank checks passed: " + n + " elements");
+		
+		Long[] keys = new Long[lookups];
+		for (int i = 0; i < lookups; i++)
+			keys[i] = sorted.get(rand.nextInt(n)) + rand.nextInt(2);
+		
+		for (int round = 0; round < 3; round++) {
+			long start = System.nanoTime(), sink = 0;
+			for (Long x : keys)
+				sink += skipList.rankOf(x);
+			long rankNanos = System.nanoTime() - start;
+			
+			start = System.nanoTime();
+			for (Long x : keys)
+				sink += skipList.indexOf(x);
+			long indexNanos = System.nanoTime() - start;
+			
+			start = System.nanoTime();
+			for (int i = 0; i < lookups; i++)
+				sink += skipList.percentile((double) i / lookups);
+			long percentileNanos = System.nanoTime() - start;
+			
+			start = System.nanoTime();
+			for (Long x : keys)
+				sink -= treeSet.headSet(x).size();
+			long treeSetNanos = System.nanoTime() - start;
+			
+			if (round < 1) // first round is warm-up
+				continue;
+			System.out.printf("rankOf() %8.1f ns, indexOf() %8.1f ns, percentile() %8.1f ns, "
+					+ "TreeSet headSet().size() %10.1f ns  (sink %d)%n", 
+					(double) rankNanos / lookups, (double) indexNanos / lookups, 
+					(double) percentileNanos / lookups, (double) treeSetNanos / lookups, sink);
+		}
+	}
+	
+	/**
+	 * Helper method - rank(): rankOf(x) and indexOf(x) against the 
+	 * TreeSet (an absent x has the rank of its ceiling, and index -1).
+	 */
+	private static void checkRank(SkipList<Long> skipList, 
+			TreeSet<Long> treeSet, Long x) {
+		int expected = treeSet.headSet(x).size();
+		int index = treeSet.contains(x) ? expected : -1;
+		
+		// When the ranks differ
+		if (skipList.rankOf(x) != expected || skipList.indexOf(x) != index)
+			throw new IllegalStateException("rank of " + x + ": rankOf() " 
+					+ skipList.rankOf(x) + ", indexOf() " + skipList.indexOf(x) 
+					+ ", expected " + expected + ", " + index);
+	}
+	
+	/**
+	 * Helper method - rank(): percentile(0) and (1), the out of range 
+	 * quantiles, and the empty list.
+	 */
+	private static void checkPercentiles(SkipList<Long> skipList, 
+			TreeSet<Long> treeSet) {
+		double[] invalid = { -0.001, 1.001, -1, 2, Double.NaN, 
+				Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY };
+		for (double q : invalid) {
+			try {
+				skipList.percentile(q);
+				throw new IllegalStateException("percentile(" + q + ") didn't throw");
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+		
+		// When the list is empty
+		if (treeSet.isEmpty()) {
+			try {
+				skipList.percentile(0.5);
+				throw new IllegalStateException("percentile() of an empty list didn't throw");
+			} catch (NoSuchElementException e) {
+				// expected
+			}
+			return;
+		}
+		
+		// When the ends are not first() and last()
+		if (!skipList.percentile(0).equals(treeSet.first()) 
+				|| !skipList.percentile(1).equals(treeSet.last()))
+			throw new IllegalStateException("percentile(0), percentile(1): " 
+					+ skipList.percentile(0) + ", " + skipList.percentile(1));
+	}
+	
+	/**
+	 * Helper method - rank(): percentile(q) against nearest rank on the 
+	 * sorted elements: the smallest one with at least q * n elements 
+	 * less than or equal to it.
+	 */
+	private static void checkPercentile(SkipList<Long> skipList, 
+			List<Long> sorted, double q) {
+		int n = sorted.size();
+		int k = Math.max(1, (int) Math.ceil(q * n)); // fewest elements covering q
+		
+		// When q * n was rounded up past an integer (e.g. 0.7 * 10)
+		if (k > 1 && (double) (k - 1) / n >= q)
+			k--;
+		
+		// When it is not the k-th element
+		if (!skipList.percentile(q).equals(sorted.get(k - 1)))
+			throw new IllegalStateException("percentile(" + q + "): " 
+					+ skipList.percentile(q) + ", expected " + sorted.get(k - 1));
+	}
+	
+	/**
+	 * Latency of add()/remove() while the list is being rebuilt, 
+	 * with rebuild() at once vs an incremental rebuild advancing 
+	 * budget entries per change. A rebuild starts every size/budget 
+	 * changes, so that the incremental one just finishes in between. 
+	 * Each mode runs twice: the first one warms up.
+	 * @param size number of elements in the list
+	 * @param budget entries rebuilt per change (incremental)
+	 */
+	static void pause(int size, int budget) {
+		int every = size / budget;
+		int changes = Math.max(4 * every, 1000000);
+
+		for (int round = 0; round < 4; round++) {
+			boolean incremental = (round % 2 == 1);
+			System.gc();
+
+			Random rand = new Random(1);
+			SkipList<Long> skipList = new SkipList<>();
+			for (int i = 0; i < size; i++)
+				skipList.add((long) rand.nextInt(2 * size));
+
+			if (incremental)
+				skipList.setRebuildBudget(budget);
+
+			long[] nanos = new long[changes];
+			for (int i = 0; i < changes; i++) {
+				Long key = (long) rand.nextInt(2 * size);
+				long start = System.nanoTime();
+
+				if (i % every == 0) {
+					if (incremental)
+						skipList.startRebuild();
+					else
+						skipList.rebuild();
+				}
+				if (rand.nextBoolean())
+					skipList.add(key);
+				else
+					skipList.remove(key);
+
+				nanos[i] = System.nanoTime() - start;
+			}
+
+			// When warming up
+			if (round < 2)
+				continue;
+
+			java.util.Arrays.sort(nanos);
+			System.out.printf("%-12s p50 %8.2f us  p99 %8.2f us  p99.9 %8.2f us  max %10.2f us%n",
+					incremental ? "incremental" : "rebuild()",
+					nanos[changes / 2] / 1000.0, nanos[changes * 99 / 100] / 1000.0,
+					nanos[(int) (changes * 999L / 1000)] / 1000.0, nanos[changes - 1] / 1000.0);
+		}
+	}
+
+	/**
+	 * Time of rebuild() vs rebuildParallel(), and of addSorted() vs 
+	 * fromSorted() building a list of size keys. The parallel ones 
+	 * use the ForkJoin common pool (its parallelism is printed).
+	 * @param size number of elements
+	 */
+	static void parallel(int size) {
+		Long[] keys = new Long[size];
+		for (int i = 0; i < size; i++)
+			keys[i] = (long) i;
+
+		System.out.printf("parallelism: %d%n",
+				java.util.concurrent.ForkJoinPool.getCommonPoolParallelism());
+
+		// each timed after a System.gc(), as they allocate much
+		for (int round = 0; round < 3; round++) {
+			System.gc();
+			long start = System.nanoTime();
+			SkipList<Long> sequential = new SkipList<>();
+			sequential.addSorted(java.util.Arrays.asList(keys).iterator());
+			long addSortedNanos = System.nanoTime() - start;
+			sequential = null;
+
+			System.gc();
+			start = System.nanoTime();
+			SkipList<Long> skipList = SkipList.fromSorted(keys);
+			long fromSortedNanos = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			skipList.rebuild();
+			long rebuildNanos = System.nanoTime() - start;
+
+			System.gc();
+			start = System.nanoTime();
+			skipList.rebuildParallel();
+			long parallelNanos = System.nanoTime() - start;
+
+			System.out.printf("addSorted %8.1f ms  fromSorted %8.1f ms  "
+					+ "rebuild() %8.1f ms  rebuildParallel() %8.1f ms%n",
+					addSortedNanos / 1e6, fromSortedNanos / 1e6,
+					rebuildNanos / 1e6, parallelNanos / 1e6);
+		}
+	}
+
+	/**
+	 * add() and remove() on a small list (and removal through the 
+	 * iterator), where the per-mutation bookkeeping outweighs the 
+	 * search. Keys are in [0, 2 * size), so the list stays around size.
+	 * @param size number of elements in the list
+	 * @param ops number of operations per round
+	 */
+	static void churn(int size, int ops) {
+		Long[] keys = new Long[2 * size];
+		for (int i = 0; i < keys.length; i++)
+			keys[i] = (long) i;
+
+		int[] picks = new int[1 << 16];
+		Random rand = new Random(1);
+		for (int i = 0; i < picks.length; i++)
+			picks[i] = rand.nextInt(keys.length);
+
+		for (int round = 0; round < 5; round++) {
+			SkipList<Long> skipList = new SkipList<>();
+			for (int i = 0; i < keys.length; i += 2)
+				skipList.add(keys[i]);
+
+			// add() when absent, else remove()
+			long start = System.nanoTime(), sink = 0;
+			for (int i = 0; i < ops; i++) {
+				Long key = keys[picks[i & (picks.length - 1)]];
+				if (skipList.add(key) || skipList.remove(key) != null) sink++;
+			}
+			long mutateNanos = System.nanoTime() - start;
+
+			// remove every other element through the iterator, add back
+			int passes = Math.max(ops / keys.length, 1);
+			start = System.nanoTime();
+			for (int pass = 0; pass < passes; pass++) {
+				Iterator<Long> it = skipList.iterator();
+				while (it.hasNext()) {
+					it.next();
+					if (it.hasNext()) {
+						sink += it.next();
+						it.remove();
+					}
+				}
+				for (Long key : keys)
+					skipList.add(key);
+			}
+			long iteratorNanos = System.nanoTime() - start;
+
+			if (sink == 42) System.out.println(sink); // keep sink alive
+			if (round > 0) // first round is warm-up
+				System.out.printf("size %d: add/remove %6.1f ns/op  "
+						+ "iterator remove + add %6.1f ns/element%n", size,
+						(double) mutateNanos / ops,
+						(double) iteratorNanos / ((long) passes * keys.length));
+		}
+	}
+
+	/**
+	 * CountedLong: a long key which counts its compareTo() calls.
+	 */
+	static final class CountedLong implements Comparable<CountedLong> {
+		static long compares = 0;
+		final long value;
+
+		CountedLong(long value) {
+			this.value = value;
+		}
+
+		public int compareTo(CountedLong other) {
+			compares++;
+			return Long.compare(value, other.value);
+		}
+	}
+
+	/**
+	 * Runs the operations of a test file (like SkipListDriver), 
+	 * and reports the compareTo() calls per operation, by operation.
+	 * @param file a text or binary op-log
+	 */
+	static void comparisons(String file) {
+		OpLog log;
+		try {
+			log = OpLog.read(Paths.get(file));
+		}
+		catch (IOException e) {
+			System.out.println(file + ": " + e.getMessage());
+			return;
+		}
+
+		// keys boxed up-front, so only the Skip list compares them
+		CountedLong[] keys = new CountedLong[log.size()];
+		for (int i = 0; i < log.size(); i++)
+			keys[i] = new CountedLong(log.operand(i));
+
+		String[] names = { "", "Add", "Remove", "Contains", "Floor", 
+				"Ceiling", "Get", "First", "Last" };
+		long[] count = new long[names.length];
+		long[] compares = new long[names.length];
+
+		SkipList<CountedLong> skipList = new SkipList<>();
+		CountedLong.compares = 0;
+		long sink = 0;
+
+		for (int i = 0; i < log.size(); i++) {
+			byte op = log.op(i);
+			long before = CountedLong.compares;
+			Object returnValue = null;
+
+			switch (op) {
+				case OpLog.ADD: returnValue = skipList.add(keys[i]); break;
+				case OpLog.REMOVE: returnValue = skipList.remove(keys[i]); break;
+				case OpLog.CONTAINS: returnValue = skipList.contains(keys[i]); break;
+				case OpLog.FLOOR: returnValue = skipList.floor(keys[i]); break;
+				case OpLog.CEILING: returnValue = skipList.ceiling(keys[i]); break;
+				case OpLog.GET: returnValue = skipList.get((int) log.operand(i)); break;
+				case OpLog.FIRST: returnValue = skipList.first(); break;
+				case OpLog.LAST: returnValue = skipList.last(); break;
+			}
+			if (returnValue != null) sink++;
+			count[op]++;
+			compares[op] += CountedLong.compares - before;
+		}
+
+		System.out.printf("%s: %d operations, %d comparisons (%.2f/op), "
+				+ "final size %d%n", file, log.size(), CountedLong.compares,
+				(double) CountedLong.compares / Math.max(log.size(), 1),
+				skipList.size() + (sink & 0));
+		for (int op = 1; op < names.length; op++) {
+			if (count[op] > 0)
+				System.out.printf("  %-8s %9d ops %8.2f comparisons/op%n",
+						names[op], count[op], (double) compares[op] / count[op]);
+		}
+	}
+
+	/**
+	 * SkipListMap against TreeMap: get() and floorEntry(), and the 
+	 * rank operations, getByIndex() and indexOfKey(), which TreeMap 
+	 * can only do by walking the keys (headMap(key).size()).
+	 * @param size number of mappings
+	 * @param lookups number of rank lookups (the TreeMap ones are O(n))
+	 */
+	static void map(int size, int lookups) {
+		Long[] keys = new Long[size];
+		for (int i = 0; i < size; i++)
+			keys[i] = 2L * i;
+
+		Random rand = new Random(1);
+		int[] picks = new int[size];
+		for (int i = 0; i < size; i++)
+			picks[i] = rand.nextInt(size);
+
+		SkipListMap<Long, Long> skipListMap = new SkipListMap<>();
+		java.util.TreeMap<Long, Long> treeMap = new java.util.TreeMap<>();
+		for (Long key : keys) {
+			skipListMap.put(key, key);
+			treeMap.put(key, key);
+		}
+
+		System.out.println("operation          SkipListMap     TreeMap  (ns/op)");
+
+		for (int round = 0; round < 3; round++) {
+			boolean print = (round == 2); // first rounds are warm-up
+			double[] getNanos = new double[2];
+			double[] floorNanos = new double[2];
+			double[] indexNanos = new double[2];
+			double[] rankNanos = new double[2];
+			long sink = 0;
+
+			for (int mode = 0; mode < 2; mode++) {
+				java.util.NavigableMap<Long, Long> map = 
+						(mode == 0) ? skipListMap : treeMap;
+
+				long start = System.nanoTime();
+				for (int pick : picks)
+					sink += map.get(keys[pick]);
+				getNanos[mode] = (double) (System.nanoTime() - start) / size;
+
+				start = System.nanoTime();
+				for (int pick : picks)
+					sink += map.floorEntry(keys[pick] + 1).getValue();
+				floorNanos[mode] = (double) (System.nanoTime() - start) / size;
+
+				// index -> key, and key -> index
+				start = System.nanoTime();
+				for (int i = 0; i < lookups; i++) {
+					if (mode == 0)
+						sink += skipListMap.getByIndex(picks[i]).getKey();
+					else {
+						Iterator<Long> it = treeMap.keySet().iterator();
+						for (int j = 0; j < picks[i]; j++) it.next();
+						sink += it.next();
+					}
+				}
+				indexNanos[mode] = (double) (System.nanoTime() - start) / lookups;
+
+				start = System.nanoTime();
+				for (int i = 0; i < lookups; i++) {
+					if (mode == 0)
+						sink += skipListMap.indexOfKey(keys[picks[i]]);
+					else
+						sink += treeMap.headMap(keys[picks[i]]).size();
+				}
+				rankNanos[mode] = (double) (System.nanoTime() - start) / lookups;
+			}
+
+			if (sink == 42) System.out.println(sink); // keep sink alive
+			if (print) {
+				System.out.printf("get           %16.1f %11.1f%n", getNanos[0], getNanos[1]);
+				System.out.printf("floorEntry    %16.1f %11.1f%n", floorNanos[0], floorNanos[1]);
+				System.out.printf("getByIndex    %16.1f %11.1f%n", indexNanos[0], indexNanos[1]);
+				System.out.printf("indexOfKey    %16.1f %11.1f%n", rankNanos[0], rankNanos[1]);
+			}
+		}
+	}
+
+	/**
+	 * Level generators: ns per nextLevel() of each kind, then for p = 
+	 * 1/2, 1/4, 1/8 and 0.3 (seeded, so runs are reproducible): heap 
+	 * bytes per element, levels, comparisons and ns per contains().
+	 * @param size number of elements in the list
+	 */
+	static void levels(int size) {
+		String[] names = { "legacy", "xorShift", "splittable", "perThread" };
+		LevelGenerator[] generators = { LevelGenerator.legacy(),
+				LevelGenerator.xorShift(1, 0.5),
+				LevelGenerator.splittable(1, 0.5),
+				LevelGenerator.perThread(0.5) };
+
+		for (int round = 0; round < 3; round++) {
+			for (int g = 0; g < generators.length; g++) {
+				long start = System.nanoTime(), sink = 0;
+				for (int i = 0; i < 10000000; i++)
+					sink += generators[g].nextLevel();
+				long elapsed = System.nanoTime() - start;
+
+				if (round == 2) // first rounds are warm-up
+					System.out.printf("%-10s %6.2f ns/level (mean level %.3f)%n",
+							names[g], elapsed / 1e7, sink / 1e7);
+			}
+		}
+
+		// keys boxed up-front, so the heap used is the list's own
+		Long[] keys = new Long[size];
+		Random rand = new Random(1);
+		for (int i = 0; i < size; i++)
+			keys[i] = rand.nextLong() >>> 1;
+
+		System.out.println("p      bytes/element  maxLevel  comparisons/search  ns/contains");
+
+		for (double p : new double[] { 0.5, 0.25, 0.125, 0.3 }) {
+			long before = usedMemory();
+			SkipList<Long> skipList = new SkipList<>();
+			skipList.setLevelGenerator(LevelGenerator.xorShift(1, p));
+			for (Long key : keys) skipList.add(key);
+			long bytes = usedMemory() - before;
+
+			// warm-up, then timed, then counted
+			long sink = 0;
+			for (Long key : keys)
+				if (skipList.contains(key)) sink++;
+			long start = System.nanoTime();
+			for (Long key : keys)
+				if (skipList.contains(key)) sink++;
+			long elapsed = System.nanoTime() - start;
+
+			skipList.setMetrics(true);
+			for (Long key : keys)
+				if (skipList.contains(key)) sink++;
+			SkipListMetrics.Snapshot metrics = skipList.metrics();
+
+			if (sink == 42) System.out.println(sink); // keep sink alive
+			System.out.printf("%-6.3f %13.1f %9d %19.2f %12.1f%n", p,
+					(double) bytes / size, skipList.maxLevel,
+					metrics.meanComparisons(), (double) elapsed / size);
+			skipList = null;
+		}
+	}
+
+	/**
+	 * save() and load() (with and without heights) against building
+	 * the list by add(), and lookups on a mapped snapshot against
+	 * contains() on the loaded list.
+	 * @param size number of elements in the list
+	 */
+	static void snapshot(int size) {
+		Long[] keys = new Long[size];
+		Random rand = new Random(1);
+		for (int i = 0; i < size; i++)
+			keys[i] = rand.nextLong() >>> 1;
+
+		long start = System.nanoTime();
+		SkipList<Long> skipList = new SkipList<>();
+		for (Long key : keys) skipList.add(key);
+		long addNanos = System.nanoTime() - start;
+		System.out.printf("add() loop:        %6d ms%n", addNanos / 1000000);
+
+		try {
+			java.nio.file.Path file = java.nio.file.Files.createTempFile("lp2", ".snap");
+			try {
+				for (boolean withHeights : new boolean[] { false, true }) {
+					start = System.nanoTime();
+					skipList.save(file, SkipListSnapshot.Codec.LONG, withHeights);
+					long saveNanos = System.nanoTime() - start;
+
+					start = System.nanoTime();
+					SkipList<Long> loaded = SkipList.load(file, SkipListSnapshot.Codec.LONG);
+					long loadNanos = System.nanoTime() - start;
+
+					System.out.printf("%-14s save %6d ms, load %6d ms (%.1fx faster "
+							+ "than add), %d bytes, maxLevel %d%n",
+							withHeights ? "with heights:" : "perfect:",
+							saveNanos / 1000000, loadNanos / 1000000,
+							(double) addNanos / loadNanos,
+							java.nio.file.Files.size(file), loaded.maxLevel);
+					loaded = null;
+				}
+
+				// mapped lookups: nothing loaded, the page cache is warm
+				SkipListSnapshot.MappedLongs mapped = SkipListSnapshot.map(file);
+				for (int round = 0; round < 3; round++) {
+					long sink = 0;
+					start = System.nanoTime();
+					for (Long key : keys)
+						if (mapped.contains(key)) sink++;
+					long mappedNanos = System.nanoTime() - start;
+
+					start = System.nanoTime();
+					for (Long key : keys)
+						if (skipList.contains(key)) sink++;
+					long listNanos = System.nanoTime() - start;
+
+					if (sink == 42) System.out.println(sink); // keep sink alive
+					if (round == 2) // first rounds are warm-up
+						System.out.printf("contains(): mapped %.1f ns, "
+								+ "Skip list %.1f ns%n", (double) mappedNanos / size,
+								(double) listNanos / size);
+				}
+			}
+			finally {
+				java.nio.file.Files.deleteIfExists(file);
+			}
+		}
+		catch (IOException e) {
+			System.out.println("snapshot: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Durable adds and removes per second through a LockedSkipList with
+	 * a WriteAheadLog (group commit), with 1, 2, 4, ... up to maxThreads
+	 * threads; then appends of one thread that syncs once at the end,
+	 * and the time of recover() on the resulting log.
+	 * @param maxThreads highest number of threads
+	 * @param millis duration of each run
+	 */
+	static void wal(int maxThreads, int millis) {
+		int size = 1000000, groupSize = 1024, groupMicros = 200;
+
+		try {
+			java.nio.file.Path dir = java.nio.file.Files.createTempDirectory("lp2-wal");
+			java.nio.file.Path file = dir.resolve("wal");
+			try {
+				System.out.println("threads  logged/sec (durable)  ops/sec  fsyncs");
+
+				for (int threads = 1; threads <= maxThreads; threads *= 2) {
+					java.nio.file.Files.deleteIfExists(file);
+					WriteAheadLog<Long> log = WriteAheadLog.open(file,
+							SkipListSnapshot.Codec.LONG, groupSize, groupMicros);
+					LockedSkipList<Long> skipList = new LockedSkipList<>(log.recover(null));
+					skipList.setWriteAheadLog(log);
+
+					// half the ops change the list (and are logged)
+					long ops = runThreads(threads, millis, size, (key, op) -> {
+						if (op < 50) return skipList.add(key);
+						return skipList.remove(key) != null;
+					});
+					long logged = log.durable();
+					long batches = (java.nio.file.Files.size(file) - WriteAheadLog.HEADER
+							- 9 * logged) / WriteAheadLog.BATCH_HEADER;
+					log.close();
+
+					System.out.printf("%7d  %20d  %7d  %6d%n", threads,
+							logged * 1000 / millis, ops * 1000 / millis, batches);
+				}
+
+				// appends without waiting: what the log can take
+				java.nio.file.Files.deleteIfExists(file);
+				WriteAheadLog<Long> log = WriteAheadLog.open(file,
+						SkipListSnapshot.Codec.LONG, groupSize, groupMicros);
+				Long[] keys = new Long[size];
+				for (int i = 0; i < size; i++)
+					keys[i] = (long) i;
+
+				long start = System.nanoTime();
+				for (Long key : keys)
+					log.add(key);
+				log.sync();
+				long elapsed = System.nanoTime() - start;
+				log.close();
+				System.out.printf("one thread, sync at the end: %d records/sec%n",
+						size * 1000000000L / elapsed);
+
+				start = System.nanoTime();
+				log = WriteAheadLog.open(file, SkipListSnapshot.Codec.LONG,
+						groupSize, groupMicros);
+				SkipList<Long> recovered = log.recover(null);
+				elapsed = System.nanoTime() - start;
+				log.close();
+				System.out.printf("recover(): %d records in %d ms%n",
+						recovered.size(), elapsed / 1000000);
+			}
+			finally {
+				java.nio.file.Files.deleteIfExists(file);
+				java.nio.file.Files.deleteIfExists(dir);
+			}
+		}
+		catch (IOException e) {
+			System.out.println("wal: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Throughput of ShardedSkipList against LockedSkipList (one lock)
+	 * with 1, 2, 4, ... up to maxThreads threads, each doing 80%
+	 * contains(), 10% add(), 10% remove() on random keys; then get()
+	 * and rankOf() alone.
+	 * @param maxThreads highest number of threads
+	 * @param size number of elements the lists start with
+	 * @param millis duration of each run
+	 */
+	static void sharded(int maxThreads, int size, int millis) {
+		ShardedSkipList<Long> sharded = new ShardedSkipList<>();
+		LockedSkipList<Long> locked = new LockedSkipList<>();
+
+		Random rand = new Random(1);
+		for (int i = 0; i < size; i++) {
+			long key = rand.nextInt(2 * size);
+			sharded.add(key);
+			locked.add(key);
+		}
+		System.out.printf("%d elements in %d shards%n", sharded.size(), sharded.shards());
+		System.out.println("threads  ShardedSkipList  LockedSkipList  ranked  (ops/sec)");
+
+		for (int threads = 1; threads <= maxThreads; threads *= 2) {
+			long shardedOps = runThreads(threads, millis, size, (key, op) -> {
+				if (op < 80) return sharded.contains(key);
+				if (op < 90) return sharded.add(key);
+				return sharded.remove(key) != null;
+			});
+			long lockedOps = runThreads(threads, millis, size, (key, op) -> {
+				if (op < 80) return locked.contains(key);
+				if (op < 90) return locked.add(key);
+				return locked.remove(key) != null;
+			});
+			// get() and rankOf() across shards, through the Fenwick tree
+			long rankedOps = runThreads(threads, millis, size, (key, op) -> {
+				if (op < 50) return sharded.get((int) (key % sharded.size())) != null;
+				return sharded.rankOf(key) > 0;
+			});
+
+			System.out.printf("%7d  %15d  %14d  %6d%n", threads,
+					shardedOps * 1000 / millis, lockedOps * 1000 / millis,
+					rankedOps * 1000 / millis);
+
+			// also run maxThreads, when it is not a power of 2
+			if (threads < maxThreads && 2 * threads > maxThreads)
+				threads = maxThreads / 2;
+		}
+	}
+
+	// one operation of a benchmark: op in [0, 100) picks the kind
+	interface Operation {
+		boolean run(Long key, int op);
+	}
+
+	/**
+	 * Runs operation from the given number of threads for millis
+	 * milliseconds, on keys in [0, 2 * size).
+	 * @return total number of operations completed
+	 */
+	static long runThreads(int threads, int millis, int size, Operation operation) {
+		java.util.concurrent.atomic.AtomicLong total =
+				new java.util.concurrent.atomic.AtomicLong();
+		java.util.concurrent.atomic.AtomicBoolean stop =
+				new java.util.concurrent.atomic.AtomicBoolean();
+		Thread[] workers = new Thread[threads];
+
+		for (int t = 0; t < threads; t++) {
+			final long seed = t;
+			workers[t] = new Thread(() -> {
+				java.util.SplittableRandom rand = new java.util.SplittableRandom(seed);
+				long ops = 0, sink = 0;
+
+				while (!stop.get()) {
+					// checking stop every 256 operations
+					for (int i = 0; i < 256; i++) {
+						Long key = (long) rand.nextInt(2 * size);
+						if (operation.run(key, rand.nextInt(100))) sink++;
+					}
+					ops += 256;
+				}
+				total.addAndGet(ops + (sink & 0));
+			});
+		}
+
+		for (Thread worker : workers) worker.start();
+		try {
+			Thread.sleep(millis);
+			stop.set(true);
+			for (Thread worker : workers) worker.join();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return total.get();
+	}
+
+	/**
+	 * Returns the time of one full scan through the iterator.
+	 */
+	private static long scan(Iterator<Long> it) {
+		long start = System.nanoTime(), sink = 0;
+		while (it.hasNext()) sink += it.next();
+		long elapsed = System.nanoTime() - start;
+
+		if (sink == 42) System.out.println(sink); // keep sink alive
+		return elapsed;
+	}
+
+	private static long scan(PrimitiveIterator.OfLong it) {
+		long start = System.nanoTime(), sink = 0;
+		while (it.hasNext()) sink += it.nextLong();
+		long elapsed = System.nanoTime() - start;
+
+		if (sink == 42) System.out.println(sink); // keep sink alive
+		return elapsed;
+	}
+
+	/**
+	 * Heap in use, after asking for a few garbage collections.
+	 */
+	static long usedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) System.gc();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	private static long lookupAll(SkipList<Long> skipList, Long[] keys) {
+		return lookup(skipList, keys, "contains")
+				+ lookup(skipList, keys, "floor")
+				+ lookup(skipList, keys, "ceiling");
+	}
+
+	private static long lookup(SkipList<Long> skipList, Long[] keys, String op) {
+		long sink = 0;
+		Long returnValue = null;
+
+		for (Long key : keys) {
+			switch (op) {
+				case "contains":
+					if (skipList.contains(key)) sink++;
+					break;
+				case "floor":
+					returnValue = skipList.floor(key);
+					if (returnValue != null) sink += returnValue;
+					break;
+				case "ceiling":
+					returnValue = skipList.ceiling(key);
+					if (returnValue != null) sink += returnValue;
+					break;
+			}
+		}
+		return sink;
+	}
+
+	/**
+	 * Bytes allocated so far by the current thread
+	 * (HotSpot specific, through com.sun.management).
+	 * @return allocated bytes, or 0 when unsupported
+	 */
+	static long allocatedBytes() {
+		java.lang.management.ThreadMXBean bean =
+				ManagementFactory.getThreadMXBean();
+
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) bean)
+					.getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return 0;
+	}
+
+	/**
+	 * Returns args[index] as an int, or defaultValue when absent.
+	 */
+	static int intArg(String[] args, int index, int defaultValue) {
+		if (args.length > index)
+			return Integer.parseInt(args[index]);
+		return defaultValue;
+	}
+}
@@ -1,48 +1,341 @@
 package rsn170330.lp2;
 
 import rsn170330.lp2.Timer;
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.util.Iterator;
-import java.util.Scanner;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 //Driver program for skip list implementation.
+// With several files, or -shards=K, each shard (a file, or a key range 
+// of the one file) runs on its own list, on a pool of -threads=N 
+// threads; the results are added up mod 999983, like the operations of 
+// one file. A file with Floor, Ceiling, Get, First or Last is not split 
+// (they depend on the keys of the other ranges): it runs as one shard.
 
 public class SkipListDriver {
-	public static void main(String[] args) throws FileNotFoundException {
-		Scanner sc;
+	public static void main(String[] args) throws IOException {
+		List<String> fileNames = new ArrayList<>();
+		boolean useLong = false; // -long: run on LongSkipList
+		boolean metrics = false; // -metrics: print SkipList metrics
+		long seed = System.nanoTime(); // -seed=N: reproducible levels
+		double p = 0.5; // -p=X: probability of going one level up
+		Path load = null; // -load=F: start from the snapshot F
+		Path save = null; // -save=F: save a snapshot to F at the end
+		int shards = 1; // -shards=K: split the one file in K key ranges
+		int threads = Runtime.getRuntime().availableProcessors(); // -threads=N
 		
-		if (args.length > 0) {
-			File file = new File(args[0]);
-			sc = new Scanner(file);
+		for (String arg : args) {
+			if (arg.equals("-long"))
+				useLong = true;
+			else if (arg.equals("-metrics"))
+				metrics = true;
+			else if (arg.startsWith("-seed="))
+				seed = Long.parseLong(arg.substring(6));
+			else if (arg.startsWith("-p="))
+				p = Double.parseDouble(arg.substring(3));
+			else if (arg.startsWith("-load="))
+				load = Paths.get(arg.substring(6));
+			else if (arg.startsWith("-save="))
+				save = Paths.get(arg.substring(6));
+			else if (arg.startsWith("-shards="))
+				shards = Integer.parseInt(arg.substring(8));
+			else if (arg.startsWith("-threads="))
+				threads = Integer.parseInt(arg.substring(9));
+			else
+				fileNames.add(arg);
+		}
+		
+		// When there is more than one shard
+		if (fileNames.size() > 1 || shards > 1) {
+			runParallel(fileNames, shards, threads, useLong, seed, p);
+			return;
+		}
+		String fileName = fileNames.isEmpty() ? null : fileNames.get(0);
+		LevelGenerator levels = LevelGenerator.xorShift(seed, p);
+		
+		// Parse the operations (text or binary op-log), timed apart
+		Timer parseTimer = new Timer();
+		OpLog log;
+		
+		if (fileName != null) {
+			log = OpLog.read(Paths.get(fileName));
 		} 
 		else {
-			sc = new Scanner(System.in);
+			log = OpLog.read(System.in);
 		}
+		parseTimer.end();
+		
+		// The list to run on (snapshots are of SkipList<Long> only)
+		Timer loadTimer = new Timer();
+		SkipList<Long> skipList = (load != null && !useLong) 
+				? SkipList.load(load, SkipListSnapshot.Codec.LONG) 
+				: new SkipList<>();
+		loadTimer.end();
+		skipList.setMetrics(metrics);
+		skipList.setLevelGenerator(levels);
+		
+		// Initialize the timer
+		Timer timer = new Timer();
 		
-		String operation = "";
+		long result = useLong ? runLong(log, levels) : run(log, skipList);
+		
+		// End Time
+		timer.end();
+
+		System.out.println(result);
+		System.out.println("Parse: " + parseTimer.elapsedTime + " msec.");
+		if (load != null && !useLong)
+			System.out.println("Load: " + loadTimer.elapsedTime + " msec.");
+		System.out.println(timer);
+		
+		if (metrics && !useLong)
+			System.out.print(skipList.metrics());
+		
+		// When the list is to be kept for the next run
+		if (save != null && !useLong) {
+			Timer saveTimer = new Timer();
+			skipList.save(save, SkipListSnapshot.Codec.LONG, true);
+			saveTimer.end();
+			System.out.println("Save: " + saveTimer.elapsedTime + " msec.");
+		}
+	}
+	
+	/**
+	 * Shard: the operations of one list, and how its run went.
+	 */
+	private static class Shard {
+		final String name;
+		final OpLog log;
+		long result, nanos;
+		
+		Shard(String name, OpLog log) {
+			this.name = name;
+			this.log = log;
+		}
+	}
+	
+	/**
+	 * Runs each shard on its own list, on a pool of threads, and 
+	 * prints the combined result, then the throughput of each shard 
+	 * and the total.
+	 * @param fileNames the files (one shard each), or the one file 
+	 *        to be split (none: System.in)
+	 * @param shards number of key ranges to split the one file in
+	 * @param threads size of the pool
+	 * @param useLong whether to run on LongSkipList
+	 * @param seed seed of the levels (shard i: seed + i)
+	 * @param p probability of going one level up
+	 */
+	static void runParallel(List<String> fileNames, int shards, int threads,
+			boolean useLong, long seed, double p) throws IOException {
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		List<Shard> list = new ArrayList<>();
+		
+		try {
+			// Parse the operations, each file on a thread, timed apart
+			Timer parseTimer = new Timer();
+			if (fileNames.size() > 1) {
+				List<Future<OpLog>> parsed = new ArrayList<>();
+				for (String fileName : fileNames)
+					parsed.add(pool.submit(() -> OpLog.read(Paths.get(fileName))));
+				for (int i = 0; i < fileNames.size(); i++)
+					list.add(new Shard(fileNames.get(i), get(parsed.get(i))));
+			}
+			else {
+				OpLog log = fileNames.isEmpty() ? OpLog.read(System.in) 
+						: OpLog.read(Paths.get(fileNames.get(0)));
+				long[] bounds = bounds(log, shards);
+				
+				// When the operations can't be split by key range
+				if (bounds.length > 0 && !splittable(log)) {
+					System.err.println("Not split by key range: Floor, Ceiling, "
+							+ "Get, First and Last depend on the other ranges");
+					bounds = new long[0];
+				}
+				OpLog[] parts = split(log, bounds);
+				for (int i = 0; i < parts.length; i++)
+					list.add(new Shard("keys " + (i == 0 ? "min" : bounds[i - 1]) 
+							+ ".." + (i == parts.length - 1 ? "max" : bounds[i] - 1), 
+							parts[i]));
+			}
+			parseTimer.end();
+			
+			// Initialize the timer
+			Timer timer = new Timer();
+			
+			List<Future<?>> runs = new ArrayList<>();
+			for (int i = 0; i < list.size(); i++) {
+				Shard shard = list.get(i);
+				LevelGenerator levels = LevelGenerator.xorShift(seed + i, p);
+				
+				runs.add(pool.submit(() -> {
+					long start = System.nanoTime();
+					if (useLong)
+						shard.result = runLong(shard.log, levels);
+					else {
+						SkipList<Long> skipList = new SkipList<>();
+						skipList.setLevelGenerator(levels);
+						shard.result = run(shard.log, skipList);
+					}
+					shard.nanos = System.nanoTime() - start;
+					return null;
+				}));
+			}
+			for (Future<?> run : runs)
+				get(run);
+			
+			// End Time
+			timer.end();
+			
+			int modValue = 999983;
+			long result = 0, operations = 0;
+			for (Shard shard : list) {
+				result = (result + shard.result) % modValue;
+				operations += shard.log.size();
+			}
+			
+			System.out.println(result);
+			System.out.println("Parse: " + parseTimer.elapsedTime + " msec.");
+			System.out.println(timer);
+			for (Shard shard : list)
+				System.out.printf("%s: %d ops, %d msec., %.0f ops/sec%n", 
+						shard.name, shard.log.size(), shard.nanos / 1000000, 
+						shard.log.size() * 1e9 / Math.max(shard.nanos, 1));
+			System.out.printf("Total: %d ops, %d shards, %d threads, %.0f ops/sec%n", 
+					operations, list.size(), threads, 
+					operations * 1e3 / Math.max(timer.elapsedTime, 1));
+		} finally {
+			pool.shutdown();
+		}
+	}
+	
+	/**
+	 * Splits log by key range, keeping the order of the operations. 
+	 * Only operations on one key can be split (see splittable()).
+	 * @param bounds the lowest key of each range after the first
+	 * @throws IllegalArgumentException when log has any of the others, 
+	 *         and bounds isn't empty
+	 */
+	static OpLog[] split(OpLog log, long[] bounds) {
+		OpLog[] parts = new OpLog[bounds.length + 1];
+		for (int i = 0; i < parts.length; i++)
+			parts[i] = new OpLog();
+		
+		for (int i = 0; i < log.size(); i++) {
+			byte op = log.op(i);
+			
+			// When the operation spans the key ranges
+			if (bounds.length > 0 && !onOneKey(op))
+				throw new IllegalArgumentException("operation " + (i + 1) 
+						+ " is not on one key: only Add, Remove and Contains "
+						+ "can be split by key range");
+			
+			// index of the range: number of bounds <= operand
+			int range = Arrays.binarySearch(bounds, log.operand(i));
+			range = (range >= 0) ? range + 1 : -range - 1;
+			parts[range].append(op, log.operand(i));
+		}
+		return parts;
+	}
+	
+	/**
+	 * Can log be split by key range? Only when all of its operations 
+	 * are on one key (Add, Remove, Contains): the others (Floor, 
+	 * Ceiling, Get, First, Last) depend on the keys of the other ranges.
+	 */
+	static boolean splittable(OpLog log) {
+		for (int i = 0; i < log.size(); i++) {
+			// When the operation spans the key ranges
+			if (!onOneKey(log.op(i)))
+				return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Helper method - is op on one key only?
+	 */
+	private static boolean onOneKey(byte op) {
+		return op == OpLog.ADD || op == OpLog.REMOVE || op == OpLog.CONTAINS;
+	}
+	
+	/**
+	 * Bounds for split() in k ranges: the lowest keys of the ranges 
+	 * after the first, at quantiles of the operands (fewer when the 
+	 * operands have fewer distinct values).
+	 */
+	static long[] bounds(OpLog log, int k) {
+		long[] operands = new long[log.size()];
+		for (int i = 0; i < operands.length; i++)
+			operands[i] = log.operand(i);
+		Arrays.sort(operands);
+		
+		// When there is nothing to split
+		if (operands.length == 0)
+			return new long[0];
+		
+		long[] bounds = new long[k - 1];
+		int n = 0;
+		for (int i = 1; i < k; i++) {
+			long bound = operands[(int) ((long) i * operands.length / k)];
+			
+			// When it is a bound already (a range would be empty)
+			if (n > 0 && bounds[n - 1] >= bound || bound == operands[0])
+				continue;
+			bounds[n++] = bound;
+		}
+		return Arrays.copyOf(bounds, n);
+	}
+	
+	/**
+	 * Helper method - waits for a task of the pool.
+	 * @throws IOException when the task threw it
+	 */
+	private static <V> V get(Future<V> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new IOException(e.getCause());
+		}
+	}
+	
+	/**
+	 * Runs the operations on a SkipList<Long>.
+	 * @param log the parsed operations
+	 * @param skipList the list (empty, or loaded from a snapshot)
+	 * @return the result (mod 999983)
+	 */
+	static long run(OpLog log, SkipList<Long> skipList) {
 		long operand = 0;
 		int modValue = 999983;
 		long result = 0;
 		Long returnValue = null;
 		
-		SkipList<Long> skipList = new SkipList<>();
-		
-		// Initialize the timer
-		Timer timer = new Timer();
-
-		while (!((operation = sc.next()).equals("End"))) {
+		for (int i = 0; i < log.size(); i++) {
+			operand = log.operand(i);
 			
-			switch (operation) {
-				case "Add": {
-					operand = sc.nextLong();
+			switch (log.op(i)) {
+				case OpLog.ADD: {
 					if(skipList.add(operand)) {
 						result = (result + 1) % modValue;
 					}
 					break;
 				}
-				case "Ceiling": {
-					operand = sc.nextLong();
+				case OpLog.CEILING: {
 					returnValue = skipList.ceiling(operand);
 					// System.out.println("Ceiling: " + returnValue);
 					
@@ -51,16 +344,15 @@ public class SkipListDriver {
 					}
 					break;
 				}
-				case "First": {
+				case OpLog.FIRST: {
 					returnValue = skipList.first();
 					if (returnValue != null) {
 						result = (result + returnValue) % modValue;
 					}
 					break;
 				}
-				case "Get": {
-					int intOperand = sc.nextInt();
-					returnValue = skipList.get(intOperand);
+				case OpLog.GET: {
+					returnValue = skipList.get((int) operand);
 					// System.out.println("Get: " + returnValue);
 					// skipList.printListSpan();
 					
@@ -69,15 +361,14 @@ public class SkipListDriver {
 					}
 					break;
 				}
-				case "Last": {
+				case OpLog.LAST: {
 					returnValue = skipList.last();
 					if (returnValue != null) {
 						result = (result + returnValue) % modValue;
 					}
 					break;
 				}
-				case "Floor": {
-					operand = sc.nextLong();
+				case OpLog.FLOOR: {
 					returnValue = skipList.floor(operand);
 					// System.out.println("Floor: " + returnValue);
 					
@@ -86,36 +377,96 @@ public class SkipListDriver {
 					}
 					break;
 				}
-				case "Remove": {
-					operand = sc.nextLong();
+				case OpLog.REMOVE: {
 					if (skipList.remove(operand) != null) {
 						result = (result + 1) % modValue;
 					}
 					break;
 				}
-				case "Contains":{
-					operand = sc.nextLong();
+				case OpLog.CONTAINS:{
 					if (skipList.contains(operand)) {
 						result = (result + 1) % modValue;
 					}
 					break;
 				}
-
 			} 
-			// System.out.print(result + "\n");
 		}
+		return result;
+	}
+	
+	/**
+	 * Same as run(), but runs the operations on a LongSkipList, 
+	 * so that no operand is boxed.
+	 * @param log the parsed operations
+	 * @param levels levels of the new entries
+	 * @return the result (mod 999983)
+	 */
+	static long runLong(OpLog log, LevelGenerator levels) {
+		long operand = 0;
+		int modValue = 999983;
+		long result = 0;
+		long returnValue = LongSkipList.NONE;
 		
+		LongSkipList skipList = new LongSkipList();
+		skipList.setLevelGenerator(levels);
 		
-		//int n = 33000;
-		
-		//System.out.println("Linear: "+skipList.getLinear(n));;
-		//System.out.println("Log: \t"+skipList.getLog(n));;
-		
-		// End Time
-		timer.end();
-
-		System.out.println(result);
-		System.out.println(timer);
-				
+		for (int i = 0; i < log.size(); i++) {
+			operand = log.operand(i);
+			
+			switch (log.op(i)) {
+				case OpLog.ADD: {
+					if(skipList.add(operand)) {
+						result = (result + 1) % modValue;
+					}
+					break;
+				}
+				case OpLog.CEILING: {
+					returnValue = skipList.ceiling(operand);
+					if (returnValue != LongSkipList.NONE) {
+						result = (result + returnValue) % modValue;
+					}
+					break;
+				}
+				case OpLog.FIRST: {
+					returnValue = skipList.first();
+					if (returnValue != LongSkipList.NONE) {
+						result = (result + returnValue) % modValue;
+					}
+					break;
+				}
+				case OpLog.GET: {
+					returnValue = skipList.get((int) operand);
+					result = (result + returnValue) % modValue;
+					break;
+				}
+				case OpLog.LAST: {
+					returnValue = skipList.last();
+					if (returnValue != LongSkipList.NONE) {
+						result = (result + returnValue) % modValue;
+					}
+					break;
+				}
+				case OpLog.FLOOR: {
+					returnValue = skipList.floor(operand);
+					if (returnValue != LongSkipList.NONE) {
+						result = (result + returnValue) % modValue;
+					}
+					break;
+				}
+				case OpLog.REMOVE: {
+					if (skipList.remove(operand)) {
+						result = (result + 1) % modValue;
+					}
+					break;
+				}
+				case OpLog.CONTAINS:{
+					if (skipList.contains(operand)) {
+						result = (result + 1) % modValue;
+					}
+					break;
+				}
+			} 
+		}
+		return result;
 	}
 }
@@ -0,0 +1,1116 @@
+package rsn170330.lp2;
+
+/**
+ * CS 5V81.001. Implementation of data structures and algorithms
+ * Long Project LP2: Skip List Implementation
+ *
+ * SkipListMap: a NavigableMap on the Skip list of SkipList. Each Entry
+ * holds a key and its value, so a record needs no HashMap next to the
+ * list. Entries keep span[] like in SkipList, so on top of NavigableMap
+ * there are rank operations, both O(log n), which TreeMap can only do
+ * in O(n): getByIndex(n) and indexOfKey(key).
+ *
+ * Keys are in their natural order (comparator() is null), and can't be
+ * null; values can. lowerEntry(), floorEntry(), ceilingEntry() and
+ * higherEntry() make one descent, which stops as soon as it meets the
+ * key (like SkipList.descend()). The entries they return are snapshots
+ * (no setValue()), like in TreeMap; entries of entrySet() write through.
+ *
+ * subMap(), headMap(), tailMap() and descendingMap() are views (SubMap)
+ * on the same list, which check their bounds on each operation.
+ */
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+
+public class SkipListMap<K extends Comparable<? super K>, V>
+		extends AbstractMap<K, V> implements NavigableMap<K, V> {
+	static final int POSSIBLE_LEVELS = SkipList.POSSIBLE_LEVELS;
+
+	// what descend(key, mode) returns when key is not present -
+	// EXACT: null, FLOOR and LOWER: the last Entry < key, CEILING and
+	// HIGHER: the first Entry > key (LOWER and HIGHER step over key)
+	static final int EXACT = 0, FLOOR = 1, CEILING = 2, LOWER = 3,
+			HIGHER = 4;
+
+	// Dummy header & tail is created.
+	private Entry<K, V> head, tail;
+
+	// maxLevel is the level equal to the longest next[]
+	private int size, maxLevel;
+
+	// last[i]: Entry at which search came down from level i
+	private Entry<K, V>[] last; // used by find
+
+	// lastPosition[i]: distance of last[i] from head
+	// (its position, as index + 1)
+	private int[] lastPosition; // used for updating span[]
+
+	// for random height (like using coin-flip, see LevelGenerator)
+	private LevelGenerator levelGenerator;
+
+	/**
+	 * Entry: key and value, with the links of SkipList.Entry.
+	 * As a Map.Entry (from entrySet()), setValue() writes through.
+	 */
+	static class Entry<K, V> extends AbstractMap.SimpleEntry<K, V> {
+		private static final long serialVersionUID = 1L;
+		Entry<K, V>[] next;
+		Entry<K, V> prev;
+		int height;
+
+		// span[i]: storing distance of the Entry in next[i]
+		// from the current Entry
+		int[] span; // for indexing
+
+		// Parameterized Constructor:
+		Entry(K key, V value, int level) {
+			super(key, value);
+			next = newEntries(level);
+			height = level;
+
+			span = new int[level];
+		}
+	}
+
+	/**
+	 * Helper method - an array of n entries (all null).
+	 */
+	@SuppressWarnings("unchecked")
+	static <K, V> Entry<K, V>[] newEntries(int n) {
+		return (Entry<K, V>[]) new Entry<?, ?>[n];
+	}
+
+	// Default Constructor
+	public SkipListMap() {
+		head = new Entry<>(null, null, POSSIBLE_LEVELS);
+		tail = new Entry<>(null, null, POSSIBLE_LEVELS);
+
+		last = newEntries(POSSIBLE_LEVELS);
+		lastPosition = new int[POSSIBLE_LEVELS];
+
+		levelGenerator = LevelGenerator.fast();
+		clear();
+	}
+
+	/**
+	 * Removes all the mappings.
+	 */
+	public void clear() {
+		size = 0;
+		maxLevel = 1;
+
+		// Each entry in head.next[] points to tail
+		// (head.span[] is kept up to date only below maxLevel)
+		for (int i = 0; i < POSSIBLE_LEVELS; i++) {
+			head.next[i] = tail;
+			head.span[i] = 1; // tail 1 distance away
+			last[i] = null;
+		}
+		tail.prev = head;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Value of key, or null when key is not present.
+	 */
+	public V get(Object key) {
+		Entry<K, V> e = descend(key(key), EXACT);
+		return (e == null) ? null : e.getValue();
+	}
+
+	public boolean containsKey(Object key) {
+		return descend(key(key), EXACT) != null;
+	}
+
+	/**
+	 * Maps key to value, with a single search.
+	 * @return the previous value of key, or null when it wasn't present
+	 */
+	public V put(K key, V value) {
+		// When key is present (also sets last[] for key)
+		if (find(key(key)))
+			return last[0].next[0].setValue(value);
+
+		insert(key, value);
+		return null;
+	}
+
+	/**
+	 * Maps key to value, unless key is present with a non-null value,
+	 * with a single search either way.
+	 * @return the value of key, null when it wasn't present (or null)
+	 */
+	public V putIfAbsent(K key, V value) {
+		// When key is present: it's just after last[0]
+		if (find(key(key))) {
+			Entry<K, V> e = last[0].next[0];
+			return (e.getValue() == null) ? e.setValue(value) : e.getValue();
+		}
+
+		insert(key, value);
+		return null;
+	}
+
+	/**
+	 * Removes the mapping of key, if present.
+	 * @return the value key had, null when it wasn't present
+	 */
+	public V remove(Object key) {
+		// When there is no key in the map (also sets last[] for key)
+		if (!find(key(key)))
+			return null;
+
+		// ent is the Entry to be removed
+		Entry<K, V> ent = last[0].next[0];
+
+		int i = 0;
+		// bypassing ent at each of its levels, adding two spans,
+		// -1 for removed
+		for (; i < ent.height; i++) {
+			last[i].next[i] = ent.next[i];
+			last[i].span[i] = last[i].span[i] + ent.span[i] - 1;
+		}
+
+		// update spans above height for last[]
+		for (; i < maxLevel; i++) {
+			last[i].span[i]--;
+		}
+
+		// re-establishing the previous link
+		ent.next[0].prev = last[0];
+		size--;
+
+		return ent.getValue();
+	}
+
+	// NavigableMap:
+
+	public Map.Entry<K, V> lowerEntry(K key) {
+		return snapshot(descend(key(key), LOWER));
+	}
+
+	public K lowerKey(K key) {
+		return keyOf(descend(key(key), LOWER));
+	}
+
+	public Map.Entry<K, V> floorEntry(K key) {
+		return snapshot(descend(key(key), FLOOR));
+	}
+
+	public K floorKey(K key) {
+		return keyOf(descend(key(key), FLOOR));
+	}
+
+	public Map.Entry<K, V> ceilingEntry(K key) {
+		return snapshot(descend(key(key), CEILING));
+	}
+
+	public K ceilingKey(K key) {
+		return keyOf(descend(key(key), CEILING));
+	}
+
+	public Map.Entry<K, V> higherEntry(K key) {
+		return snapshot(descend(key(key), HIGHER));
+	}
+
+	public K higherKey(K key) {
+		return keyOf(descend(key(key), HIGHER));
+	}
+
+	public Map.Entry<K, V> firstEntry() {
+		return snapshot(firstNode());
+	}
+
+	public Map.Entry<K, V> lastEntry() {
+		return snapshot(lastNode());
+	}
+
+	public K firstKey() {
+		return keyOf(nonEmpty(firstNode()));
+	}
+
+	public K lastKey() {
+		return keyOf(nonEmpty(lastNode()));
+	}
+
+	public Map.Entry<K, V> pollFirstEntry() {
+		return poll(firstNode());
+	}
+
+	public Map.Entry<K, V> pollLastEntry() {
+		return poll(lastNode());
+	}
+
+	/**
+	 * null: keys are in their natural order.
+	 */
+	public Comparator<? super K> comparator() {
+		return null;
+	}
+
+	// Indexing in the map:
+
+	/**
+	 * Mapping at index n, in key order (first is at index 0).
+	 * RT: O(log n), over span[], like SkipList.getLog().
+	 * @param n the input index
+	 * @return a snapshot of the mapping
+	 * @throws NoSuchElementException When n is invalid index
+	 */
+	public Map.Entry<K, V> getByIndex(int n) {
+		// When invalid input index
+		if (n < 0 || size - 1 < n)
+			throw new NoSuchElementException();
+
+		int position = n + 1; // position: index + 1
+		int visitedPosition = 0; // position of p
+		Entry<K, V> p = head; // like cursor
+
+		// Iterating top-down, without going past position - 1
+		for (int i = maxLevel - 1; i > -1; i--) {
+			while ((p.span[i] + visitedPosition) < position) {
+				visitedPosition += p.span[i];
+				p = p.next[i];
+			}
+		}
+		// p is at (position-1)
+		return snapshot(p.next[0]);
+	}
+
+	/**
+	 * Index of key, in key order (first is at index 0), in
+	 * O(log n) by summing span[] on the way down.
+	 * @param key the key to be searched
+	 * @return the index of key, or -1 when key is not present
+	 */
+	public int indexOfKey(K key) {
+		return rank(key(key), true);
+	}
+
+	// Views:
+
+	public Set<Map.Entry<K, V>> entrySet() {
+		return new EntrySet(this, null);
+	}
+
+	public NavigableSet<K> keySet() {
+		return navigableKeySet();
+	}
+
+	public NavigableSet<K> navigableKeySet() {
+		return new KeySet<>(this);
+	}
+
+	public NavigableSet<K> descendingKeySet() {
+		return new KeySet<>(descendingMap());
+	}
+
+	public NavigableMap<K, V> descendingMap() {
+		return new SubMap<>(this, null, false, null, false, true);
+	}
+
+	public NavigableMap<K, V> subMap(K fromKey, boolean fromInclusive,
+			K toKey, boolean toInclusive) {
+		// When the range is reversed
+		if (key(fromKey).compareTo(key(toKey)) > 0)
+			throw new IllegalArgumentException("fromKey > toKey");
+
+		return new SubMap<>(this, fromKey, fromInclusive, toKey,
+				toInclusive, false);
+	}
+
+	public NavigableMap<K, V> headMap(K toKey, boolean inclusive) {
+		return new SubMap<>(this, null, false, key(toKey), inclusive, false);
+	}
+
+	public NavigableMap<K, V> tailMap(K fromKey, boolean inclusive) {
+		return new SubMap<>(this, key(fromKey), inclusive, null, false, false);
+	}
+
+	public SortedMap<K, V> subMap(K fromKey, K toKey) {
+		return subMap(fromKey, true, toKey, false);
+	}
+
+	public SortedMap<K, V> headMap(K toKey) {
+		return headMap(toKey, false);
+	}
+
+	public SortedMap<K, V> tailMap(K fromKey) {
+		return tailMap(fromKey, true);
+	}
+
+	/**
+	 * Helper method - key as a K.
+	 * @throws NullPointerException When key is null (like TreeMap)
+	 */
+	@SuppressWarnings("unchecked")
+	K key(Object key) {
+		// When key is null
+		if (key == null)
+			throw new NullPointerException("null key");
+		return (K) key;
+	}
+
+	/**
+	 * Helper method - a Map.Entry which doesn't change with e
+	 * (null when e is null).
+	 */
+	static <K, V> Map.Entry<K, V> snapshot(Entry<K, V> e) {
+		return (e == null) ? null : new AbstractMap.SimpleImmutableEntry<>(e);
+	}
+
+	static <K, V> K keyOf(Entry<K, V> e) {
+		return (e == null) ? null : e.getKey();
+	}
+
+	/**
+	 * Helper method - firstKey(), lastKey(): e itself.
+	 * @throws NoSuchElementException When e is null (map is empty)
+	 */
+	static <K, V> Entry<K, V> nonEmpty(Entry<K, V> e) {
+		// When there is no such Entry
+		if (e == null)
+			throw new NoSuchElementException();
+		return e;
+	}
+
+	/**
+	 * Helper method - pollFirstEntry(), pollLastEntry(): removes e.
+	 * @return a snapshot of e, null when e is null
+	 */
+	Map.Entry<K, V> poll(Entry<K, V> e) {
+		Map.Entry<K, V> polled = snapshot(e);
+		if (e != null)
+			remove(e.getKey());
+		return polled;
+	}
+
+	/**
+	 * First Entry (null when empty).
+	 */
+	Entry<K, V> firstNode() {
+		return (size == 0) ? null : head.next[0];
+	}
+
+	/**
+	 * Last Entry (null when empty).
+	 */
+	Entry<K, V> lastNode() {
+		return (size == 0) ? null : tail.prev;
+	}
+
+	/**
+	 * Helper method - chooses a random level for a new Entry,
+	 * raising maxLevel by at most 1 (like SkipList.chooseLevel()).
+	 * @return the level
+	 */
+	private int chooseLevel() {
+		int lev = levelGenerator.nextLevel();
+		lev = Math.min(lev, maxLevel + 1);
+
+		if (maxLevel < lev)
+			maxLevel = lev;
+
+		return lev;
+	}
+	/**
+	 * Sets how the level of a new Entry is chosen, e.g. with another
+	 * probability p, or seeded for a reproducible run.
+	 * @param levelGenerator the generator (see LevelGenerator)
+	 */
+	public void setLevelGenerator(LevelGenerator levelGenerator) {
+		this.levelGenerator = levelGenerator;
+	}
+
+
+	/**
+	 * Helper method to search for key, for put() and remove().
+	 * Sets last[i] = node at which search came down from
+	 * level i to i-1, and lastPosition[i] = its position.
+	 * Like SkipList.find(), without finger mode.
+	 * @param key the key to be searched
+	 * @return true when key is present, false if not
+	 */
+	private boolean find(K key) {
+		Entry<K, V> p = head; // like cursor
+		int position = 0; // position of p
+
+		// stop: Entry known not to be < key (compared on a level
+		// above), stopCmp: stop.getKey().compareTo(key), 1 for tail
+		Entry<K, V> stop = tail;
+		int stopCmp = 1;
+
+		for (int in = maxLevel - 1; in > -1; in--) {
+			// while the next Entry may be < key (tail and stop are not)
+			while (p.next[in] != stop) {
+				int cmp = p.next[in].getKey().compareTo(key);
+				if (cmp >= 0) {
+					stop = p.next[in];
+					stopCmp = cmp;
+					break;
+				}
+				position += p.span[in];
+				p = p.next[in]; // moving further
+			}
+			last[in] = p; // entry at which search came down
+			lastPosition[in] = position;
+		}
+
+		// p.next[0] is stop: key is present when it compared equal
+		return stopCmp == 0;
+	}
+
+	/**
+	 * Helper method - put(), putIfAbsent(): splices a new Entry in
+	 * after last[0], right after find(key) didn't find it.
+	 */
+	private void insert(K key, V value) {
+		// newPosition: position of last[0] + 1 (where we'll add the key)
+		int newPosition = lastPosition[0] + 1;
+
+		// find(key) set last[] up to maxLevel, before chooseLevel()
+		// may raise it
+		int levels = maxLevel;
+
+		int level = chooseLevel(); // length of next[] of the Entry
+		Entry<K, V> ent = new Entry<>(key, value, level);
+
+		// When the Entry starts a new level: there, head points to
+		// tail, which is after all size entries
+		int i;
+		for (i = levels; i < maxLevel; i++) {
+			last[i] = head;
+			lastPosition[i] = 0;
+			head.span[i] = size + 1;
+		}
+
+		// for each level of newly created Entry ent
+		for (i = 0; i < level; i++) {
+			ent.next[i] = last[i].next[i];
+			last[i].next[i] = ent;
+
+			// re-establishing the span's: last[i] is at lastPosition[i]
+			ent.span[i] = lastPosition[i] + last[i].span[i] - newPosition + 1;
+			last[i].span[i] = newPosition - lastPosition[i];
+		}
+		// re-establishing the previous links
+		ent.next[0].prev = ent;
+		ent.prev = last[0];
+
+		// Increment the span of the last array elements
+		// by 1 if no re-pointing is done
+		for (; i < maxLevel; i++) {
+			last[i].span[i]++;
+		}
+		size++;
+	}
+
+	/**
+	 * Helper method - read-only search for key, which stops as soon
+	 * as it meets key (on any level). Each Entry is compared with key
+	 * at most once (see SkipList.descend()).
+	 * @param key the key to be searched
+	 * @param mode EXACT, FLOOR, CEILING, LOWER or HIGHER
+	 * @return the Entry of key (for LOWER and HIGHER: the one before or
+	 *         after it) when present, else as given by mode; null
+	 *         instead of head or tail
+	 */
+	Entry<K, V> descend(K key, int mode) {
+		Entry<K, V> p = head; // like cursor
+		Entry<K, V> stop = tail; // known not to be < key
+		Entry<K, V> found = null;
+
+		for (int in = maxLevel - 1; in > -1 && found == null; in--) {
+			int cmp = -1; // of p.next[in] and key, when compared
+
+			// while the next Entry may be < key (tail and stop are not)
+			while (p.next[in] != stop) {
+				cmp = p.next[in].getKey().compareTo(key);
+				if (cmp >= 0)
+					break;
+				p = p.next[in]; // moving further
+			}
+
+			// When key is met: no need to go down
+			if (cmp == 0)
+				found = p.next[in];
+			else if (cmp > 0)
+				stop = p.next[in];
+		}
+
+		Entry<K, V> e;
+		if (found != null)
+			e = (mode == LOWER) ? found.prev
+					: (mode == HIGHER) ? found.next[0] : found;
+		else
+			e = (mode == EXACT) ? null
+					: (mode == FLOOR || mode == LOWER) ? p : p.next[0];
+
+		return (e == head || e == tail) ? null : e;
+	}
+
+	/**
+	 * Helper method - rank of key: distance of the Entry before key
+	 * from head, summing span[] on the way down (see SkipList.rank()).
+	 * @param key the key to be searched
+	 * @param exact whether key has to be present
+	 * @return number of keys smaller than key, or -1 when exact
+	 *         and key is not present
+	 */
+	int rank(K key, boolean exact) {
+		Entry<K, V> p = head; // like cursor
+		Entry<K, V> stop = tail; // known not to be < key
+		int distance = 0; // distance of p from the head
+
+		for (int in = maxLevel - 1; in > -1; in--) {
+			int cmp = -1; // of p.next[in] and key, when compared
+
+			// while the next Entry may be < key (tail and stop are not)
+			while (p.next[in] != stop) {
+				cmp = p.next[in].getKey().compareTo(key);
+				if (cmp >= 0)
+					break;
+				distance += p.span[in];
+				p = p.next[in]; // moving further
+			}
+
+			// When key is met: its position is known
+			if (cmp == 0)
+				return distance + p.span[in] - 1;
+			if (cmp > 0)
+				stop = p.next[in];
+		}
+
+		// When key has to be present, but isn't
+		return exact ? -1 : distance;
+	}
+
+	/**
+	 * EntryIterator: Entries of the map, or of a view, in order.
+	 * remove() removes the key from the map.
+	 */
+	class EntryIterator implements Iterator<Map.Entry<K, V>> {
+		Entry<K, V> nextEntry, lastReturned;
+		final SubMap<K, V> view; // bounds and order (null: whole map)
+
+		EntryIterator(Entry<K, V> first, SubMap<K, V> view) {
+			nextEntry = first;
+			lastReturned = null;
+			this.view = view;
+		}
+
+		public boolean hasNext() {
+			return nextEntry != null;
+		}
+
+		public Map.Entry<K, V> next() {
+			// When there is no next element
+			if (nextEntry == null)
+				throw new NoSuchElementException("There is no next element.");
+
+			lastReturned = nextEntry;
+			Entry<K, V> e = (view != null && view.descending)
+					? nextEntry.prev : nextEntry.next[0];
+
+			// When past the end of the map, or of the view
+			if (e == head || e == tail ||
+					(view != null && !view.inRange(e.getKey())))
+				e = null;
+
+			nextEntry = e;
+			return lastReturned;
+		}
+
+		public void remove() {
+			// When remove operation cannot be done!
+			if (lastReturned == null)
+				throw new IllegalStateException();
+
+			// nextEntry is not affected by the removal
+			SkipListMap.this.remove(lastReturned.getKey());
+			lastReturned = null;
+		}
+	}
+
+	/**
+	 * EntrySet: entrySet() of the map, or of a view.
+	 */
+	class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+		final NavigableMap<K, V> map; // this map, or view
+		final SubMap<K, V> view; // null: whole map
+
+		EntrySet(NavigableMap<K, V> map, SubMap<K, V> view) {
+			this.map = map;
+			this.view = view;
+		}
+
+		public Iterator<Map.Entry<K, V>> iterator() {
+			return new EntryIterator(
+					(view == null) ? firstNode() : view.firstNode(), view);
+		}
+
+		public int size() {
+			return map.size();
+		}
+
+		public boolean contains(Object o) {
+			// When o isn't a mapping
+			if (!(o instanceof Map.Entry))
+				return false;
+
+			Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+			return e.getKey() != null && map.containsKey(e.getKey()) &&
+					Objects.equals(map.get(e.getKey()), e.getValue());
+		}
+
+		public boolean remove(Object o) {
+			// When there is no such mapping
+			if (!contains(o))
+				return false;
+
+			map.remove(((Map.Entry<?, ?>) o).getKey());
+			return true;
+		}
+
+		public void clear() {
+			// a view is cleared one Entry at a time
+			if (view == null)
+				SkipListMap.this.clear();
+			else
+				super.clear();
+		}
+	}
+
+	/**
+	 * SubMap: keys of the map between lo and hi (null: unbounded),
+	 * in ascending or descending order. Changes write through,
+	 * and a key out of the bounds can't be put.
+	 */
+	static class SubMap<K extends Comparable<? super K>, V>
+			extends AbstractMap<K, V> implements NavigableMap<K, V> {
+		final SkipListMap<K, V> m;
+		final K lo, hi;
+		final boolean loInclusive, hiInclusive, descending;
+
+		SubMap(SkipListMap<K, V> m, K lo, boolean loInclusive,
+				K hi, boolean hiInclusive, boolean descending) {
+			this.m = m;
+			this.lo = lo;
+			this.loInclusive = loInclusive;
+			this.hi = hi;
+			this.hiInclusive = hiInclusive;
+			this.descending = descending;
+		}
+
+		boolean tooLow(K key) {
+			// When there is no lower bound
+			if (lo == null)
+				return false;
+
+			int cmp = key.compareTo(lo);
+			return cmp < 0 || (cmp == 0 && !loInclusive);
+		}
+
+		boolean tooHigh(K key) {
+			// When there is no upper bound
+			if (hi == null)
+				return false;
+
+			int cmp = key.compareTo(hi);
+			return cmp > 0 || (cmp == 0 && !hiInclusive);
+		}
+
+		boolean inRange(K key) {
+			return !tooLow(key) && !tooHigh(key);
+		}
+
+		/**
+		 * Helper method - bounds of a view of this view: inclusive
+		 * ones in range, exclusive ones also at an exclusive bound.
+		 */
+		private boolean inRange(K key, boolean inclusive) {
+			// When key is a bound, and an exclusive one
+			if (!inclusive)
+				return (lo == null || key.compareTo(lo) >= 0) &&
+						(hi == null || key.compareTo(hi) <= 0);
+			return inRange(key);
+		}
+
+		/**
+		 * Lowest Entry in range (null when none).
+		 */
+		SkipListMap.Entry<K, V> lowestNode() {
+			SkipListMap.Entry<K, V> e = (lo == null) ? m.firstNode()
+					: m.descend(lo, loInclusive ? CEILING : HIGHER);
+			return (e == null || tooHigh(e.getKey())) ? null : e;
+		}
+
+		/**
+		 * Highest Entry in range (null when none).
+		 */
+		SkipListMap.Entry<K, V> highestNode() {
+			SkipListMap.Entry<K, V> e = (hi == null) ? m.lastNode()
+					: m.descend(hi, hiInclusive ? FLOOR : LOWER);
+			return (e == null || tooLow(e.getKey())) ? null : e;
+		}
+
+		SkipListMap.Entry<K, V> firstNode() {
+			return descending ? highestNode() : lowestNode();
+		}
+
+		SkipListMap.Entry<K, V> lastNode() {
+			return descending ? lowestNode() : highestNode();
+		}
+
+		/**
+		 * Helper method - lowerEntry(), floorEntry(), ...:
+		 * the Entry given by mode (in ascending order), in range.
+		 */
+		private SkipListMap.Entry<K, V> relative(K key, int mode) {
+			// mode in the order of the view
+			if (descending)
+				mode = (mode == FLOOR) ? CEILING : (mode == CEILING) ? FLOOR
+						: (mode == LOWER) ? HIGHER : LOWER;
+
+			key = m.key(key);
+
+			// When key is out of range: the nearest end of the range
+			if (tooLow(key))
+				return (mode == CEILING || mode == HIGHER) ? lowestNode() : null;
+			if (tooHigh(key))
+				return (mode == FLOOR || mode == LOWER) ? highestNode() : null;
+
+			SkipListMap.Entry<K, V> e = m.descend(key, mode);
+			return (e == null || !inRange(e.getKey())) ? null : e;
+		}
+
+		/**
+		 * Number of mappings in range, in O(log n) from two ranks.
+		 */
+		public int size() {
+			SkipListMap.Entry<K, V> lowest = lowestNode();
+
+			// When the range is empty
+			if (lowest == null)
+				return 0;
+
+			return m.rank(highestNode().getKey(), false)
+					- m.rank(lowest.getKey(), false) + 1;
+		}
+
+		public boolean isEmpty() {
+			return lowestNode() == null;
+		}
+
+		public V get(Object key) {
+			K k = m.key(key);
+			return inRange(k) ? m.get(k) : null;
+		}
+
+		public boolean containsKey(Object key) {
+			K k = m.key(key);
+			return inRange(k) && m.containsKey(k);
+		}
+
+		public V put(K key, V value) {
+			// When key is out of range
+			if (!inRange(m.key(key)))
+				throw new IllegalArgumentException("key out of range");
+			return m.put(key, value);
+		}
+
+		public V remove(Object key) {
+			K k = m.key(key);
+			return inRange(k) ? m.remove(k) : null;
+		}
+
+		public Map.Entry<K, V> lowerEntry(K key) {
+			return snapshot(relative(key, LOWER));
+		}
+
+		public K lowerKey(K key) {
+			return keyOf(relative(key, LOWER));
+		}
+
+		public Map.Entry<K, V> floorEntry(K key) {
+			return snapshot(relative(key, FLOOR));
+		}
+
+		public K floorKey(K key) {
+			return keyOf(relative(key, FLOOR));
+		}
+
+		public Map.Entry<K, V> ceilingEntry(K key) {
+			return snapshot(relative(key, CEILING));
+		}
+
+		public K ceilingKey(K key) {
+			return keyOf(relative(key, CEILING));
+		}
+
+		public Map.Entry<K, V> higherEntry(K key) {
+			return snapshot(relative(key, HIGHER));
+		}
+
+		public K higherKey(K key) {
+			return keyOf(relative(key, HIGHER));
+		}
+
+		public Map.Entry<K, V> firstEntry() {
+			return snapshot(firstNode());
+		}
+
+		public Map.Entry<K, V> lastEntry() {
+			return snapshot(lastNode());
+		}
+
+		public K firstKey() {
+			return keyOf(nonEmpty(firstNode()));
+		}
+
+		public K lastKey() {
+			return keyOf(nonEmpty(lastNode()));
+		}
+
+		public Map.Entry<K, V> pollFirstEntry() {
+			return m.poll(firstNode());
+		}
+
+		public Map.Entry<K, V> pollLastEntry() {
+			return m.poll(lastNode());
+		}
+
+		public Comparator<? super K> comparator() {
+			return descending ? Collections.reverseOrder() : null;
+		}
+
+		public Set<Map.Entry<K, V>> entrySet() {
+			return m.new EntrySet(this, this);
+		}
+
+		public NavigableSet<K> keySet() {
+			return navigableKeySet();
+		}
+
+		public NavigableSet<K> navigableKeySet() {
+			return new KeySet<>(this);
+		}
+
+		public NavigableSet<K> descendingKeySet() {
+			return new KeySet<>(descendingMap());
+		}
+
+		public NavigableMap<K, V> descendingMap() {
+			return new SubMap<>(m, lo, loInclusive, hi, hiInclusive,
+					!descending);
+		}
+
+		public NavigableMap<K, V> subMap(K fromKey, boolean fromInclusive,
+				K toKey, boolean toInclusive) {
+			int cmp = m.key(fromKey).compareTo(m.key(toKey));
+
+			// When the range is reversed (in the order of the view)
+			if (descending ? cmp < 0 : cmp > 0)
+				throw new IllegalArgumentException("fromKey > toKey");
+
+			return view(fromKey, fromInclusive, toKey, toInclusive);
+		}
+
+		public NavigableMap<K, V> headMap(K toKey, boolean inclusive) {
+			return view(null, false, m.key(toKey), inclusive);
+		}
+
+		public NavigableMap<K, V> tailMap(K fromKey, boolean inclusive) {
+			return view(m.key(fromKey), inclusive, null, false);
+		}
+
+		public SortedMap<K, V> subMap(K fromKey, K toKey) {
+			return subMap(fromKey, true, toKey, false);
+		}
+
+		public SortedMap<K, V> headMap(K toKey) {
+			return headMap(toKey, false);
+		}
+
+		public SortedMap<K, V> tailMap(K fromKey) {
+			return tailMap(fromKey, true);
+		}
+
+		/**
+		 * Helper method - view of this view from fromKey to toKey, in
+		 * the order of this view (null: keeps the bound of this view).
+		 * @throws IllegalArgumentException When a key is out of range
+		 */
+		private SubMap<K, V> view(K fromKey, boolean fromInclusive,
+				K toKey, boolean toInclusive) {
+			// bounds in ascending order
+			K newLo = descending ? toKey : fromKey;
+			K newHi = descending ? fromKey : toKey;
+			boolean newLoInclusive = descending ? toInclusive : fromInclusive;
+			boolean newHiInclusive = descending ? fromInclusive : toInclusive;
+
+			if (newLo == null) {
+				newLo = lo;
+				newLoInclusive = loInclusive;
+			}
+			// When the new bound is out of range
+			else if (!inRange(newLo, newLoInclusive))
+				throw new IllegalArgumentException("key out of range");
+
+			if (newHi == null) {
+				newHi = hi;
+				newHiInclusive = hiInclusive;
+			}
+			// When the new bound is out of range
+			else if (!inRange(newHi, newHiInclusive))
+				throw new IllegalArgumentException("key out of range");
+
+			return new SubMap<>(m, newLo, newLoInclusive, newHi,
+					newHiInclusive, descending);
+		}
+	}
+
+	/**
+	 * KeySet: keys of a NavigableMap (the map or a view),
+	 * as a NavigableSet. Removal writes through.
+	 */
+	static class KeySet<K> extends AbstractSet<K> implements NavigableSet<K> {
+		final NavigableMap<K, ?> map;
+
+		KeySet(NavigableMap<K, ?> map) {
+			this.map = map;
+		}
+
+		public Iterator<K> iterator() {
+			Iterator<? extends Map.Entry<K, ?>> it = map.entrySet().iterator();
+
+			return new Iterator<K>() {
+				public boolean hasNext() {
+					return it.hasNext();
+				}
+
+				public K next() {
+					return it.next().getKey();
+				}
+
+				public void remove() {
+					it.remove();
+				}
+			};
+		}
+
+		public int size() {
+			return map.size();
+		}
+
+		public boolean isEmpty() {
+			return map.isEmpty();
+		}
+
+		public boolean contains(Object o) {
+			return map.containsKey(o);
+		}
+
+		public boolean remove(Object o) {
+			// When o isn't a key
+			if (!map.containsKey(o))
+				return false;
+
+			map.remove(o);
+			return true;
+		}
+
+		public void clear() {
+			map.clear();
+		}
+
+		public K lower(K key) {
+			return map.lowerKey(key);
+		}
+
+		public K floor(K key) {
+			return map.floorKey(key);
+		}
+
+		public K ceiling(K key) {
+			return map.ceilingKey(key);
+		}
+
+		public K higher(K key) {
+			return map.higherKey(key);
+		}
+
+		public K first() {
+			return map.firstKey();
+		}
+
+		public K last() {
+			return map.lastKey();
+		}
+
+		public K pollFirst() {
+			return keyOf(map.pollFirstEntry());
+		}
+
+		public K pollLast() {
+			return keyOf(map.pollLastEntry());
+		}
+
+		private static <K> K keyOf(Map.Entry<K, ?> e) {
+			return (e == null) ? null : e.getKey();
+		}
+
+		public Comparator<? super K> comparator() {
+			return map.comparator();
+		}
+
+		public NavigableSet<K> descendingSet() {
+			return new KeySet<>(map.descendingMap());
+		}
+
+		public Iterator<K> descendingIterator() {
+			return descendingSet().iterator();
+		}
+
+		public NavigableSet<K> subSet(K fromElement, boolean fromInclusive,
+				K toElement, boolean toInclusive) {
+			return new KeySet<>(map.subMap(fromElement, fromInclusive,
+					toElement, toInclusive));
+		}
+
+		public NavigableSet<K> headSet(K toElement, boolean inclusive) {
+			return new KeySet<>(map.headMap(toElement, inclusive));
+		}
+
+		public NavigableSet<K> tailSet(K fromElement, boolean inclusive) {
+			return new KeySet<>(map.tailMap(fromElement, inclusive));
+		}
+
+		public SortedSet<K> subSet(K fromElement, K toElement) {
+			return subSet(fromElement, true, toElement, false);
+		}
+
+		public SortedSet<K> headSet(K toElement) {
+			return headSet(toElement, false);
+		}
+
+		public SortedSet<K> tailSet(K fromElement) {
+			return tailSet(fromElement, true);
+		}
+	}
+}
@@ -0,0 +1,221 @@
+package rsn170330.lp2;
+
+/**
+ * CS 5V81.001. Implementation of data structures and algorithms
+ * Long Project LP2: Skip List Implementation
+ *
+ * SkipListMetrics: optional counters of a SkipList, turned on with
+ * SkipList.setMetrics(true). When off, SkipList holds no instance and
+ * each operation only checks a field for null.
+ *  - operation counters (add, remove, contains, ...),
+ *  - histogram of comparisons (compareTo calls) per search,
+ *  - horizontal steps per level, over all searches.
+ * Level occupancy and average span per level describe the shape of the
+ * list: they are measured when the Snapshot is taken, not on the way.
+ *
+ * Each search counts its comparisons in a local, and hands the total to
+ * search(): concurrent searches (readers of a LockedSkipList) never mix
+ * their counts. The counters themselves are plain longs: with concurrent
+ * readers some increments may be lost, so the totals are approximate
+ * there (each search is filed whole, under its own bucket, or not at
+ * all).
+ */
+
+public class SkipListMetrics {
+	// operations counted
+	public static final int ADD = 0, REMOVE = 1, CONTAINS = 2, FLOOR = 3,
+			CEILING = 4, GET = 5, RANK = 6, REBUILD = 7;
+	static final String[] OPERATIONS = { "add", "remove", "contains", "floor",
+			"ceiling", "get", "rank", "rebuild" };
+
+	// comparisons[c]: searches with c comparisons (the last: c or more)
+	static final int HISTOGRAM = 64;
+
+	private final long[] operations = new long[OPERATIONS.length];
+	private final long[] comparisons = new long[HISTOGRAM];
+	private final long[] steps = new long[SkipList.POSSIBLE_LEVELS];
+
+	// totals over all searches (for RebuildPolicy)
+	long searches, totalComparisons;
+
+	/**
+	 * Counts an operation.
+	 * @param op one of ADD, REMOVE, CONTAINS, ...
+	 */
+	void count(int op) {
+		operations[op]++;
+	}
+
+	/**
+	 * Records a level of a search.
+	 * @param level the level
+	 * @param steps horizontal steps taken on level
+	 * @param compared whether the search compared with the Entry it
+	 *        stopped before (false when that is tail)
+	 * @return comparisons on level, for the search to add up
+	 */
+	int level(int level, int steps, boolean compared) {
+		this.steps[level] += steps;
+		return compared ? steps + 1 : steps;
+	}
+
+	/**
+	 * Records a whole search.
+	 * @param comparisons the sum of what level() returned for it
+	 */
+	void search(int comparisons) {
+		this.comparisons[Math.min(comparisons, HISTOGRAM - 1)]++;
+		searches++;
+		totalComparisons += comparisons;
+	}
+
+	/**
+	 * Copies the counters, along with the shape of the list.
+	 * @param size number of elements
+	 * @param maxLevel levels in use
+	 * @param occupancy occupancy[i]: entries with a level i link
+	 * @return the snapshot
+	 */
+	Snapshot snapshot(int size, int maxLevel, int[] occupancy) {
+		return new Snapshot(operations.clone(), comparisons.clone(),
+				steps.clone(), size, maxLevel, occupancy);
+	}
+
+	/**
+	 * Snapshot: the metrics at one point in time.
+	 */
+	public static class Snapshot {
+		private final long[] operations, comparisons, steps;
+		private final int size, maxLevel;
+		private final int[] occupancy;
+		private final long searches;
+
+		Snapshot(long[] operations, long[] comparisons, long[] steps,
+				int size, int maxLevel, int[] occupancy) {
+			this.operations = operations;
+			this.comparisons = comparisons;
+			this.steps = steps;
+			this.size = size;
+			this.maxLevel = maxLevel;
+			this.occupancy = occupancy;
+
+			long searches = 0;
+			for (long count : comparisons)
+				searches += count;
+			this.searches = searches;
+		}
+
+		/**
+		 * Number of times op was run.
+		 * @param op one of ADD, REMOVE, CONTAINS, ...
+		 */
+		public long operations(int op) {
+			return operations[op];
+		}
+
+		/**
+		 * Number of searches (by key) recorded.
+		 */
+		public long searches() {
+			return searches;
+		}
+
+		/**
+		 * Number of searches with c comparisons
+		 * (c = HISTOGRAM - 1: that many or more).
+		 */
+		public long comparisons(int c) {
+			return comparisons[Math.min(c, HISTOGRAM - 1)];
+		}
+
+		/**
+		 * Average comparisons per search.
+		 */
+		public double meanComparisons() {
+			long sum = 0;
+			for (int c = 0; c < HISTOGRAM; c++)
+				sum += c * comparisons[c];
+			return (searches == 0) ? 0 : (double) sum / searches;
+		}
+
+		/**
+		 * Smallest c such that a fraction q of the searches took
+		 * at most c comparisons.
+		 * @param q the quantile, between 0 and 1
+		 */
+		public int comparisonsPercentile(double q) {
+			long rank = (long) Math.ceil(q * searches);
+			long seen = 0;
+
+			for (int c = 0; c < HISTOGRAM; c++) {
+				seen += comparisons[c];
+				if (seen >= rank && seen > 0)
+					return c;
+			}
+			return 0;
+		}
+
+		/**
+		 * Average horizontal steps per search on level.
+		 */
+		public double meanSteps(int level) {
+			return (searches == 0) ? 0 : (double) steps[level] / searches;
+		}
+
+		/**
+		 * Number of entries with a link on level.
+		 */
+		public int occupancy(int level) {
+			return (level < maxLevel) ? occupancy[level] : 0;
+		}
+
+		/**
+		 * Average span of the links on level (head to tail included).
+		 * In a perfect skip list, 2^level.
+		 */
+		public double averageSpan(int level) {
+			return (double) (size + 1) / (occupancy(level) + 1);
+		}
+
+		public int size() {
+			return size;
+		}
+
+		public int maxLevel() {
+			return maxLevel;
+		}
+
+		/**
+		 * Levels of a perfect skip list (after rebuild()) of this size.
+		 */
+		public int perfectLevels() {
+			return 32 - Integer.numberOfLeadingZeros(size);
+		}
+
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+
+			sb.append("size: ").append(size).append(", maxLevel: ")
+				.append(maxLevel).append(" (perfect: ")
+				.append(perfectLevels()).append(")\n");
+
+			sb.append("operations:");
+			for (int op = 0; op < OPERATIONS.length; op++)
+				sb.append(' ').append(OPERATIONS[op]).append('=')
+					.append(operations[op]);
+			sb.append('\n');
+
+			sb.append(String.format("comparisons/search: mean %.2f, "
+					+ "p50 %d, p99 %d, over %d searches%n", meanComparisons(),
+					comparisonsPercentile(0.5), comparisonsPercentile(0.99),
+					searches));
+
+			sb.append("level  occupancy  avg span  steps/search\n");
+			for (int i = maxLevel - 1; i > -1; i--)
+				sb.append(String.format("%5d %10d %9.2f %13.2f%n", i,
+						occupancy(i), averageSpan(i), meanSteps(i)));
+
+			return sb.toString();
+		}
+	}
+}
@@ -0,0 +1,363 @@
+package rsn170330.lp2;
+
+/**
+ * CS 5V81.001. Implementation of data structures and algorithms
+ * Long Project LP2: Skip List Implementation
+ *
+ * SkipListSnapshot: the file format of SkipList.save() and
+ * SkipList.load(), so that a list is restored without replaying the
+ * operations that built it.
+ *
+ * Format (big-endian):
+ *  - header, 16 bytes: MAGIC "LP2S", VERSION, flags (HEIGHTS,
+ *    FIXED_LONGS), 2 reserved bytes, the number of elements (a long),
+ *  - the elements in ascending order, each written by a Codec
+ *    (Codec.LONG: 8 bytes each, so element i is at 16 + 8 * i),
+ *  - with HEIGHTS: the height of each Entry, one byte each,
+ *  - with LSN: the WriteAheadLog record the list is up to, a long,
+ *  - CRC32 of all the bytes above, as a long.
+ *
+ * Saving is atomic: the snapshot is written to a temporary file next to
+ * the target (its name + ".tmp"), forced to disk, then renamed over the
+ * target. A crash mid-save leaves the previous snapshot as it was (and a
+ * stray .tmp, overwritten by the next save). One save at a time per file.
+ *
+ * Loading is linear: the elements are read into an array and linked in
+ * one pass, with the saved heights (the same list) or, without them,
+ * as a perfect skip list by SkipList.fromSorted(). Snapshots of
+ * Codec.LONG can also be mapped read-only (map()), for lookups straight
+ * from the file, without loading it.
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+public class SkipListSnapshot {
+	// first 4 bytes: "LP2S"
+	static final int MAGIC = 0x4C503253;
+	static final byte VERSION = 1;
+
+	// flags
+	static final byte HEIGHTS = 1, FIXED_LONGS = 2, LSN = 4;
+
+	// bytes before the first element
+	static final int HEADER = 16;
+
+	/**
+	 * Codec: how elements are written to, and read from, a snapshot.
+	 */
+	public interface Codec<T> {
+		void write(DataOutput out, T x) throws IOException;
+
+		T read(DataInput in) throws IOException;
+
+		// 8 bytes per element (snapshots of it can be mapped)
+		Codec<Long> LONG = new Codec<Long>() {
+			public void write(DataOutput out, Long x) throws IOException {
+				out.writeLong(x);
+			}
+
+			public Long read(DataInput in) throws IOException {
+				return in.readLong();
+			}
+		};
+
+		Codec<Integer> INTEGER = new Codec<Integer>() {
+			public void write(DataOutput out, Integer x) throws IOException {
+				out.writeInt(x);
+			}
+
+			public Integer read(DataInput in) throws IOException {
+				return in.readInt();
+			}
+		};
+
+		// modified UTF-8, up to 65535 bytes each
+		Codec<String> STRING = new Codec<String>() {
+			public void write(DataOutput out, String x) throws IOException {
+				out.writeUTF(x);
+			}
+
+			public String read(DataInput in) throws IOException {
+				return in.readUTF();
+			}
+		};
+	}
+
+	/**
+	 * Contents: what read() found in a snapshot.
+	 */
+	static final class Contents<T> {
+		final T[] elements; // in ascending order
+		final byte[] heights; // null when not saved
+		final long lsn; // 0 when not saved
+
+		Contents(T[] elements, byte[] heights, long lsn) {
+			this.elements = elements;
+			this.heights = heights;
+			this.lsn = lsn;
+		}
+	}
+
+	/**
+	 * Writes a snapshot atomically (see the class comment).
+	 * @param file the snapshot to be (re)placed
+	 * @param size number of elements
+	 * @param elements the elements, in ascending order
+	 * @param heights height of each Entry (null: not saved)
+	 * @param lsn last WriteAheadLog record in the list (0: not saved)
+	 * @param codec how to write an element
+	 * @throws IOException on a write error (file is left as it was)
+	 */
+	static <T> void write(Path file, int size, Iterator<T> elements,
+			byte[] heights, long lsn, Codec<? super T> codec) throws IOException {
+		Path dir = file.toAbsolutePath().getParent();
+		Path temp = dir.resolve(file.getFileName() + ".tmp");
+		boolean done = false;
+
+		try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			CRC32 crc = new CRC32();
+			OutputStream stream = Channels.newOutputStream(channel);
+			DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+					new BufferedOutputStream(stream, 1 << 16), crc));
+
+			byte flags = (byte) ((heights != null ? HEIGHTS : 0)
+					| (codec == Codec.LONG ? FIXED_LONGS : 0)
+					| (lsn > 0 ? LSN : 0));
+			out.writeInt(MAGIC);
+			out.writeByte(VERSION);
+			out.writeByte(flags);
+			out.writeShort(0);
+			out.writeLong(size);
+
+			for (int i = 0; i < size; i++)
+				codec.write(out, elements.next());
+			if (heights != null)
+				out.write(heights, 0, size);
+			if (lsn > 0)
+				out.writeLong(lsn);
+
+			// the checksum itself is not part of it
+			long checksum = crc.getValue();
+			out.flush();
+			new DataOutputStream(stream).writeLong(checksum);
+
+			// on disk before it takes the place of the previous one
+			channel.force(true);
+			done = true;
+		} finally {
+			// When the write failed: the previous snapshot stays
+			if (!done)
+				Files.deleteIfExists(temp);
+		}
+
+		try {
+			Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE,
+					StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+		}
+
+		// the rename is durable once the directory is on disk (where the
+		// platform lets a directory be opened)
+		try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+			channel.force(true);
+		} catch (IOException e) {
+			// not supported here, e.g. on Windows
+		}
+	}
+
+	/**
+	 * Reads a snapshot, checking its checksum.
+	 * @param file the snapshot
+	 * @param codec how to read an element (the one it was saved with)
+	 * @return the elements, and the heights when they were saved
+	 * @throws IOException on a read error, or a corrupt snapshot
+	 */
+	@SuppressWarnings("unchecked")
+	static <T> Contents<T> read(Path file, Codec<? extends T> codec)
+			throws IOException {
+		try (InputStream stream = Files.newInputStream(file)) {
+			CRC32 crc = new CRC32();
+			BufferedInputStream buffered = new BufferedInputStream(stream, 1 << 16);
+			DataInputStream in = new DataInputStream(
+					new CheckedInputStream(buffered, crc));
+
+			// When it isn't a snapshot
+			if (in.readInt() != MAGIC)
+				throw new IOException(file + ": not a snapshot");
+			// When it is a later format
+			if (in.readByte() != VERSION)
+				throw new IOException(file + ": unknown snapshot version");
+
+			byte flags = in.readByte();
+			in.readShort();
+			long size = in.readLong();
+
+			// When the size can't be right
+			if (size < 0 || size > Integer.MAX_VALUE - 2)
+				throw new IOException(file + ": invalid size " + size);
+
+			T[] elements = (T[]) new Comparable<?>[(int) size];
+			for (int i = 0; i < size; i++)
+				elements[i] = codec.read(in);
+
+			byte[] heights = null;
+			if ((flags & HEIGHTS) != 0) {
+				heights = new byte[(int) size];
+				in.readFully(heights);
+			}
+			long lsn = ((flags & LSN) != 0) ? in.readLong() : 0;
+
+			long checksum = crc.getValue();
+			// When the snapshot was cut, or changed
+			if (new DataInputStream(buffered).readLong() != checksum)
+				throw new IOException(file + ": checksum mismatch");
+
+			return new Contents<>(elements, heights, lsn);
+		} catch (EOFException e) {
+			throw new IOException(file + ": truncated snapshot", e);
+		}
+	}
+
+	/**
+	 * Maps a snapshot of Codec.LONG read-only: lookups go straight to
+	 * the file (through the page cache), nothing is loaded or copied.
+	 * The checksum is not verified (it would read the whole file).
+	 * @param file the snapshot
+	 * @return the mapped elements
+	 * @throws IOException on a read error, or when the snapshot isn't
+	 *         of Codec.LONG
+	 */
+	public static MappedLongs map(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			// When the file is too short for the header
+			if (channel.size() < HEADER)
+				throw new IOException(file + ": truncated snapshot");
+
+			MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER);
+
+			// When it isn't a snapshot of longs
+			if (header.getInt(0) != MAGIC || header.get(4) != VERSION)
+				throw new IOException(file + ": not a snapshot");
+			if ((header.get(5) & FIXED_LONGS) == 0)
+				throw new IOException(file + ": not a snapshot of Codec.LONG");
+
+			long size = header.getLong(8);
+
+			// When the elements don't fit in the file, or in one mapping
+			if (size < 0 || HEADER + 8 * size > channel.size())
+				throw new IOException(file + ": truncated snapshot");
+			if (8 * size > Integer.MAX_VALUE)
+				throw new IOException(file + ": too large to be mapped");
+
+			// the mapping stays valid after the channel is closed
+			MappedByteBuffer keys = channel.map(FileChannel.MapMode.READ_ONLY,
+					HEADER, 8 * size);
+			return new MappedLongs(keys.asLongBuffer());
+		}
+	}
+
+	/**
+	 * MappedLongs: a read-only view of the elements of a snapshot of
+	 * longs. Lookups binary search the sorted elements: O(log n), like
+	 * LongSkipList (whose NONE stands for "no such element" here too).
+	 */
+	public static class MappedLongs {
+		private final LongBuffer keys;
+
+		MappedLongs(LongBuffer keys) {
+			this.keys = keys;
+		}
+
+		public int size() {
+			return keys.limit();
+		}
+
+		/**
+		 * Element at index n (first element is at index 0).
+		 * @throws IndexOutOfBoundsException When n is invalid index
+		 */
+		public long get(int n) {
+			return keys.get(n);
+		}
+
+		public boolean contains(long x) {
+			return indexOf(x) >= 0;
+		}
+
+		/**
+		 * Index of x, or -1 when x is not present.
+		 */
+		public int indexOf(long x) {
+			int i = rank(x);
+			return (i < size() && keys.get(i) == x) ? i : -1;
+		}
+
+		/**
+		 * Largest element <= x, or LongSkipList.NONE.
+		 */
+		public long floor(long x) {
+			int i = rank(x);
+
+			// When x is present
+			if (i < size() && keys.get(i) == x)
+				return x;
+			return (i > 0) ? keys.get(i - 1) : LongSkipList.NONE;
+		}
+
+		/**
+		 * Smallest element >= x, or LongSkipList.NONE.
+		 */
+		public long ceiling(long x) {
+			int i = rank(x);
+			return (i < size()) ? keys.get(i) : LongSkipList.NONE;
+		}
+
+		public long first() {
+			return (size() > 0) ? keys.get(0) : LongSkipList.NONE;
+		}
+
+		public long last() {
+			return (size() > 0) ? keys.get(size() - 1) : LongSkipList.NONE;
+		}
+
+		/**
+		 * Helper method - number of elements < x.
+		 */
+		private int rank(long x) {
+			int lo = 0, hi = size(); // answer is in [lo, hi]
+
+			while (lo < hi) {
+				int mid = (lo + hi) >>> 1;
+				if (keys.get(mid) < x)
+					lo = mid + 1;
+				else
+					hi = mid;
+			}
+			return lo;
+		}
+	}
+}
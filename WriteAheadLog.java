@@ -0,0 +1,583 @@
+package rsn170330.lp2;
+
+/**
+ * CS 5V81.001. Implementation of data structures and algorithms
+ * Long Project LP2: Skip List Implementation
+ *
+ * WriteAheadLog: an append-only log of the adds and removes of a
+ * SkipList, so that they survive a crash. Records are numbered (LSN)
+ * from 1, in the order they were appended.
+ *
+ * Group commit: appended records are buffered, and one thread writes
+ * them and forces them to disk in batches, once groupSize records are
+ * pending or groupMicros have passed since the first of them. sync(lsn)
+ * waits until record lsn is on disk: writers waiting together share
+ * one fsync. While a batch is written, the next one fills another
+ * buffer.
+ *
+ * Format (big-endian):
+ *  - header, 16 bytes: MAGIC "LP2W", VERSION, 3 reserved bytes, the base: LSN of the last record before the log
+ *    (the records up to it are in a snapshot, see checkpoint()),
+ *  - batches: the bytes of the records (an int), the number of records
+ *    (an int), CRC32 of the records (an int), then the records: ADD or
+ *    REMOVE, and the element, written by a Codec.
+ * A crash mid-batch leaves a cut or corrupt last batch: open() drops
+ * it (it was never reported durable).
+ *
+ * Only adds and removes that changed the list are logged, so each
+ * record was applied to the list just as the records before it left
+ * it. Recovery loads the snapshot, skips the records it is known to
+ * hold already (LSN <= its LSN: whole batches, not even decoded), and
+ * redoes the others in order.
+ */
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+public class WriteAheadLog<T extends Comparable<? super T>> implements Closeable {
+	// record types (the opcodes of OpLog)
+	public static final byte ADD = OpLog.ADD, REMOVE = OpLog.REMOVE;
+
+	// first 4 bytes: "LP2W"
+	static final int MAGIC = 0x4C503257;
+	static final byte VERSION = 1;
+
+	// bytes before the first batch; before the records of a batch
+	static final int HEADER = 16, BATCH_HEADER = 12;
+
+	private final Path file;
+	private final SkipListSnapshot.Codec<T> codec;
+	private final int groupSize;
+	private final long groupNanos;
+
+	private FileChannel channel; // replaced by checkpoint()
+	private long base; // LSN of the last record before the log
+
+	// guards the fields below; work: for the flusher, flushed: for sync()
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition work = lock.newCondition();
+	private final Condition flushed = lock.newCondition();
+
+	// filling: records not written yet, flushing: the batch being written
+	private Buffer filling = new Buffer(), flushing = new Buffer();
+	private int pending; // records in filling
+	private long appended, durable; // last LSN appended, on disk
+	private boolean closed;
+	private IOException failure; // of the flusher: the log is unusable
+
+	private final Thread flusher;
+
+	/**
+	 * Buffer: the records of a batch, as bytes.
+	 */
+	private static final class Buffer extends ByteArrayOutputStream {
+		final DataOutputStream out = new DataOutputStream(this);
+
+		Buffer() {
+			super(1 << 16);
+		}
+
+		byte[] bytes() {
+			return buf;
+		}
+
+		/**
+		 * Drops the bytes after the first size ones.
+		 */
+		void truncate(int size) {
+			count = size;
+		}
+	}
+
+	private WriteAheadLog(Path file, SkipListSnapshot.Codec<T> codec,
+			int groupSize, long groupMicros) {
+		this.file = file;
+		this.codec = codec;
+		this.groupSize = groupSize;
+		this.groupNanos = TimeUnit.MICROSECONDS.toNanos(groupMicros);
+
+		flusher = new Thread(this::flushLoop, "WriteAheadLog-flusher");
+		flusher.setDaemon(true);
+	}
+
+	/**
+	 * Opens the log in file, creating it when it doesn't exist. A cut or
+	 * corrupt last batch (crash mid-write) is dropped.
+	 * @param file the log
+	 * @param codec how to write an element, e.g. Codec.LONG (the same
+	 *        every time the log is opened)
+	 * @param groupSize records per batch (1: one fsync per record)
+	 * @param groupMicros longest wait for a batch to fill (0: none)
+	 * @return the log, ready for recover() and appends
+	 * @throws IOException on a read or write error, or when file isn't
+	 *         a log
+	 */
+	public static <T extends Comparable<? super T>> WriteAheadLog<T> open(
+			Path file, SkipListSnapshot.Codec<T> codec, int groupSize,
+			long groupMicros) throws IOException {
+		// When the batches can't be formed
+		if (groupSize < 1 || groupMicros < 0)
+			throw new IllegalArgumentException("groupSize must be >= 1, "
+					+ "groupMicros >= 0: " + groupSize + ", " + groupMicros);
+
+		WriteAheadLog<T> log = new WriteAheadLog<>(file, codec, groupSize, groupMicros);
+
+		if (Files.exists(file)) {
+			log.channel = FileChannel.open(file, StandardOpenOption.READ,
+					StandardOpenOption.WRITE);
+			try {
+				log.scan();
+			} catch (IOException e) {
+				log.channel.close();
+				throw e;
+			}
+		}
+		else
+			log.channel = create(file, 0);
+
+		log.flusher.start();
+		return log;
+	}
+
+	/**
+	 * Helper method - open(): reads the base and counts the records of
+	 * the valid batches, cutting off the rest of the file.
+	 */
+	private void scan() throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER);
+
+		// When it isn't a log
+		if (readFully(channel, header, 0) < HEADER || header.getInt(0) != MAGIC
+				|| header.get(4) != VERSION)
+			throw new IOException(file + ": not a write-ahead log");
+
+		base = header.getLong(8);
+		long records = 0, position = HEADER, end = channel.size();
+		ByteBuffer batch = ByteBuffer.allocate(BATCH_HEADER);
+		CRC32 crc = new CRC32();
+
+		while (position + BATCH_HEADER <= end) {
+			readFully(channel, batch, position);
+			int bytes = batch.getInt(0), count = batch.getInt(4);
+
+			// When the batch was cut
+			if (bytes < 0 || count < 0 || position + BATCH_HEADER + bytes > end)
+				break;
+
+			ByteBuffer body = ByteBuffer.allocate(bytes);
+			readFully(channel, body, position + BATCH_HEADER);
+			crc.reset();
+			crc.update(body.array(), 0, bytes);
+
+			// When the batch was not written in full
+			if ((int) crc.getValue() != batch.getInt(8))
+				break;
+
+			records += count;
+			position += BATCH_HEADER + bytes;
+		}
+
+		// the next batch goes after the last valid one
+		if (position < end) {
+			channel.truncate(position);
+			channel.force(true);
+		}
+		channel.position(position);
+		appended = durable = base + records;
+	}
+
+	/**
+	 * Helper method - creates an empty log in file: written next to it,
+	 * then renamed over it (so a crash leaves either log in place).
+	 * @return the new log, open for appends
+	 */
+	private static FileChannel create(Path file, long base) throws IOException {
+		Path dir = file.toAbsolutePath().getParent();
+		Path temp = dir.resolve(file.getFileName() + ".tmp");
+
+		try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER);
+			header.putInt(MAGIC).put(VERSION).put((byte) 0).putShort((short) 0)
+				.putLong(base).flip();
+			while (header.hasRemaining())
+				channel.write(header);
+			channel.force(true);
+		}
+
+		try {
+			Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE,
+					StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+		}
+		try (FileChannel directory = FileChannel.open(dir, StandardOpenOption.READ)) {
+			directory.force(true);
+		} catch (IOException e) {
+			// not supported here, e.g. on Windows
+		}
+
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE);
+		channel.position(HEADER);
+		return channel;
+	}
+
+	/**
+	 * Logs add(x) (call it only when x was added).
+	 * @return LSN of the record, for sync()
+	 * @throws IOException when the log has failed, or is closed
+	 */
+	public long add(T x) throws IOException {
+		return append(ADD, x);
+	}
+
+	/**
+	 * Logs remove(x) (call it only when x was removed).
+	 * @return LSN of the record, for sync()
+	 * @throws IOException when the log has failed, or is closed
+	 */
+	public long remove(T x) throws IOException {
+		return append(REMOVE, x);
+	}
+
+	/**
+	 * Helper method - add(), remove(): buffers a record, for the next
+	 * batch. Doesn't wait for the disk.
+	 */
+	private long append(byte op, T x) throws IOException {
+		lock.lock();
+		try {
+			check();
+			int size = filling.size(); // where the record starts
+
+			try {
+				filling.out.writeByte(op);
+				codec.write(filling.out, x);
+			} catch (IOException | RuntimeException e) {
+				// When x can't be written: none of the record stays
+				filling.truncate(size);
+				throw e;
+			}
+
+			// the first record starts the wait, the last one ends it
+			if (++pending == 1 || pending == groupSize)
+				work.signal();
+			return ++appended;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Waits until record lsn (and all records before it) is on disk.
+	 * @param lsn returned by add() or remove()
+	 * @throws IOException when the log has failed, or is closed first
+	 */
+	public void sync(long lsn) throws IOException {
+		lock.lock();
+		try {
+			while (durable < lsn) {
+				check();
+				flushed.awaitUninterruptibly();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Waits until every record appended so far is on disk.
+	 * @throws IOException when the log has failed, or is closed first
+	 */
+	public void sync() throws IOException {
+		sync(appended());
+	}
+
+	/**
+	 * Helper method - throws the failure of the flusher, if any.
+	 * Called with the lock held.
+	 */
+	private void check() throws IOException {
+		if (failure != null)
+			throw new IOException(file + ": write-ahead log failed", failure);
+		if (closed)
+			throw new IOException(file + ": write-ahead log is closed");
+	}
+
+	/**
+	 * LSN of the last record appended.
+	 */
+	public long appended() {
+		lock.lock();
+		try {
+			return appended;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * LSN of the last record on disk.
+	 */
+	public long durable() {
+		lock.lock();
+		try {
+			return durable;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Helper method - runs on the flusher thread: waits for a batch to
+	 * fill (or for groupNanos), then writes and forces it, until the
+	 * log is closed and nothing is pending.
+	 */
+	private void flushLoop() {
+		ByteBuffer header = ByteBuffer.allocate(BATCH_HEADER);
+		CRC32 crc = new CRC32();
+
+		while (true) {
+			int count;
+			long last;
+
+			lock.lock();
+			try {
+				while (pending == 0 && !closed)
+					work.awaitUninterruptibly();
+
+				// When closed, and all written
+				if (pending == 0)
+					return;
+
+				long left = groupNanos;
+				while (pending < groupSize && left > 0 && !closed) {
+					try {
+						left = work.awaitNanos(left);
+					} catch (InterruptedException e) {
+						break; // writes what it has
+					}
+				}
+
+				Buffer batch = filling;
+				filling = flushing;
+				flushing = batch;
+				count = pending;
+				last = appended;
+				pending = 0;
+			} finally {
+				lock.unlock();
+			}
+
+			// appends go on (into filling) meanwhile
+			try {
+				crc.reset();
+				crc.update(flushing.bytes(), 0, flushing.size());
+				header.clear();
+				header.putInt(flushing.size()).putInt(count)
+					.putInt((int) crc.getValue()).flip();
+
+				ByteBuffer body = ByteBuffer.wrap(flushing.bytes(), 0, flushing.size());
+				while (header.hasRemaining() || body.hasRemaining())
+					channel.write(new ByteBuffer[] { header, body });
+				channel.force(false);
+				flushing.reset();
+			} catch (IOException e) {
+				lock.lock();
+				try {
+					failure = e;
+					flushed.signalAll();
+				} finally {
+					lock.unlock();
+				}
+				return;
+			}
+
+			lock.lock();
+			try {
+				durable = last;
+				flushed.signalAll();
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Loads the snapshot (when it exists) and redoes, in order, the
+	 * records after its LSN. Call it once, after open(), before any
+	 * append.
+	 * @param snapshot saved by checkpoint() (null: none)
+	 * @return the list, as it was after the last durable record
+	 * @throws IOException on a read error, or when records between the
+	 *         snapshot and the log are missing
+	 */
+	public SkipList<T> recover(Path snapshot) throws IOException {
+		SkipList<T> skipList = new SkipList<>();
+		long after = 0; // records the list holds already
+
+		if (snapshot != null && Files.exists(snapshot)) {
+			SkipListSnapshot.Contents<T> contents = SkipListSnapshot.read(snapshot, codec);
+			skipList = SkipList.fromContents(contents, snapshot);
+			after = contents.lsn;
+		}
+
+		// When the log starts after the list ends
+		if (after < base)
+			throw new IOException(file + ": log starts after record " + base
+					+ ", the list holds up to " + after);
+		// When the log ends before the list (not the log of the snapshot)
+		if (after > durable)
+			throw new IOException(file + ": log ends at record " + durable
+					+ ", the list holds up to " + after);
+
+		replay(skipList, after);
+		return skipList;
+	}
+
+	/**
+	 * Helper method - recover(): redoes the records with LSN > after.
+	 */
+	private void replay(SkipList<T> skipList, long after) throws IOException {
+		long lsn = base; // of the last record read or skipped
+
+		try (InputStream stream = Files.newInputStream(file)) {
+			DataInputStream in = new DataInputStream(
+					new BufferedInputStream(stream, 1 << 16));
+			skipFully(in, HEADER);
+
+			while (lsn < durable) {
+				int bytes = in.readInt(), count = in.readInt();
+				in.readInt(); // CRC32, checked by open()
+
+				// When the whole batch is in the list: not decoded at all
+				if (lsn + count <= after) {
+					skipFully(in, bytes);
+					lsn += count;
+					continue;
+				}
+
+				for (int i = 0; i < count; i++) {
+					byte op = in.readByte();
+					T x = codec.read(in);
+
+					// When the snapshot holds it
+					if (++lsn <= after)
+						continue;
+
+					if (op == ADD)
+						skipList.add(x);
+					else if (op == REMOVE)
+						skipList.remove(x);
+					else
+						throw new IOException(file + ": invalid record " + op);
+				}
+			}
+		} catch (EOFException e) {
+			throw new IOException(file + ": truncated write-ahead log", e);
+		}
+	}
+
+	/**
+	 * Saves skipList to snapshot (with its heights, and the LSN it is
+	 * up to), then starts the log over, empty: recover() needs only the
+	 * snapshot and the records after it. No add() or remove() may run
+	 * on skipList, or on the log, meanwhile.
+	 * @param skipList the list the records were applied to
+	 * @param snapshot the snapshot to be (re)placed
+	 * @throws IOException on a write error: the previous snapshot and
+	 *         the log are still valid
+	 */
+	public void checkpoint(SkipList<T> skipList, Path snapshot) throws IOException {
+		sync();
+		long lsn = appended();
+
+		// a crash from here on: recover() skips the records up to lsn
+		skipList.save(snapshot, codec, true, lsn);
+
+		lock.lock();
+		try {
+			check();
+			FileChannel old = channel;
+			channel = create(file, lsn);
+			base = lsn;
+			old.close();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Writes the pending records, forces them to disk and closes
+	 * the log.
+	 * @throws IOException on a write error
+	 */
+	public void close() throws IOException {
+		lock.lock();
+		try {
+			// When closed already
+			if (closed)
+				return;
+			closed = true;
+			work.signal();
+		} finally {
+			lock.unlock();
+		}
+
+		try {
+			flusher.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		channel.close();
+
+		// the last batch failed
+		if (failure != null)
+			throw new IOException(file + ": write-ahead log failed", failure);
+	}
+
+	/**
+	 * Helper method - reads into buffer (cleared first) from position,
+	 * until it is full or at the end of the file.
+	 * @return number of bytes read
+	 */
+	private static int readFully(FileChannel channel, ByteBuffer buffer,
+			long position) throws IOException {
+		buffer.clear();
+		while (buffer.hasRemaining()) {
+			int n = channel.read(buffer, position + buffer.position());
+			if (n < 0)
+				break;
+		}
+		return buffer.position();
+	}
+
+	/**
+	 * Helper method - skips exactly n bytes of in.
+	 */
+	private static void skipFully(DataInputStream in, int n) throws IOException {
+		while (n > 0) {
+			int skipped = in.skipBytes(n);
+			if (skipped == 0)
+				throw new EOFException();
+			n -= skipped;
+		}
+	}
+}
@@ -0,0 +1,142 @@
+package rsn170330.lp2.jmh;
+
+/**
+ * CS 5V81.001. Implementation of data structures and algorithms
+ * Long Project LP2: Skip List Implementation
+ *
+ * Keys: the keys of a benchmarked structure, and the probes of its
+ * operations, by key distribution:
+ *  - uniform: probes drawn uniformly, keys inserted in random order,
+ *  - sequential: probes in key order, keys inserted in order,
+ *  - zipfian: probes drawn by a Zipfian distribution (theta 0.99, hot
+ *    keys spread over the list), keys inserted in random order.
+ *
+ * A structure of size n holds the even keys 0, 2, .., 2*(n-1): a probe
+ * of rank r is 2*r (a hit) or 2*r + 1 (a miss, between two keys).
+ */
+
+import java.util.Random;
+
+public class Keys {
+	public static final String UNIFORM = "uniform", SEQUENTIAL = "sequential",
+			ZIPFIAN = "zipfian";
+
+	// number of pre-computed probes (a power of 2)
+	public static final int PROBES = 1 << 16;
+
+	/**
+	 * The keys of a structure of size elements, in insertion order.
+	 * @param dist one of UNIFORM, SEQUENTIAL, ZIPFIAN
+	 * @param size number of elements
+	 * @param rand source of the order
+	 * @return the even keys, shuffled unless dist is SEQUENTIAL
+	 */
+	public static Long[] keys(String dist, int size, Random rand) {
+		Long[] keys = new Long[size];
+		for (int i = 0; i < size; i++)
+			keys[i] = 2L * i;
+
+		// When keys go in random order
+		if (!dist.equals(SEQUENTIAL)) {
+			for (int i = size - 1; i > 0; i--) {
+				int j = rand.nextInt(i + 1);
+				Long temp = keys[i];
+				keys[i] = keys[j];
+				keys[j] = temp;
+			}
+		}
+		return keys;
+	}
+
+	/**
+	 * Ranks (0 to size-1) of PROBES probes, drawn from dist.
+	 * @param dist one of UNIFORM, SEQUENTIAL, ZIPFIAN
+	 * @param size number of elements
+	 * @param rand source of the draws
+	 * @return the ranks
+	 */
+	public static int[] ranks(String dist, int size, Random rand) {
+		int[] ranks = new int[PROBES];
+
+		switch (dist) {
+			case UNIFORM: {
+				for (int i = 0; i < PROBES; i++)
+					ranks[i] = rand.nextInt(size);
+				break;
+			}
+			case SEQUENTIAL: {
+				for (int i = 0; i < PROBES; i++)
+					ranks[i] = i % size;
+				break;
+			}
+			case ZIPFIAN: {
+				Zipfian zipfian = new Zipfian(size, 0.99);
+				for (int i = 0; i < PROBES; i++) {
+					// scrambled, so that hot keys are spread over the list
+					long rank = zipfian.next(rand) * 0x9E3779B97F4A7C15L;
+					ranks[i] = (int) Math.floorMod(rank, (long) size);
+				}
+				break;
+			}
+			default:
+				throw new IllegalArgumentException("Unknown distribution: " + dist);
+		}
+		return ranks;
+	}
+
+	/**
+	 * Probes of the given ranks: hits (2*r), misses (2*r + 1), or
+	 * either one at random.
+	 * @param ranks from ranks()
+	 * @param hits fraction of hits: 1, 0 or 0.5
+	 * @param rand source of the choice
+	 * @return the probes
+	 */
+	public static Long[] probes(int[] ranks, double hits, Random rand) {
+		Long[] probes = new Long[ranks.length];
+
+		for (int i = 0; i < ranks.length; i++) {
+			long key = 2L * ranks[i];
+			if (rand.nextDouble() >= hits)
+				key++;
+			probes[i] = key;
+		}
+		return probes;
+	}
+
+	/**
+	 * Zipfian: rank 0 to n-1, rank i with probability proportional to
+	 * 1/(i+1)^theta (Gray et al., "Quickly generating billion-record
+	 * synthetic databases", as in YCSB).
+	 */
+	static class Zipfian {
+		private final int n;
+		private final double theta, alpha, zetan, eta;
+
+		Zipfian(int n, double theta) {
+			this.n = n;
+			this.theta = theta;
+
+			double zeta2 = 0, sum = 0;
+			for (int i = 1; i <= n; i++) {
+				sum += 1 / Math.pow(i, theta);
+				if (i == 2)
+					zeta2 = sum;
+			}
+			zetan = sum;
+			alpha = 1 / (1 - theta);
+			eta = (1 - Math.pow(2.0 / n, 1 - theta)) / (1 - zeta2 / zetan);
+		}
+
+		long next(Random rand) {
+			double u = rand.nextDouble();
+			double uz = u * zetan;
+
+			if (uz < 1)
+				return 0;
+			if (uz < 1 + Math.pow(0.5, theta))
+				return 1;
+			return Math.min(n - 1, (long) (n * Math.pow(eta * u - eta + 1, alpha)));
+		}
+	}
+}
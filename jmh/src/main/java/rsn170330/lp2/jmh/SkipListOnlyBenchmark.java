@@ -0,0 +1,93 @@
+package rsn170330.lp2.jmh;
+
+/**
+ * CS 5V81.001. Implementation of data structures and algorithms
+ * Long Project LP2: Skip List Implementation
+ *
+ * SkipListOnlyBenchmark: the operations of the Skip list that TreeMap
+ * and ConcurrentSkipListMap don't have: getLog(n) (O(log n), over
+ * span[]), getLinear(n) (O(n)) and rebuild(), for each key distribution
+ * (see Keys: it picks the indexes, and the order of insertion) and size
+ * from 1k to 10M. Same modes and gc profiler as StructureBenchmark:
+ *  $java -jar jmh/target/benchmarks.jar SkipListOnlyBenchmark -prof gc
+ */
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import rsn170330.lp2.SkipList;
+
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g") // 10M elements
+public class SkipListOnlyBenchmark {
+	@Param({ Keys.UNIFORM, Keys.SEQUENTIAL, Keys.ZIPFIAN })
+	public String dist;
+
+	@Param({ "1000", "10000", "100000", "1000000", "10000000" })
+	public int size;
+
+	SkipList<Long> skipList;
+	int[] indexes; // ranks from Keys.ranks()
+
+	private int next; // next index to be used
+
+	@Setup(Level.Trial)
+	public void setup() {
+		Random rand = new Random(1);
+		skipList = new SkipList<>();
+		for (Long key : Keys.keys(dist, size, rand))
+			skipList.add(key);
+
+		indexes = Keys.ranks(dist, size, rand);
+		next = 0;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(StructureBenchmark.BATCH)
+	public void getLog(Blackhole bh) {
+		int from = next;
+		next = (next + StructureBenchmark.BATCH) & (Keys.PROBES - 1);
+
+		for (int i = from; i < from + StructureBenchmark.BATCH; i++)
+			bh.consume(skipList.getLog(indexes[i]));
+	}
+
+	/**
+	 * One walk of level 0 per operation (O(n)).
+	 */
+	@Benchmark
+	public Long getLinear() {
+		int index = indexes[next];
+		next = (next + 1) & (Keys.PROBES - 1);
+		return skipList.getLinear(index);
+	}
+
+	/**
+	 * From the second call on, the list is perfect already: this is
+	 * the cost of relinking every entry (the heights stay the same).
+	 */
+	@Benchmark
+	public int rebuild() {
+		skipList.rebuild();
+		return skipList.size();
+	}
+}
@@ -0,0 +1,284 @@
+package rsn170330.lp2.jmh;
+
+/**
+ * CS 5V81.001. Implementation of data structures and algorithms
+ * Long Project LP2: Skip List Implementation
+ *
+ * StructureBenchmark: the operations the Skip list shares with its
+ * baselines (add, remove, contains, floor, ceiling, iterator), on a
+ * SkipList, a TreeMap and a ConcurrentSkipListMap, for each key
+ * distribution (see Keys) and size from 1k to 10M.
+ *
+ * Throughput (ops/us) and average time (us/op) are measured; the GC
+ * allocation rate (gc.alloc.rate.norm in B/op, gc.alloc.rate in MB/sec)
+ * comes with the gc profiler:
+ *  $java -jar jmh/target/benchmarks.jar StructureBenchmark -prof gc
+ *  $java -jar jmh/target/benchmarks.jar StructureBenchmark.floor
+ *      -p structure=skiplist,treemap -p dist=zipfian -p size=10000000
+ *
+ * Operations on one key run in batches of BATCH probes. add and remove
+ * keep the size steady: Undo removes (or adds back) the keys of each
+ * batch after it, outside of the timing (not of the gc profiler, which
+ * counts the allocations of the whole iteration: B/op of add includes
+ * nothing for the removes, but B/op of remove includes the adds back).
+ */
+
+import java.util.Iterator;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import rsn170330.lp2.SkipList;
+
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g") // 10M elements
+public class StructureBenchmark {
+	// operations on one key per invocation
+	static final int BATCH = 256;
+
+	@Param({ "skiplist", "treemap", "cslm" })
+	public String structure;
+
+	@Param({ Keys.UNIFORM, Keys.SEQUENTIAL, Keys.ZIPFIAN })
+	public String dist;
+
+	@Param({ "1000", "10000", "100000", "1000000", "10000000" })
+	public int size;
+
+	Target target;
+
+	// hits: present keys (remove), misses: absent keys (add),
+	// mixed: either one, half/half (contains, floor, ceiling)
+	Long[] hits, misses, mixed;
+
+	private int next; // first probe of the next batch
+
+	/**
+	 * Target: the structure being benchmarked.
+	 */
+	interface Target {
+		boolean add(Long x);
+
+		boolean remove(Long x);
+
+		boolean contains(Long x);
+
+		Long floor(Long x);
+
+		Long ceiling(Long x);
+
+		Iterator<Long> iterator();
+	}
+
+	/**
+	 * SkipListTarget: a SkipList<Long>.
+	 */
+	static class SkipListTarget implements Target {
+		private final SkipList<Long> skipList = new SkipList<>();
+
+		public boolean add(Long x) {
+			return skipList.add(x);
+		}
+
+		public boolean remove(Long x) {
+			return skipList.remove(x) != null;
+		}
+
+		public boolean contains(Long x) {
+			return skipList.contains(x);
+		}
+
+		public Long floor(Long x) {
+			return skipList.floor(x);
+		}
+
+		public Long ceiling(Long x) {
+			return skipList.ceiling(x);
+		}
+
+		public Iterator<Long> iterator() {
+			return skipList.iterator();
+		}
+	}
+
+	/**
+	 * MapTarget: the keys of a NavigableMap (TreeMap or
+	 * ConcurrentSkipListMap), each one mapped to itself.
+	 */
+	static class MapTarget implements Target {
+		private final NavigableMap<Long, Long> map;
+
+		MapTarget(NavigableMap<Long, Long> map) {
+			this.map = map;
+		}
+
+		public boolean add(Long x) {
+			return map.putIfAbsent(x, x) == null;
+		}
+
+		public boolean remove(Long x) {
+			return map.remove(x) != null;
+		}
+
+		public boolean contains(Long x) {
+			return map.containsKey(x);
+		}
+
+		public Long floor(Long x) {
+			return map.floorKey(x);
+		}
+
+		public Long ceiling(Long x) {
+			return map.ceilingKey(x);
+		}
+
+		public Iterator<Long> iterator() {
+			return map.keySet().iterator();
+		}
+	}
+
+	/**
+	 * Undo: after each batch of add or remove, undoes it (outside of
+	 * the timing), so the size stays the same.
+	 */
+	@State(Scope.Thread)
+	public static class Undo {
+		Target target;
+		Long[] probes;
+		int from;
+		boolean added; // whether the batch was of add
+
+		/**
+		 * Records the batch to be undone.
+		 */
+		void set(Target target, Long[] probes, int from, boolean added) {
+			this.target = target;
+			this.probes = probes;
+			this.from = from;
+			this.added = added;
+		}
+
+		@TearDown(Level.Invocation)
+		public void undo() {
+			for (int i = from; i < from + BATCH; i++) {
+				if (added)
+					target.remove(probes[i]);
+				else
+					target.add(probes[i]);
+			}
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void setup() {
+		switch (structure) {
+			case "skiplist":
+				target = new SkipListTarget();
+				break;
+			case "treemap":
+				target = new MapTarget(new TreeMap<>());
+				break;
+			case "cslm":
+				target = new MapTarget(new ConcurrentSkipListMap<>());
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown structure: " + structure);
+		}
+
+		Random rand = new Random(1);
+		for (Long key : Keys.keys(dist, size, rand))
+			target.add(key);
+
+		int[] ranks = Keys.ranks(dist, size, rand);
+		hits = Keys.probes(ranks, 1, rand);
+		misses = Keys.probes(ranks, 0, rand);
+		mixed = Keys.probes(ranks, 0.5, rand);
+		next = 0;
+	}
+
+	/**
+	 * Helper method - first probe of the next batch, going round the
+	 * probes.
+	 */
+	private int batch() {
+		int from = next;
+		next = (next + BATCH) & (Keys.PROBES - 1);
+		return from;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public void add(Undo undo, Blackhole bh) {
+		int from = batch();
+		for (int i = from; i < from + BATCH; i++)
+			bh.consume(target.add(misses[i]));
+		undo.set(target, misses, from, true);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public void remove(Undo undo, Blackhole bh) {
+		int from = batch();
+		for (int i = from; i < from + BATCH; i++)
+			bh.consume(target.remove(hits[i]));
+		undo.set(target, hits, from, false);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public void contains(Blackhole bh) {
+		int from = batch();
+		for (int i = from; i < from + BATCH; i++)
+			bh.consume(target.contains(mixed[i]));
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public void floor(Blackhole bh) {
+		int from = batch();
+		for (int i = from; i < from + BATCH; i++)
+			bh.consume(target.floor(mixed[i]));
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public void ceiling(Blackhole bh) {
+		int from = batch();
+		for (int i = from; i < from + BATCH; i++)
+			bh.consume(target.ceiling(mixed[i]));
+	}
+
+	/**
+	 * A full scan: one operation is size elements.
+	 */
+	@Benchmark
+	public long iterator() {
+		long sum = 0;
+		Iterator<Long> it = target.iterator();
+		while (it.hasNext())
+			sum += it.next();
+		return sum;
+	}
+}